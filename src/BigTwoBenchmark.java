@@ -0,0 +1,369 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class is used to benchmark the card and hand hot paths.
+ * <p>
+ * Each benchmark runs warm-up rounds and then measured rounds, and reports
+ * the time per operation and the bytes allocated per operation, read from the
+ * thread allocation counter of the JVM. Without arguments every benchmark
+ * runs in a JVM of its own, so that the profile of one benchmark does not
+ * affect the code generated for the next. Arguments select benchmarks by
+ * name and run them in the current JVM.
+ *
+ * @author chanyuyan
+ *
+ */
+public class BigTwoBenchmark {
+	// The number of warm-up rounds of each benchmark
+	private static final int WARMUP_ROUNDS = 5;
+	// The number of measured rounds of each benchmark
+	private static final int MEASURED_ROUNDS = 5;
+	// The minimum duration of a round in nanoseconds
+	private static final long ROUND_NANOS = 500_000_000L;
+
+	// The benchmarks by name, in the order they are run
+	private final Map<String, Operation> benchmarks = new LinkedHashMap<String, Operation>();
+
+	// Keeps the results of the operations alive so that they are not optimized away
+	private static volatile long sink;
+
+	/**
+	 * An interface for a benchmarked operation.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private interface Operation {
+		/**
+		 * Runs the operation once.
+		 *
+		 * @param i the index of this run, for choosing among prepared inputs
+		 * @return a value derived from the result of the operation
+		 * @throws Exception if the operation fails
+		 */
+		public long run(int i) throws Exception;
+	}
+
+	/**
+	 * Creates the benchmarks and the inputs they use.
+	 */
+	public BigTwoBenchmark() {
+		Random random = new Random(2396);
+		CardGamePlayer player = new CardGamePlayer("Benchmark");
+
+		// Pairs of cards, compared in the Card and the Big Two order
+		final Card[] cards = new Card[1024];
+		final Card[] bigTwoCards = new Card[1024];
+		for (int i = 0; i < cards.length; i++) {
+			int suit = random.nextInt(4);
+			int rank = random.nextInt(13);
+			cards[i] = Card.valueOf(suit, rank);
+			bigTwoCards[i] = BigTwoCard.valueOf(suit, rank);
+		}
+		benchmarks.put("Card.compareTo", i -> cards[i & 1023].compareTo(cards[(i + 1) & 1023]));
+		benchmarks.put("BigTwoCard.compareTo", i -> bigTwoCards[i & 1023].compareTo(bigTwoCards[(i + 1) & 1023]));
+
+		// Sorting a dealt 13-card hand
+		final Card[][] deals = new Card[64][];
+		for (int i = 0; i < deals.length; i++) {
+			BigTwoDeck deck = new BigTwoDeck();
+			deck.shuffle(random);
+			deals[i] = new Card[13];
+			for (int j = 0; j < 13; j++) {
+				deals[i][j] = deck.getCard(j);
+			}
+		}
+		final CardList sortList = new CardList();
+		benchmarks.put("CardList.sort", i -> {
+			Card[] deal = deals[i & 63];
+			sortList.removeAllCards();
+			for (Card card : deal) {
+				sortList.addCard(card);
+			}
+			sortList.sort();
+			return sortList.getCard(0).hashCode();
+		});
+
+		final BigTwoDeck shuffleDeck = new BigTwoDeck();
+		final Random shuffleRandom = new Random(1);
+		benchmarks.put("Deck.shuffle", i -> {
+			shuffleDeck.shuffle(shuffleRandom);
+			return shuffleDeck.getCard(0).hashCode();
+		});
+
+		// Composing hands of every size from valid card lists
+		final CardList[][] handCards = new CardList[6][];
+		handCards[1] = handLists(random, 1, "Single");
+		handCards[2] = handLists(random, 2, "Pair");
+		handCards[3] = handLists(random, 3, "Triple");
+		handCards[5] = handLists(random, 5, null);
+		for (final int size : new int[] { 1, 2, 3, 5 }) {
+			benchmarks.put("composeHand." + size, i -> BigTwoClient
+					.composeHand(player, handCards[size][i & 63]).size());
+		}
+
+		// Hands of the same size and of different types beating each other
+		String[][] types = { { "Single", "Single" }, { "Pair", "Pair" },
+				{ "Triple", "Triple" }, { "Straight", "Flush" },
+				{ "FullHouse", "Quad" }, { "StraightFlush", "StraightFlush" } };
+		for (String[] type : types) {
+			final Hand[] first = hands(random, player, type[0]);
+			final Hand[] second = hands(random, player, type[1]);
+			benchmarks.put("Hand.beats." + type[0] + "-" + type[1],
+					i -> first[i & 63].beats(second[(i * 7 + 3) & 63]) ? 1 : 0);
+		}
+
+		// Playing and removing three cards from a 13-card hand
+		final CardGamePlayer handPlayer = new CardGamePlayer("Benchmark");
+		final int[] cardIdx = { 0, 5, 9 };
+		benchmarks.put("CardGamePlayer.play+removeCards", i -> {
+			handPlayer.removeAllCards();
+			for (Card card : deals[i & 63]) {
+				handPlayer.addCard(card);
+			}
+			CardList played = handPlayer.play(cardIdx);
+			handPlayer.removeCards(played);
+			return handPlayer.getNumOfCards();
+		});
+
+		// Java serialization of a START message
+		final BigTwoDeck startDeck = new BigTwoDeck();
+		startDeck.shuffle(random);
+		final CardGameMessage start = new CardGameMessage(CardGameMessage.START, -1, startDeck);
+		benchmarks.put("CardGameMessage.serialize.START", i -> {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(2048);
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(start);
+			oos.close();
+			return bytes.size();
+		});
+		final byte[] serialized = serialize(start);
+		benchmarks.put("CardGameMessage.deserialize.START", i -> {
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialized));
+			return ((CardGameMessage) ois.readObject()).getType();
+		});
+
+		// Encoding and decoding START and MOVE frames with each codec
+		final CardGameMessage move = new CardGameMessage(CardGameMessage.MOVE, 2, new int[] { 0, 5, 9 });
+		MessageCodec[] codecs = { new SerializationCodec(), new BinaryCodec() };
+		for (final MessageCodec codec : codecs) {
+			String name = codec.getClass().getSimpleName();
+			for (final CardGameMessage message : new CardGameMessage[] { start, move }) {
+				String type = message.getType() == CardGameMessage.START ? "START" : "MOVE";
+				final byte[] frame = codecFrame(codec, message);
+				benchmarks.put(name + ".encode." + type, i -> codec.encode(message).length);
+				benchmarks.put(name + ".decode." + type, i -> codec.decode(frame,
+						MessageCodec.HEADER_LENGTH, frame.length - MessageCodec.HEADER_LENGTH).getType());
+			}
+		}
+	}
+
+	/**
+	 * Encodes a message, failing if it cannot be encoded.
+	 *
+	 * @param codec the codec
+	 * @param message the message
+	 * @return the frame of the message
+	 */
+	private static byte[] codecFrame(MessageCodec codec, CardGameMessage message) {
+		try {
+			return codec.encode(message);
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Returns 64 lists of cards that form a valid hand of the specified size.
+	 *
+	 * @param random the source of randomness
+	 * @param size the number of cards in each hand
+	 * @param type the type of the hands, or null for any valid type
+	 * @return 64 lists of cards that form valid hands
+	 */
+	private static CardList[] handLists(Random random, int size, String type) {
+		CardList[] lists = new CardList[64];
+		int count = 0;
+		while (count < lists.length) {
+			Hand hand = randomHand(random, null, size);
+			if (hand != null && (type == null || hand.getType().equals(type))) {
+				lists[count++] = hand;
+			}
+		}
+		return lists;
+	}
+
+	/**
+	 * Returns 64 random hands of the specified type.
+	 *
+	 * @param random the source of randomness
+	 * @param player the player of the hands
+	 * @param type the type of the hands
+	 * @return 64 hands of the specified type
+	 */
+	private static Hand[] hands(Random random, CardGamePlayer player, String type) {
+		int size = type.equals("Single") ? 1 : type.equals("Pair") ? 2
+				: type.equals("Triple") ? 3 : 5;
+		Hand[] hands = new Hand[64];
+		int count = 0;
+		while (count < hands.length) {
+			Hand hand = randomHand(random, player, size);
+			if (hand != null && hand.getType().equals(type)) {
+				hands[count++] = hand;
+			}
+		}
+		return hands;
+	}
+
+	/**
+	 * Returns the hand formed by random cards, biased towards valid hands.
+	 *
+	 * @param random the source of randomness
+	 * @param player the player of the hand
+	 * @param size the number of cards
+	 * @return the hand formed by the cards, or null if they form none
+	 */
+	private static Hand randomHand(Random random, CardGamePlayer player, int size) {
+		// Draws from few ranks or one suit so that every type turns up often
+		int mode = random.nextInt(3);
+		int suit = random.nextInt(4);
+		int low = random.nextInt(13);
+		long bits = 0L;
+		while (Long.bitCount(bits) < size) {
+			int s = mode == 1 ? suit : random.nextInt(4);
+			int r = mode == 0 ? (low + random.nextInt(2)) % 13 : mode == 2 ? (low + random.nextInt(5)) % 13 : random.nextInt(13);
+			bits |= CardSet.bitOf(BigTwoCard.valueOf(s, r));
+		}
+		return BigTwoClient.composeHand(player, CardSet.valueOf(bits).toCardList());
+	}
+
+	/**
+	 * Serializes the specified message.
+	 *
+	 * @param message the message to be serialized
+	 * @return the bytes of the serialized message
+	 */
+	private static byte[] serialize(CardGameMessage message) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(message);
+			oos.close();
+			return bytes.toByteArray();
+		} catch (Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Runs the specified benchmark and prints its results.
+	 *
+	 * @param name the name of the benchmark
+	 * @throws Exception if the benchmark fails
+	 */
+	public void run(String name) throws Exception {
+		Operation operation = benchmarks.get(name);
+		if (operation == null) {
+			throw new IllegalArgumentException("Unknown benchmark: " + name);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		// Finds a batch size that makes a round last about ROUND_NANOS
+		int batch = 1;
+		long elapsed = 0;
+		while (elapsed < ROUND_NANOS / 10 && batch < (1 << 30)) {
+			batch *= 2;
+			long startTime = System.nanoTime();
+			runBatch(operation, batch);
+			elapsed = System.nanoTime() - startTime;
+		}
+		batch = (int) Math.min(Integer.MAX_VALUE, (long) batch * ROUND_NANOS / Math.max(1, elapsed));
+
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			runBatch(operation, batch);
+		}
+
+		double bestNanos = Double.MAX_VALUE;
+		double totalNanos = 0;
+		double totalBytes = 0;
+		for (int round = 0; round < MEASURED_ROUNDS; round++) {
+			long startBytes = threads.getThreadAllocatedBytes(threadId);
+			long startTime = System.nanoTime();
+			runBatch(operation, batch);
+			long nanos = System.nanoTime() - startTime;
+			long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+			bestNanos = Math.min(bestNanos, (double) nanos / batch);
+			totalNanos += nanos;
+			totalBytes += bytes;
+		}
+		double opsTotal = (double) batch * MEASURED_ROUNDS;
+		double nanosPerOp = totalNanos / opsTotal;
+		double bytesPerOp = totalBytes / opsTotal;
+		double allocRate = totalBytes / (totalNanos / 1e9) / (1024 * 1024);
+		System.out.printf("%-40s %12.2f ns/op (best %10.2f) %12.1f B/op %10.1f MB/s%n",
+				name, nanosPerOp, bestNanos, bytesPerOp, allocRate);
+	}
+
+	/**
+	 * Runs the specified operation a number of times.
+	 *
+	 * @param operation the operation to be run
+	 * @param batch the number of times to run it
+	 * @throws Exception if the operation fails
+	 */
+	private static void runBatch(Operation operation, int batch) throws Exception {
+		long result = 0;
+		for (int i = 0; i < batch; i++) {
+			result += operation.run(i);
+		}
+		sink += result;
+	}
+
+	/**
+	 * main() method for running the benchmarks.
+	 *
+	 * @param args
+	 *            the names of the benchmarks to run in this JVM, or nothing to
+	 *            run every benchmark in a JVM of its own; "-l" lists the names
+	 * @throws Exception if a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		BigTwoBenchmark benchmark = new BigTwoBenchmark();
+		if (args.length > 0 && args[0].equals("-l")) {
+			for (String name : benchmark.benchmarks.keySet()) {
+				System.out.println(name);
+			}
+		} else if (args.length > 0) {
+			for (String name : args) {
+				benchmark.run(name);
+			}
+		} else {
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			String classPath = System.getProperty("java.class.path");
+			for (String name : benchmark.benchmarks.keySet()) {
+				ArrayList<String> command = new ArrayList<String>();
+				command.add(java);
+				command.add("-cp");
+				command.add(classPath);
+				command.add(BigTwoBenchmark.class.getName());
+				command.add(name);
+				Process process = new ProcessBuilder(command).inheritIO().start();
+				if (process.waitFor() != 0) {
+					System.out.println(name + " failed");
+				}
+			}
+		}
+	}
+}
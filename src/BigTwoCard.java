@@ -1,3 +1,4 @@
+import java.io.ObjectStreamException;
 
 /**
  * This class is a subclass of the Card class.
@@ -19,6 +20,33 @@ public class BigTwoCard extends Card {
 		super(suit, rank);
 	}
 	
+	// The 52 canonical Big Two cards, indexed by suit * 13 + rank
+	private static final BigTwoCard[] CARDS = new BigTwoCard[52];
+	
+	static {
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 13; j++) {
+				CARDS[i * 13 + j] = new BigTwoCard(i, j);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the canonical Big Two card with the specified suit and rank.
+	 * Decks, hands and deserialized messages all share these 52 instances.
+	 * 
+	 * @param suit an integer between 0 and 3
+	 * @param rank an integer between 0 and 12
+	 * @return the canonical Big Two card with the specified suit and rank
+	 * @throws IllegalArgumentException if the suit or rank is out of range
+	 */
+	public static BigTwoCard valueOf(int suit, int rank) {
+		if (suit < 0 || suit > 3 || rank < 0 || rank > 12) {
+			throw new IllegalArgumentException("Invalid card: suit " + suit + ", rank " + rank);
+		}
+		return CARDS[suit * 13 + rank];
+	}
+	
 	
 	/**
 	 * Compares the order of this card with the specified card with Big Two rules. 2 and A are ranked above K.
@@ -56,6 +84,15 @@ public class BigTwoCard extends Card {
 		}
 	}
 	
-	
+	/**
+	 * Replaces a deserialized Big Two card with its canonical instance.
+	 * 
+	 * @return the canonical Big Two card with the same suit and rank
+	 * @throws ObjectStreamException if the suit or rank is out of range
+	 */
+	protected Object readResolve() throws ObjectStreamException {
+		checkRange();
+		return valueOf(suit, rank);
+	}
 	
 }
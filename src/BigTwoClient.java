@@ -1,6 +1,7 @@
 import java.io.*;
 import java.net.*;
 import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.swing.JOptionPane;
 
 /**
@@ -21,27 +22,24 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 * 
 	 */
 	public BigTwoClient() {
+		this(false);
+	}
+	
+	/**
+	 * A constructor for creating a Big Two client which receives messages from
+	 * the game server on a virtual thread or a platform thread.
+	 * 
+	 * @param virtualThreads true to receive messages on a virtual thread, if the JVM supports them
+	 */
+	public BigTwoClient(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
 		
-		// Creates a new player list
-		this.playerList = new ArrayList<CardGamePlayer>();
-		// Creates a new list of hands of cards player on the table
-		this.handsOnTable = new ArrayList<Hand>();
-		
-		// Creates 4 players
-		CardGamePlayer player1 = new CardGamePlayer();
-		CardGamePlayer player2 = new CardGamePlayer();
-		CardGamePlayer player3 = new CardGamePlayer();
-		CardGamePlayer player4 = new CardGamePlayer();
-		
-		// Adds them into player list
-		playerList.add(player1);
-		playerList.add(player2);
-		playerList.add(player3);
-		playerList.add(player4);
-		player1.setName(null);
-		player2.setName(null);
-		player3.setName(null);
-		player4.setName(null);
+		// Creates the game engine with 4 players, which holds the player list
+		// and the list of hands played on the table
+		this.engine = new BigTwoEngine();
+		for (int i = 0; i < 4; i++) {
+			this.engine.getPlayerList().get(i).setName(null);
+		}
 		
 		// Prompts the user to enter his/her name
 		String nameInput = JOptionPane.showInputDialog("Please input your name: \n");
@@ -52,7 +50,6 @@ public class BigTwoClient implements CardGame, NetworkGame{
 
 		// Creates a Big Two table which builds the GUI for the game and handles user actions
 		this.table = new BigTwoTable(this);
-		this.currentIdx = -1;
 		
 		// Makes a connection to the game server
 		this.makeConnection();
@@ -65,11 +62,8 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	// A deck of cards
 	private Deck deck;
 	
-	// A list of players
-	private ArrayList<CardGamePlayer> playerList;
-	
-	// A list of hands played on the table
-	private ArrayList<Hand> handsOnTable;
+	// The game engine holding the players, the hands on the table and the current turn
+	private BigTwoEngine engine;
 	
 	// An integer specifying the playerID of the local player
 	private int playerID;
@@ -84,13 +78,32 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	private int serverPort;
 	
 	// A socket connection to the game server
-	private Socket sock;
+	private volatile Socket sock;
+	
+	// A buffered OutputStream for sending messages to the server
+	private OutputStream os;
+	
+	// The codec used for the messages exchanged with the server, chosen with a HELLO message
+	private MessageCodec codec = new BinaryCodec();
+	
+	// A lock for writing messages to the server from the GUI and network threads
+	private final ReentrantLock writeLock = new ReentrantLock();
+	
+	// Whether messages from the server are received on a virtual thread
+	private boolean virtualThreads;
+	
+	// The session token given by the server, with which a lost connection can take back its seat
+	private volatile String sessionToken;
+	
+	// Whether a RESUME message has been sent and not yet answered
+	private volatile boolean resuming;
 	
-	// An ObjectOutputStream for sending messages to the server
-	private ObjectOutputStream oos;
+	// The number of attempts to reconnect after the connection is lost, one per second
+	private static final int RECONNECT_ATTEMPTS = 30;
 	
-	// An integer specifying the index of the player for the current turn
-	private int currentIdx;
+	// How long the server may be silent before the connection is taken as lost, in ms.
+	// The server pings a quiet client every 15 seconds, so a live server is never this silent
+	private static final int READ_TIMEOUT = 60000;
 	
 	// A Big Two table which builds the GUI for the game and handles all user actions
 	private BigTwoTable table;
@@ -179,17 +192,99 @@ public class BigTwoClient implements CardGame, NetworkGame{
 		this.setServerIP("127.0.0.1");
 		this.setServerPort(2396);
 		try {
-			this.sock = new Socket(this.getServerIP(), this.getServerPort());
-			this.oos = new ObjectOutputStream(sock.getOutputStream());
-			Thread cThread = new Thread(new ServerHandler(this.sock));
-			cThread.start();
+			this.connect();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 		
+		// Chooses the binary codec, which must be the first message sent.
+		// The three messages leave in one write
+		this.writeMessage(new CardGameMessage(CardGameMessage.HELLO, -1, BinaryCodec.VERSION), false);
 		// Cannot use new GameMessage as the server cannot receive
-		this.sendMessage(new CardGameMessage(CardGameMessage.JOIN, -1, this.getPlayerName()));
-		this.sendMessage(new CardGameMessage(CardGameMessage.READY, -1, null));
+		this.writeMessage(new CardGameMessage(CardGameMessage.JOIN, -1, this.getPlayerName()), false);
+		this.writeMessage(new CardGameMessage(CardGameMessage.READY, -1, null), true);
+	}
+	
+	/**
+	 * A private method for opening a socket to the game server and starting the thread
+	 * which receives messages from it.
+	 * 
+	 * @throws IOException if the server cannot be reached
+	 */
+	private void connect() throws IOException {
+		Socket newSock = new Socket(this.getServerIP(), this.getServerPort());
+		// Each message is flushed as soon as it is complete, so Nagle's algorithm would only delay moves
+		newSock.setTcpNoDelay(true);
+		// A server which has gone away without closing the connection would otherwise be waited for forever
+		newSock.setSoTimeout(READ_TIMEOUT);
+		this.writeLock.lock();
+		try {
+			this.sock = newSock;
+			this.os = new BufferedOutputStream(newSock.getOutputStream());
+		} finally {
+			this.writeLock.unlock();
+		}
+		Thread cThread = Threads.newThread(new ServerHandler(newSock), "ServerHandler", this.virtualThreads);
+		cThread.start();
+	}
+	
+	/**
+	 * A private method for reconnecting to the game server after the connection is lost,
+	 * and asking for the seat of the session back with a RESUME message.
+	 * Called from the thread which received messages from the lost connection.
+	 */
+	private void reconnect() {
+		this.table.printMsg("Lost the connection to the server. Reconnecting...\n");
+		this.table.disable();
+		for (int i = 0; i < RECONNECT_ATTEMPTS; i++) {
+			try {
+				Thread.sleep(1000);
+				this.connect();
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException e) {
+				continue;
+			}
+			this.resuming = true;
+			this.writeMessage(new CardGameMessage(CardGameMessage.HELLO, -1, BinaryCodec.VERSION), false);
+			this.writeMessage(new CardGameMessage(CardGameMessage.RESUME, -1, this.sessionToken), true);
+			return;
+		}
+		this.table.printMsg("Unable to reconnect to the server.\n");
+	}
+	
+	/**
+	 * A private method for restoring the game from the snapshot sent by the server
+	 * when the session is resumed.
+	 * 
+	 * @param snapshot the snapshot of the room and of its game
+	 */
+	private void restore(GameSnapshot snapshot) {
+		String[] names = snapshot.getNames();
+		for (int i = 0; i < 4; i++) {
+			this.getPlayerList().get(i).setName(i < names.length ? names[i] : null);
+		}
+		
+		// Shows the chat messages sent while the connection was lost
+		this.table.clearChatMsgArea();
+		for (String line : snapshot.getLog()) {
+			this.table.printChatMsg(line + "\n");
+		}
+		
+		this.table.clearMsgArea();
+		this.table.printMsg("Reconnected to the server.\n");
+		if (snapshot.isGameInProgress()) {
+			this.engine.restore(snapshot);
+			this.table.setActivePlayer(this.getCurrentIdx());
+			this.table.resetSelected();
+			if (!this.endOfGame()) {
+				this.printPlayerTurn();
+			}
+		}
+		this.table.repaint();
+		if (!snapshot.isGameInProgress() || this.endOfGame()) {
+			this.table.disable();
+		}
 	}
 
 	/**
@@ -202,16 +297,25 @@ public class BigTwoClient implements CardGame, NetworkGame{
 		int msgType = message.getType();
 		
 		if (msgType == CardGameMessage.PLAYER_LIST) {
+			if (this.resuming) {
+				// The session has expired, so the client joins as a new player
+				this.resuming = false;
+				this.table.printMsg("The session has expired. Joining the game again.\n");
+				for (int i = 0; i < 4; i++) {
+					this.getPlayerList().get(i).setName(null);
+				}
+				this.sendMessage(new CardGameMessage(CardGameMessage.JOIN, -1, this.getPlayerName()));
+			}
 			this.setPlayerID(message.getPlayerID());
 			String[] nameList = (String[]) message.getData();
 			for (int i = 0; i < 4; i++) {
 				if (nameList[i] != null) {
-					this.playerList.get(i).setName(nameList[i]);
+					this.getPlayerList().get(i).setName(nameList[i]);
 				}
 			}
 			this.table.repaint();
 		} else if (msgType == CardGameMessage.JOIN) {
-			this.playerList.get(message.getPlayerID()).setName((String) message.getData());
+			this.getPlayerList().get(message.getPlayerID()).setName((String) message.getData());
 			if (message.getPlayerID() == this.getPlayerID()) {
 				this.sendMessage(new CardGameMessage(CardGameMessage.READY, -1, null));
 			}
@@ -222,7 +326,7 @@ public class BigTwoClient implements CardGame, NetworkGame{
 			this.table.printMsg("Unable to join game: the server is full\n");
 			this.table.repaint();
 		} else if (msgType == CardGameMessage.QUIT) {
-			this.playerList.get(message.getPlayerID()).setName(null);
+			this.getPlayerList().get(message.getPlayerID()).setName(null);
 			if (this.endOfGame() == false) {
 				// Stops the game
 				this.table.disable();
@@ -239,9 +343,21 @@ public class BigTwoClient implements CardGame, NetworkGame{
 		} else if (msgType == CardGameMessage.MOVE) {
 			this.checkMove(message.getPlayerID(), (int[]) message.getData());
 			this.table.repaint();
+		} else if (msgType == CardGameMessage.ILLEGAL) {
+			this.table.printMsg("Not a legal move!!!\n");
+			this.table.repaint();
 		} else if (msgType == CardGameMessage.MSG) {
 			this.table.printChatMsg((String) message.getData() + "\n");
 			this.table.repaint();
+		} else if (msgType == CardGameMessage.SESSION) {
+			this.sessionToken = (String) message.getData();
+		} else if (msgType == CardGameMessage.SNAPSHOT) {
+			this.resuming = false;
+			this.setPlayerID(message.getPlayerID());
+			this.restore((GameSnapshot) message.getData());
+		} else if (msgType == CardGameMessage.PING) {
+			// Shows the server that this client is alive
+			this.sendMessage(new CardGameMessage(CardGameMessage.PING, -1, null));
 		}
 	}
 
@@ -251,8 +367,28 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 */
 	@Override
 	public void sendMessage(GameMessage message) {
+		this.writeMessage(message, true);
+	}
+	
+	/**
+	 * A private method for writing a message to the buffered stream to the game server.
+	 * Messages written without a flush leave with the next message which is flushed.
+	 * 
+	 * @param message the message to be sent
+	 * @param flush true to send the buffered messages now
+	 */
+	private void writeMessage(GameMessage message, boolean flush) {
 		try {
-			this.oos.writeObject(message);
+			byte[] frame = this.codec.encode((CardGameMessage) message);
+			this.writeLock.lock();
+			try {
+				this.os.write(frame);
+				if (flush) {
+					this.os.flush();
+				}
+			} finally {
+				this.writeLock.unlock();
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -282,7 +418,7 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 */
 	@Override
 	public ArrayList<CardGamePlayer> getPlayerList() {
-		return this.playerList;
+		return this.engine.getPlayerList();
 	}
 
 	/**
@@ -290,7 +426,7 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 */
 	@Override
 	public ArrayList<Hand> getHandsOnTable() {
-		return this.handsOnTable;
+		return this.engine.getHandsOnTable();
 	}
 
 	/**
@@ -298,7 +434,7 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 */
 	@Override
 	public int getCurrentIdx() {
-		return this.currentIdx;
+		return this.engine.getCurrentIdx();
 	}
 
 	/**
@@ -311,38 +447,9 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 */
 	@Override
 	public void start(Deck deck) {
-		// Removes all cards from players
-		for (int i = 0; i < this.playerList.size(); i++) {
-			this.playerList.get(i).removeAllCards();
-		}
-		// Removes all cards from the table
-		this.handsOnTable.clear();
-		
-		// Distributes cards to players one by one
-		for (int i = 0; i < 13; ++i) {
-			for (int j = 0; j < 4; ++j) {
-				playerList.get(j).addCard(deck.getCard(4*i+j));
-			}
-		}
-		
-		// Sorts the hands of all players
-		for (int i = 0; i < 4; ++i) {
-			playerList.get(i).sortCardsInHand();
-		}
-		
-		// Finds the player with three of diamonds
-		// Sets currentIdx and activePlayer
-		Card threeOfDiamonds = new Card(0, 2);
-		
-		for (int i = 0; i < 4; ++i) {
-			for (int j = 0; j < 13; ++j) {
-				if (playerList.get(i).getCardsInHand().contains(threeOfDiamonds)) {
-					this.currentIdx = i;
-					this.table.setActivePlayer(i);
-					break;
-				}
-			}
-		}
+		// Removes all cards, deals the deck and finds the player with three of diamonds
+		this.engine.start(deck);
+		this.table.setActivePlayer(this.getCurrentIdx());
 		
 		this.table.clearMsgArea();
 		this.table.printMsg("All players are ready. The game starts now.\n");
@@ -372,169 +479,42 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 */
 	@Override
 	public void checkMove(int playerID, int[] cardIdx) {
-		CardGamePlayer currentPlayer = playerList.get(playerID);
-		CardList currentCards = currentPlayer.play(cardIdx);
-
-		if (cardIdx == null) {
-			if (!handsOnTable.isEmpty()) {
-				
-				// Prevents passing of a player's own hand
-				int sizeOnTable = handsOnTable.size();
-				Hand lastHand = handsOnTable.get(sizeOnTable-1);
-				
-				if (lastHand.getPlayer() == currentPlayer) {
-					
-					table.printMsg("Not a legal move!!!\n");
-					return;
-					
-				} else {
-				
-					// Legal pass move
-					table.printMsg("{Pass}\n");
-					currentIdx = (currentIdx + 1) % 4;
-					table.setActivePlayer(getCurrentIdx());
-					this.printPlayerTurn();
-					table.repaint();
-					return;
-				}
-	
-			} else if (handsOnTable.isEmpty()) {
-				
-				// Cannot pass if the player is the first to move
-				table.printMsg("Not a legal move!!!\n");
-				return;
-				
-			}
-		}
-		
-		Hand currentHand = composeHand(currentPlayer, currentCards);
-		
-		Card threeOfDiamonds = new Card(0, 2);
-
+		MoveResult result = this.engine.checkMove(playerID, cardIdx);
 		
-		if (currentHand == null) {
-			
-			// Cannot use a hand that doesn't fit into the Big Two ruleset hand
+		if (!result.isLegal()) {
 			table.printMsg("Not a legal move!!!\n");
 			return;
-			
+		}
+		
+		if (result.getType() == MoveResult.PASS) {
+			table.printMsg("{Pass}\n");
 		} else {
+			Hand currentHand = result.getHand();
+			table.printMsg("{" + currentHand.getType() + "} ");
+			table.printMsg(currentHand.toString()+"\n");
+			currentHand.print(true, false);
 			
-			if (handsOnTable.isEmpty()) {
-				
-				if (!currentHand.contains(threeOfDiamonds) && handsOnTable.isEmpty()) {
-					
-					// Must have three of diamonds as starting move
-					table.printMsg("Not a legal move!!!\n");
-					return;
-					
-				} else {
-					
-					// Legal first turn move
-					table.printMsg("{" + currentHand.getType() + "} ");
-					table.printMsg(currentHand.toString()+"\n");
-					currentHand.print(true, false);
-					// Updates the hands on table
-					currentPlayer.removeCards(currentHand);
-					this.handsOnTable.add(currentHand);
-					currentIdx = (currentIdx + 1) % 4;
-					table.setActivePlayer(getCurrentIdx());
-					this.printPlayerTurn();
-					table.repaint();
-					return;
-				}
-		
-			} else {
-
-				// Legal non-pass move
-				if (currentHand.beats(this.getHandsOnTable().get(handsOnTable.size()-1))) {
-				
-					table.printMsg("{" + currentHand.getType() + "} ");
-					table.printMsg(currentHand.toString()+"\n");
-
-					currentHand.print(true, false);
-					// Updates the hands on table
-					currentPlayer.removeCards(currentHand);
-					this.handsOnTable.add(currentHand);
-
-					
-					// Accounts for the possibility of end of game once a hand is removed
-					if (this.endOfGame()) {
-						this.endGamePop();
-						// Game summary in the end
-						table.printMsg("Game ends\n");
-						for (int i = 0; i < 4; i++) {
-							CardGamePlayer playerInReport = this.playerList.get(i);
-							if (playerInReport.getNumOfCards() == 0) {
-								table.printMsg(playerInReport.getName() + " wins the game.\n");
-								
-							} else {
-								table.printMsg(playerInReport.getName() + " has " + playerInReport.getNumOfCards() + " cards in hand.\n");
-							}
-						}
-						table.disable();
-						return;
-					}
-
-					
-					currentIdx = (currentIdx + 1) % 4;
-					table.setActivePlayer(getCurrentIdx());
-					this.printPlayerTurn();
-					table.repaint();
-					return;
-				
-				} else {
-					
-					// When the player beats everyone else and the turn gets back to him
-					int sizeOnTable = handsOnTable.size();
-					Hand lastHand = handsOnTable.get(sizeOnTable-1);
-					if (lastHand.getPlayer() == currentPlayer) {
-						
-						table.printMsg("{" + currentHand.getType() + "} ");
-						table.printMsg(currentHand.toString()+"\n");
-						currentHand.print(true, false);
-						// Updates the hands on table
-						currentPlayer.removeCards(currentHand);
-						this.handsOnTable.add(currentHand);
-						
-						// Accounts for the possibility of end of game once a hand is removed
-						if (this.endOfGame()) {
-							this.endGamePop();
-							// Game summary in the end
-							table.printMsg("Game ends\n");
-							for (int i = 0; i < 4; i++) {
-								CardGamePlayer playerInReport = this.playerList.get(i);
-								if (playerInReport.getNumOfCards() == 0) {
-									table.printMsg(playerInReport.getName() + " wins the game.\n");
-									
-								} else {
-									table.printMsg(playerInReport.getName() + " has " + playerInReport.getNumOfCards() + " cards in hand.\n");
-								}
-							}
-							table.disable();
-							return;
-						}
-
-						
-						currentIdx = (currentIdx + 1) % 4;
-						table.setActivePlayer(getCurrentIdx());
-						this.printPlayerTurn();
-						table.repaint();
-						
+			// Accounts for the possibility of end of game once a hand is removed
+			if (result.isEndOfGame()) {
+				this.endGamePop();
+				// Game summary in the end
+				table.printMsg("Game ends\n");
+				for (int i = 0; i < 4; i++) {
+					CardGamePlayer playerInReport = this.getPlayerList().get(i);
+					if (playerInReport.getNumOfCards() == 0) {
+						table.printMsg(playerInReport.getName() + " wins the game.\n");
 					} else {
-						
-						// Purely a different player with a hand that cannot beat the current hand
-						table.printMsg("Not a legal move!!!\n");
-						
+						table.printMsg(playerInReport.getName() + " has " + playerInReport.getNumOfCards() + " cards in hand.\n");
 					}
-					
-					return;
-					
 				}
-			
+				table.disable();
+				return;
 			}
-			
 		}
+		
+		table.setActivePlayer(getCurrentIdx());
+		this.printPlayerTurn();
+		table.repaint();
 	}
 
 	/**
@@ -542,12 +522,7 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 */
 	@Override
 	public boolean endOfGame() {
-		for (int i = 0; i < this.playerList.size(); i++) {
-			if (this.playerList.get(i).getNumOfCards() <= 0) {
-				return true;
-			}
-		}
-		return false;
+		return this.engine.endOfGame();
 	}
 	
 	
@@ -565,7 +540,7 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 */
 	class ServerHandler implements Runnable{
 		private Socket serverHandlerSocket;
-		private ObjectInputStream ois;
+		private DataInputStream dis;
 		//private CardGameMessage cgMessage;
 		
 		/**
@@ -576,7 +551,7 @@ public class BigTwoClient implements CardGame, NetworkGame{
 		public ServerHandler(Socket serverHandlerSocket) {
 			this.serverHandlerSocket = serverHandlerSocket;
 			try {
-				this.ois = new ObjectInputStream(serverHandlerSocket.getInputStream());
+				this.dis = new DataInputStream(new BufferedInputStream(serverHandlerSocket.getInputStream()));
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
@@ -588,23 +563,35 @@ public class BigTwoClient implements CardGame, NetworkGame{
 		public void run() {
 			CardGameMessage cgMessage;
 			try {
-				while ((cgMessage = (CardGameMessage) ois.readObject()) != null) {
+				while ((cgMessage = codec.read(dis)) != null) {
 					parseMessage(cgMessage);
 				}
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 			
+			// Closes the socket, which is still open if the read has timed out
+			try {
+				this.serverHandlerSocket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			
+			// Takes back the seat if the current connection is lost after joining
+			if (sessionToken != null && serverHandlerSocket == sock) {
+				reconnect();
+			}
+			
 		}
 	}
 	
 	/**
 	 * A method for creating an instance of BigTwoClient
 	 * 
-	 * @param args unused
+	 * @param args "virtual" to receive messages from the server on a virtual thread
 	 */
 	public static void main(String[] args) {
-		BigTwoClient bigTwoClient = new BigTwoClient();
+		BigTwoClient bigTwoClient = new BigTwoClient(args.length > 0 && args[0].equalsIgnoreCase("virtual"));
 	}
 	
 	/**
@@ -614,48 +601,7 @@ public class BigTwoClient implements CardGame, NetworkGame{
 	 * @return A valid hand of the player from the specified list. Null if no valid hand can be composed.
 	 */
 	public static Hand composeHand(CardGamePlayer player, CardList cards) {
-		
-		if (cards.size() == 1) {
-			Hand single = new Single(player, cards);
-			if (single.isValid()) {
-				return single;
-			}
-		} else if (cards.size() == 2) {
-			Hand formedHand = new Pair(player, cards);
-			if (formedHand.isValid()) {
-				return formedHand;
-			}
-		} else if (cards.size() == 3) {
-			Hand triple = new Triple(player, cards);
-			if (triple.isValid()) {
-				return triple;
-			}
-		} else if (cards.size() == 5) {
-			Hand straight = new Straight(player, cards);
-			Hand flush = new Flush(player, cards);
-			Hand fullhouse = new FullHouse(player, cards);
-			Hand quad = new Quad(player, cards);
-			Hand straightflush = new StraightFlush(player, cards);
-			if (straightflush.isValid()) {
-				return straightflush;
-			}
-			if (quad.isValid()) {
-				return quad;
-			}
-			if (fullhouse.isValid()) {
-				return fullhouse;
-			}
-			if (flush.isValid()) {
-				return flush;
-			}
-			if (straight.isValid()) {
-				return straight;
-			}
-			
-		}
-		
-		return null;
-		
+		return BigTwoEngine.composeHand(player, cards);
 	}
 	
 	/**
@@ -682,7 +628,7 @@ public class BigTwoClient implements CardGame, NetworkGame{
 		String results = "";
 		results += "Game ends\n";
 		for (int i = 0; i < 4; i++) {
-			CardGamePlayer playerInReport = this.playerList.get(i);
+			CardGamePlayer playerInReport = this.getPlayerList().get(i);
 			if (playerInReport.getNumOfCards() == 0) {
 				if (i == this.getPlayerID()) {
 					results += ("You win!\n");
@@ -11,15 +11,14 @@ public class BigTwoDeck extends Deck{
 	
 	/**
 	 * Overrides the initialize() method in the Deck class.
-	 * Removes all cards from the deck, creates 52 Big Two cards and adds them to the deck.
+	 * Removes all cards from the deck and adds the 52 canonical Big Two cards to the deck.
 	 * 
 	 */
 	public void initialize() {
 		removeAllCards();
 		for (int i = 0; i < 4; i++) {
 			for (int j = 0; j < 13; j++) {
-				BigTwoCard card = new BigTwoCard(i, j);
-				addCard(card);
+				addCard(BigTwoCard.valueOf(i, j));
 			}
 		}
 	}
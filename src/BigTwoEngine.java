@@ -0,0 +1,370 @@
+import java.util.ArrayList;
+
+/**
+ * This class holds the state of a Big Two game and applies its rules.
+ * It does not depend on any GUI or network classes, so the client, the
+ * server and simulators can all use it to run a game.
+ *
+ * @author chanyuyan
+ *
+ */
+public class BigTwoEngine {
+
+	// The set holding only the three of diamonds, which must be in the first hand of a game
+	private static final CardSet THREE_OF_DIAMONDS = CardSet.of(BigTwoCard.valueOf(0, 2));
+
+	// The number of players in a Big Two game
+	private static final int NUM_OF_PLAYERS = 4;
+
+	// A list of players
+	private final ArrayList<CardGamePlayer> playerList;
+
+	// A list of hands played on the table
+	private final ArrayList<Hand> handsOnTable = new ArrayList<Hand>();
+
+	// An integer specifying the index of the player for the current turn
+	private int currentIdx = -1;
+
+	// An integer specifying the number of passes since the last hand was played
+	private int numOfPasses;
+
+	/**
+	 * Creates an engine with 4 new players.
+	 */
+	public BigTwoEngine() {
+		this.playerList = new ArrayList<CardGamePlayer>();
+		for (int i = 0; i < NUM_OF_PLAYERS; i++) {
+			this.playerList.add(new CardGamePlayer());
+		}
+	}
+
+	/**
+	 * Creates an engine for the specified players.
+	 *
+	 * @param playerList a list of 4 players
+	 */
+	public BigTwoEngine(ArrayList<CardGamePlayer> playerList) {
+		this.playerList = playerList;
+	}
+
+	/**
+	 * Returns the list of players.
+	 *
+	 * @return the list of players
+	 */
+	public ArrayList<CardGamePlayer> getPlayerList() {
+		return this.playerList;
+	}
+
+	/**
+	 * Returns the list of hands played on the table.
+	 *
+	 * @return the list of hands played on the table
+	 */
+	public ArrayList<Hand> getHandsOnTable() {
+		return this.handsOnTable;
+	}
+
+	/**
+	 * Returns the last hand played on the table.
+	 *
+	 * @return the last hand played, or null if no hand has been played
+	 */
+	public Hand getLastHand() {
+		if (this.handsOnTable.isEmpty()) {
+			return null;
+		}
+		return this.handsOnTable.get(this.handsOnTable.size() - 1);
+	}
+
+	/**
+	 * Returns the index of the player for the current turn.
+	 *
+	 * @return the index of the current player, or -1 if no game has started
+	 */
+	public int getCurrentIdx() {
+		return this.currentIdx;
+	}
+
+	/**
+	 * Returns the number of passes since the last hand was played.
+	 *
+	 * @return the number of passes since the last hand was played
+	 */
+	public int getNumOfPasses() {
+		return this.numOfPasses;
+	}
+
+	/**
+	 * Starts a new game with the specified shuffled deck.
+	 * All cards are removed from the players and the table, the cards are
+	 * dealt one by one, and the player holding the 3 of Diamonds gets the
+	 * first turn.
+	 *
+	 * @param deck the deck of shuffled cards
+	 */
+	public void start(Deck deck) {
+		// Removes all cards from players and the table
+		for (int i = 0; i < this.playerList.size(); i++) {
+			this.playerList.get(i).removeAllCards();
+		}
+		this.handsOnTable.clear();
+		this.numOfPasses = 0;
+
+		// Distributes cards to players one by one
+		for (int i = 0; i < 13; ++i) {
+			for (int j = 0; j < NUM_OF_PLAYERS; ++j) {
+				this.playerList.get(j).addCard(deck.getCard(NUM_OF_PLAYERS*i+j));
+			}
+		}
+
+		// Sorts the hands of all players and finds the player with three of diamonds
+		this.currentIdx = -1;
+		for (int i = 0; i < NUM_OF_PLAYERS; ++i) {
+			CardGamePlayer player = this.playerList.get(i);
+			player.sortCardsInHand();
+			if (player.getCardSet().containsAll(THREE_OF_DIAMONDS)) {
+				this.currentIdx = i;
+			}
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the game in progress, for a client which resumes
+	 * its session.
+	 *
+	 * @param names the names of the players, null for a free seat
+	 * @param log the recent chat messages of the room, oldest first
+	 * @return the snapshot, without a game if none has started
+	 */
+	public GameSnapshot snapshot(String[] names, String[] log) {
+		if (this.currentIdx < 0) {
+			return new GameSnapshot(names, log);
+		}
+		CardSet[] hands = new CardSet[this.playerList.size()];
+		for (int i = 0; i < hands.length; i++) {
+			hands[i] = this.playerList.get(i).getCardSet();
+		}
+		Hand lastHand = this.getLastHand();
+		if (lastHand == null) {
+			return new GameSnapshot(names, log, hands, -1, CardSet.EMPTY,
+					this.currentIdx, this.numOfPasses);
+		}
+		return new GameSnapshot(names, log, hands,
+				this.playerList.indexOf(lastHand.getPlayer()),
+				lastHand.getCardSet(), this.currentIdx, this.numOfPasses);
+	}
+
+	/**
+	 * Restores a game from a snapshot. The hands of the players are sorted as
+	 * they would be in the game, so that later moves pick the same cards by
+	 * index. Only the hand on top of the table is restored, which is all the
+	 * rules look at.
+	 *
+	 * @param snapshot the snapshot of a game in progress
+	 */
+	public void restore(GameSnapshot snapshot) {
+		for (int i = 0; i < this.playerList.size(); i++) {
+			CardGamePlayer player = this.playerList.get(i);
+			player.removeAllCards();
+			if (i < snapshot.getNumOfHands()) {
+				CardList cards = snapshot.getHand(i).toCardList();
+				for (int j = 0; j < cards.size(); j++) {
+					player.addCard(cards.getCard(j));
+				}
+				player.sortCardsInHand();
+			}
+		}
+		this.handsOnTable.clear();
+		if (snapshot.getLastPlayer() >= 0) {
+			Hand lastHand = composeHand(this.playerList.get(snapshot.getLastPlayer()),
+					snapshot.getLastHand().toCardList());
+			if (lastHand != null) {
+				this.handsOnTable.add(lastHand);
+			}
+		}
+		this.currentIdx = snapshot.getCurrentIdx();
+		this.numOfPasses = snapshot.getNumOfPasses();
+	}
+
+	/**
+	 * Checks a move given as indices into the cards of the player, and applies
+	 * it if it is legal.
+	 *
+	 * @param playerID the playerID of the player who makes the move
+	 * @param cardIdx the indices of the selected cards, or null for a pass
+	 * @return the result of the move
+	 */
+	public MoveResult checkMove(int playerID, int[] cardIdx) {
+		if (!isTurnOf(playerID)) {
+			return illegal(playerID);
+		}
+		if (cardIdx == null) {
+			return pass(playerID);
+		}
+		CardGamePlayer currentPlayer = this.playerList.get(playerID);
+		CardList currentCards = currentPlayer.play(cardIdx);
+		if (currentCards == null) {
+			return illegal(playerID);
+		}
+		return play(playerID, composeHand(currentPlayer, currentCards));
+	}
+
+	/**
+	 * Checks a move given as a set of cards, and applies it if it is legal.
+	 * This suits moves taken from a MoveList.
+	 *
+	 * @param playerID the playerID of the player who makes the move
+	 * @param cards the set of cards played, or an empty set for a pass
+	 * @return the result of the move
+	 */
+	public MoveResult checkMove(int playerID, CardSet cards) {
+		if (!isTurnOf(playerID)) {
+			return illegal(playerID);
+		}
+		if (cards.isEmpty()) {
+			return pass(playerID);
+		}
+		CardGamePlayer currentPlayer = this.playerList.get(playerID);
+		if (!currentPlayer.getCardSet().containsAll(cards)) {
+			return illegal(playerID);
+		}
+		return play(playerID, composeHand(currentPlayer, cards.toCardList()));
+	}
+
+	/**
+	 * Returns true if the game has started, has not ended, and it is the
+	 * specified player's turn.
+	 *
+	 * @param playerID the playerID of the player
+	 * @return true if the player may make a move now
+	 */
+	private boolean isTurnOf(int playerID) {
+		return this.currentIdx >= 0 && playerID == this.currentIdx && !this.endOfGame();
+	}
+
+	/**
+	 * Applies a pass by the current player if it is legal.
+	 * A player cannot pass on the first move of a game or on their own hand.
+	 *
+	 * @param playerID the playerID of the current player
+	 * @return the result of the pass
+	 */
+	private MoveResult pass(int playerID) {
+		Hand lastHand = this.getLastHand();
+		if (lastHand == null || lastHand.getPlayer() == this.playerList.get(playerID)) {
+			return illegal(playerID);
+		}
+		this.numOfPasses++;
+		this.currentIdx = (this.currentIdx + 1) % NUM_OF_PLAYERS;
+		return new MoveResult(MoveResult.PASS, playerID, null, false);
+	}
+
+	/**
+	 * Applies a hand played by the current player if it is legal.
+	 * The first hand of a game must contain the 3 of Diamonds. Later hands
+	 * must beat the last hand, unless the last hand belongs to the same player.
+	 *
+	 * @param playerID the playerID of the current player
+	 * @param currentHand the hand composed from the selected cards, or null
+	 * @return the result of the play
+	 */
+	private MoveResult play(int playerID, Hand currentHand) {
+		if (currentHand == null) {
+			// Cannot use a hand that doesn't fit into the Big Two ruleset hand
+			return illegal(playerID);
+		}
+		Hand lastHand = this.getLastHand();
+		if (lastHand == null) {
+			// Must have three of diamonds as starting move
+			if (!currentHand.getCardSet().containsAll(THREE_OF_DIAMONDS)) {
+				return illegal(playerID);
+			}
+		} else if (!currentHand.beats(lastHand) && lastHand.getPlayer() != currentHand.getPlayer()) {
+			// Purely a different player with a hand that cannot beat the current hand
+			return illegal(playerID);
+		}
+
+		// Updates the hands on table
+		currentHand.getPlayer().removeCards(currentHand.getCardSet());
+		this.handsOnTable.add(currentHand);
+		this.numOfPasses = 0;
+		boolean endOfGame = this.endOfGame();
+		if (!endOfGame) {
+			this.currentIdx = (this.currentIdx + 1) % NUM_OF_PLAYERS;
+		}
+		return new MoveResult(MoveResult.PLAY, playerID, currentHand, endOfGame);
+	}
+
+	/**
+	 * Returns the result of an illegal move.
+	 *
+	 * @param playerID the playerID of the player who made the move
+	 * @return a result of the type ILLEGAL
+	 */
+	private static MoveResult illegal(int playerID) {
+		return new MoveResult(MoveResult.ILLEGAL, playerID, null, false);
+	}
+
+	/**
+	 * Checks if the game ends, that is, if any player has no cards left.
+	 *
+	 * @return true if the game ends; false otherwise
+	 */
+	public boolean endOfGame() {
+		return this.getWinner() >= 0;
+	}
+
+	/**
+	 * Returns the playerID of the player who has no cards left.
+	 *
+	 * @return the playerID of the winner, or -1 if the game has not ended
+	 */
+	public int getWinner() {
+		for (int i = 0; i < this.playerList.size(); i++) {
+			if (this.playerList.get(i).getNumOfCards() <= 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gives a valid hand from the specified list of cards of a player.
+	 * @param player the player whose hand is to be returned
+	 * @param cards the specified list of cards of the player
+	 * @return A valid hand of the player from the specified list. Null if no valid hand can be composed.
+	 */
+	public static Hand composeHand(CardGamePlayer player, CardList cards) {
+
+		// Classifies the cards first so that only the matching hand is built
+		long bits = CardSet.bitsOf(cards);
+		if (Long.bitCount(bits) != cards.size()) {
+			// The same card was selected more than once
+			return null;
+		}
+		int key = HandEvaluator.evaluate(bits);
+
+		switch (HandEvaluator.category(key)) {
+		case HandEvaluator.SINGLE:
+			return new Single(player, cards);
+		case HandEvaluator.PAIR:
+			return new Pair(player, cards);
+		case HandEvaluator.TRIPLE:
+			return new Triple(player, cards);
+		case HandEvaluator.STRAIGHT:
+			return new Straight(player, cards);
+		case HandEvaluator.FLUSH:
+			return new Flush(player, cards);
+		case HandEvaluator.FULL_HOUSE:
+			return new FullHouse(player, cards);
+		case HandEvaluator.QUAD:
+			return new Quad(player, cards);
+		case HandEvaluator.STRAIGHT_FLUSH:
+			return new StraightFlush(player, cards);
+		default:
+			return null;
+		}
+
+	}
+}
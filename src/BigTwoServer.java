@@ -1,9 +1,20 @@
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * This class is used to model a Big Two card game server.
  * @author Kenneth Wong
  *
  */
 public class BigTwoServer extends CardGameServer {
+	// The size at which the log file rolls over, in bytes
+	private static final long LOG_FILE_SIZE = 64L << 20;
+	// The number of rolled-over log files kept
+	private static final int LOG_FILE_BACKUPS = 4;
+	// How long a bot takes to make a move, in milliseconds
+	private static final long BOT_THINK_TIME = 500;
+	
 	/**
 	 * Creates and returns an instance of the BigTwoServer class.
 	 */
@@ -11,6 +22,14 @@ public class BigTwoServer extends CardGameServer {
 		super("Big Two Server", 4);
 	}
 	
+	/**
+	 * Creates and returns an instance of the BigTwoServer class.
+	 * @param headless true for no console window; false to show the log in one
+	 */
+	public BigTwoServer(boolean headless) {
+		super("Big Two Server", 4, headless);
+	}
+	
 	/**
 	 * Creates and returns an instance of the BigTwoDeck class.
 	 * @return an instance of the BigTwoDeck class
@@ -19,15 +38,280 @@ public class BigTwoServer extends CardGameServer {
 		return new BigTwoDeck(); 
 	}
 	
+	/**
+	 * Creates and returns a room which validates moves against the Big Two
+	 * rules.
+	 * @param roomID the ID of the new room
+	 * @return an instance of the BigTwoRoom class
+	 */
+	protected GameRoom createRoom(int roomID) {
+		return new BigTwoRoom(this, roomID);
+	}
+	
+	/**
+	 * Creates and returns a bot which plays Big Two with the greedy strategy.
+	 * @param botID a number telling the bots of the server apart
+	 * @return an instance of the BigTwoBot class
+	 */
+	protected BotConnection createBot(int botID) {
+		return new BigTwoBot(this, botID);
+	}
+	
+	/**
+	 * This inner class is used to model a room of a Big Two server, which
+	 * keeps the state of its game.
+	 * @author chanyuyan
+	 *
+	 */
+	private static class BigTwoRoom extends GameRoom {
+		// The state of the game in progress, used to validate moves
+		private BigTwoEngine engine = new BigTwoEngine();
+		
+		/**
+		 * Creates and returns an instance of the BigTwoRoom class.
+		 * @param server the server hosting this room
+		 * @param roomID the ID of this room
+		 */
+		public BigTwoRoom(BigTwoServer server, int roomID) {
+			super(server, roomID, 4);
+		}
+		
+		/**
+		 * Deals the deck of the new game to the players on the server.
+		 * @param deck the shuffled deck of the new game
+		 */
+		protected void startGame(Deck deck) {
+			engine.start(deck);
+		}
+		
+		/**
+		 * Discards the game in progress.
+		 */
+		protected void stopGame() {
+			engine = new BigTwoEngine();
+		}
+		
+		/**
+		 * Validates a move against the Big Two rules and applies it to the game
+		 * on the server.
+		 * @param playerID the playerID of the player who makes the move
+		 * @param cardIdx the list of the indices of the cards selected by the player
+		 * @return true if the move is legal; false otherwise
+		 */
+		protected boolean checkMove(int playerID, int[] cardIdx) {
+			return engine.checkMove(playerID, cardIdx).isLegal();
+		}
+		
+		/**
+		 * Takes a snapshot of the room with the hands, the table top and the
+		 * turn of the game in progress.
+		 * @param names the names of the players, null for a free seat
+		 * @param log the recent chat messages of the room, oldest first
+		 * @return the snapshot sent to a client resuming its session
+		 */
+		protected GameSnapshot createSnapshot(String[] names, String[] log) {
+			return engine.snapshot(names, log);
+		}
+		
+		/**
+		 * Returns the number of cards left in each hand once the game has ended.
+		 * @return one byte per player, or null if the game goes on
+		 */
+		protected byte[] getResult() {
+			if (!engine.endOfGame()) {
+				return null;
+			}
+			byte[] cardsLeft = new byte[engine.getPlayerList().size()];
+			for (int i = 0; i < cardsLeft.length; i++) {
+				cardsLeft[i] = (byte) engine.getPlayerList().get(i).getNumOfCards();
+			}
+			return cardsLeft;
+		}
+	}
+	
+	/**
+	 * This inner class is used to model a bot taking an empty seat of a table
+	 * formed by the lobby. It follows the game with an engine of its own, and
+	 * when its turn comes, makes a legal move chosen by the greedy strategy
+	 * after a short pause. The move is chosen when the pause ends, on the
+	 * state of the game at that time, by a timer task which takes the lock
+	 * of the bot as handle() does. It is ready for a new game whenever a
+	 * game ends or a player leaves.
+	 * @author chanyuyan
+	 *
+	 */
+	private static class BigTwoBot extends BotConnection {
+		// The strategy of the bots, which keeps no state and is shared
+		private static final BigTwoStrategy STRATEGY = new GreedyStrategy();
+		
+		// The number of this bot
+		private final int botID;
+		// The state of the game of the table of this bot
+		private BigTwoEngine engine = new BigTwoEngine();
+		// The generator of legal moves
+		private final MoveGenerator generator = new MoveGenerator();
+		// The list of legal moves
+		private final MoveList moves = new MoveList();
+		// The source of randomness of the strategy
+		private final Random random = new Random();
+		// The seat of this bot
+		private int playerID = -1;
+		// The number of changes to the state of the game, which tells a
+		// pending move whether the turn it was scheduled for is still on
+		private int numOfChanges = 0;
+		// The lock guarding the state of this bot, shared by handle() and
+		// the timer task making a move
+		private final ReentrantLock lock = new ReentrantLock();
+		
+		/**
+		 * Creates and returns an instance of the BigTwoBot class.
+		 * @param server the server of the bot
+		 * @param botID a number telling the bots of the server apart
+		 */
+		public BigTwoBot(BigTwoServer server, int botID) {
+			super(server, botID);
+			this.botID = botID;
+		}
+		
+		/**
+		 * Follows the game, and plays when the turn comes to this bot.
+		 * @param message the message sent to this bot by its room
+		 */
+		protected void handle(CardGameMessage message) {
+			lock.lock();
+			try {
+				follow(message);
+			} finally {
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * Updates the state of the game with a message sent to this bot, and
+		 * plays when the turn comes to this bot. Runs under the lock.
+		 * @param message the message sent to this bot by its room
+		 */
+		private void follow(CardGameMessage message) {
+			switch (message.getType()) {
+			case CardGameMessage.PLAYER_LIST:
+				playerID = message.getPlayerID();
+				send(new CardGameMessage(CardGameMessage.JOIN, -1, "Bot " + botID));
+				send(new CardGameMessage(CardGameMessage.READY, -1, null));
+				break;
+			case CardGameMessage.START:
+				engine.start((Deck) message.getData());
+				numOfChanges++;
+				play();
+				break;
+			case CardGameMessage.MOVE:
+				if (!engine.checkMove(message.getPlayerID(), (int[]) message.getData()).isLegal()) {
+					break;
+				}
+				numOfChanges++;
+				if (engine.endOfGame()) {
+					send(new CardGameMessage(CardGameMessage.READY, -1, null));
+				} else {
+					play();
+				}
+				break;
+			case CardGameMessage.QUIT:
+				// the game is abandoned; waits for a new player
+				engine = new BigTwoEngine();
+				numOfChanges++;
+				send(new CardGameMessage(CardGameMessage.READY, -1, null));
+				break;
+			default:
+				break;
+			}
+		}
+		
+		/**
+		 * Schedules a move after a pause if it is the turn of this bot.
+		 */
+		private void play() {
+			if (engine.getCurrentIdx() != playerID) {
+				return;
+			}
+			final int turn = numOfChanges;
+			getServer().schedule(() -> move(turn), BOT_THINK_TIME);
+		}
+		
+		/**
+		 * Chooses and makes a move on the current state of the game, unless
+		 * the game has changed since the move was scheduled. Runs on the
+		 * timer of the server.
+		 * @param turn the number of changes when the move was scheduled
+		 */
+		private void move(int turn) {
+			lock.lock();
+			try {
+				if (turn != numOfChanges || engine.getCurrentIdx() != playerID) {
+					return;
+				}
+				CardGamePlayer player = engine.getPlayerList().get(playerID);
+				if (generator.generate(player, engine.getHandsOnTable(), moves) == 0) {
+					return;
+				}
+				int choice = STRATEGY.chooseMove(engine, playerID, moves, random);
+				send(new CardGameMessage(CardGameMessage.MOVE, -1,
+						player.getCardIndices(CardSet.valueOf(moves.getCards(choice)))));
+			} finally {
+				lock.unlock();
+			}
+		}
+	} // BigTwoBot
+	
 	/**
 	 * main() method for starting the server.
 	 * 
 	 * @param args
-	 *            the port to be used by the server. The default port 5000 will
-	 *            be used if no arguments has been supplied
+	 *            the port to be used by the server, the transport,
+	 *            "blocking", "virtual" (blocking on virtual threads) or "nio",
+	 *            the maximum number of rooms, the port of the HTTP
+	 *            endpoint of the metrics on localhost (-1 for none), the log
+	 *            file, which makes the server headless ("-" for a console
+	 *            window), the time in milliseconds after which bots fill
+	 *            the tables, which seats clients through the lobby ("-" for
+	 *            no lobby), the directory of the event journal ("-" for no
+	 *            journal), and "serial" to accept Java-serialized messages
+	 *            from clients that do not send a binary HELLO. The default
+	 *            port 2396, the blocking transport, 4096 rooms, no endpoint,
+	 *            a console window, no lobby, no journal and binary messages
+	 *            only will be used if no arguments has been supplied
 	 */
 	public static void main(String[] args) {
-		BigTwoServer server = new BigTwoServer();
+		boolean headless = args.length > 4 && !args[4].equals("-");
+		BigTwoServer server = new BigTwoServer(headless);
+		if (headless) {
+			try {
+				server.setLogFile(args[4], LOG_FILE_SIZE, LOG_FILE_BACKUPS);
+			} catch (IOException ex) {
+				System.err.println("Cannot open the log file " + args[4]);
+				ex.printStackTrace();
+				return;
+			}
+		}
+		if (args.length > 1 && args[1].equalsIgnoreCase("nio")) {
+			server.setTransport(NIO_TRANSPORT);
+		} else if (args.length > 1 && args[1].equalsIgnoreCase("virtual")) {
+			server.setVirtualThreads(true);
+		}
+		if (args.length > 2) {
+			server.setMaxNumOfRooms(Integer.parseInt(args[2]));
+		}
+		if (args.length > 3) {
+			server.setMetricsPort(Integer.parseInt(args[3]));
+		}
+		if (args.length > 5 && !args[5].equals("-")) {
+			server.setLobbyEnabled(true);
+			server.setBotFillDelay(Long.parseLong(args[5]));
+		}
+		if (args.length > 6 && !args[6].equals("-")) {
+			server.setJournalDirectory(args[6]);
+		}
+		if (args.length > 7 && args[7].equalsIgnoreCase("serial")) {
+			server.setSerializationAllowed(true);
+		}
 		if (args.length > 0) {
 			server.start(Integer.parseInt(args[0]));
 		} else {
@@ -0,0 +1,179 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class plays complete Big Two games between strategies, without any
+ * GUI or network connection, and reports aggregate statistics.
+ * <p>
+ * Games are split across a ForkJoinPool. Each leaf task owns its engine,
+ * deck, move generator, move list and Random, and reuses them for every game
+ * it plays. Game i of a run is always dealt from the same seed, so a run can
+ * be repeated exactly whatever the number of threads.
+ *
+ * @author chanyuyan
+ *
+ */
+public class BigTwoSimulator {
+	// The number of games below which a task stops splitting
+	private static final int GAMES_PER_TASK = 512;
+
+	// The strategies used by the four seats
+	private final BigTwoStrategy[] strategies;
+	// The seed of the run
+	private final long seed;
+
+	/**
+	 * Creates and returns an instance of the BigTwoSimulator class.
+	 *
+	 * @param strategies
+	 *            the strategies used by the four seats
+	 * @param seed
+	 *            the seed from which every game is dealt
+	 */
+	public BigTwoSimulator(BigTwoStrategy[] strategies, long seed) {
+		if (strategies.length != 4) {
+			throw new IllegalArgumentException("A Big Two game needs 4 strategies");
+		}
+		this.strategies = strategies.clone();
+		this.seed = seed;
+	}
+
+	/**
+	 * Plays the specified number of games on a pool of the specified size.
+	 *
+	 * @param numOfGames
+	 *            the number of games to be played
+	 * @param parallelism
+	 *            the number of threads to be used
+	 * @return the statistics of all games played
+	 */
+	public SimulationStats run(long numOfGames, int parallelism) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return pool.invoke(new SimulationTask(0, numOfGames));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Plays one game from the first deal to the end.
+	 *
+	 * @param engine
+	 *            the engine holding the game
+	 * @param generator
+	 *            the move generator of the calling thread
+	 * @param moves
+	 *            the move list of the calling thread
+	 * @param random
+	 *            the source of randomness of the calling thread
+	 * @return the number of moves made, passes included
+	 */
+	private int playGame(BigTwoEngine engine, MoveGenerator generator,
+			MoveList moves, Random random) {
+		int numOfMoves = 0;
+		while (!engine.endOfGame()) {
+			int playerID = engine.getCurrentIdx();
+			generator.generate(engine.getPlayerList().get(playerID),
+					engine.getHandsOnTable(), moves);
+			int choice = strategies[playerID].chooseMove(engine, playerID,
+					moves, random);
+			MoveResult result = engine.checkMove(playerID,
+					CardSet.valueOf(moves.getCards(choice)));
+			if (!result.isLegal()) {
+				throw new IllegalStateException("Generated move was rejected: "
+						+ CardSet.valueOf(moves.getCards(choice)));
+			}
+			numOfMoves++;
+		}
+		return numOfMoves;
+	}
+
+	/**
+	 * This inner class is used for playing a range of games, splitting it
+	 * across the pool while it is large.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	@SuppressWarnings("serial")
+	private class SimulationTask extends RecursiveTask<SimulationStats> {
+		// The index of the first game of this task
+		private final long first;
+		// The number of games of this task
+		private final long count;
+
+		/**
+		 * Creates and returns an instance of the SimulationTask class.
+		 *
+		 * @param first
+		 *            the index of the first game
+		 * @param count
+		 *            the number of games
+		 */
+		public SimulationTask(long first, long count) {
+			this.first = first;
+			this.count = count;
+		}
+
+		// implementation of method from the RecursiveTask class
+		protected SimulationStats compute() {
+			if (count > GAMES_PER_TASK) {
+				long half = count / 2;
+				SimulationTask left = new SimulationTask(first, half);
+				SimulationTask right = new SimulationTask(first + half, count - half);
+				left.fork();
+				SimulationStats stats = right.compute();
+				return stats.merge(left.join());
+			}
+
+			SimulationStats stats = new SimulationStats();
+			BigTwoEngine engine = new BigTwoEngine();
+			BigTwoDeck deck = new BigTwoDeck();
+			MoveGenerator generator = new MoveGenerator();
+			MoveList moves = new MoveList();
+			Random random = new Random();
+			for (long i = first; i < first + count; i++) {
+				random.setSeed(seed ^ (i * 0x9E3779B97F4A7C15L));
+				deck.initialize();
+				deck.shuffle(random);
+				engine.start(deck);
+				stats.record(engine, playGame(engine, generator, moves, random));
+			}
+			return stats;
+		}
+	}
+
+	/**
+	 * main() method for running a simulation.
+	 *
+	 * @param args
+	 *            the number of games (default 100000), the number of threads
+	 *            (default: all processors), the seed (default 0), and up to
+	 *            four strategy names, "greedy" or "random" (default: greedy in
+	 *            seat 0, random in the others)
+	 */
+	public static void main(String[] args) {
+		long numOfGames = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+		int parallelism = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0L;
+
+		BigTwoStrategy[] strategies = new BigTwoStrategy[4];
+		for (int i = 0; i < 4; i++) {
+			String name = args.length > 3 + i ? args[3 + i] : (i == 0 ? "greedy" : "random");
+			strategies[i] = name.equalsIgnoreCase("greedy") ? new GreedyStrategy()
+					: new RandomStrategy();
+		}
+
+		BigTwoSimulator simulator = new BigTwoSimulator(strategies, seed);
+		long startTime = System.nanoTime();
+		SimulationStats stats = simulator.run(numOfGames, parallelism);
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+
+		System.out.print(stats.toString(strategies));
+		System.out.printf("%d threads, %.2f s, %.0f games/s%n", parallelism,
+				seconds, stats.getNumOfGames() / seconds);
+	}
+}
@@ -0,0 +1,27 @@
+import java.util.Random;
+
+/**
+ * An interface for a strategy that chooses moves for a player in a Big Two
+ * game. Strategies are shared by all threads of a BigTwoSimulator, so an
+ * implementation should keep no mutable state of its own.
+ * 
+ * @author chanyuyan
+ *
+ */
+public interface BigTwoStrategy {
+	/**
+	 * Chooses one of the legal moves of the current player.
+	 * 
+	 * @param engine
+	 *            the engine holding the state of the game
+	 * @param playerID
+	 *            the playerID of the player to move
+	 * @param moves
+	 *            the legal moves of the player, never empty
+	 * @param random
+	 *            a source of randomness owned by the calling thread
+	 * @return the index of the chosen move in the list of moves
+	 */
+	public int chooseMove(BigTwoEngine engine, int playerID, MoveList moves,
+			Random random);
+}
@@ -0,0 +1,428 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class encodes card game messages in a compact binary layout, without
+ * Java serialization.
+ * <p>
+ * A payload starts with the message type and the playerID, one byte each,
+ * followed by the data of the type:
+ * <ul>
+ * <li>PLAYER_LIST: the number of names, then the names</li>
+ * <li>JOIN, QUIT, MSG, SESSION, RESUME: a string</li>
+ * <li>FULL, READY, PING: nothing</li>
+ * <li>START: the kind of deck, the number of cards, then one byte per card
+ * holding suit * 13 + rank, in the order of the deck</li>
+ * <li>MOVE, ILLEGAL: a 16-bit mask of the selected card indices, or 0xFFFF
+ * for a pass</li>
+ * <li>HELLO: the version of the layout</li>
+ * <li>SNAPSHOT: the number of names, the names, the number of chat
+ * messages, the chat messages, then the number of hands, 0 if no game is in
+ * progress. A game follows as the 64-bit CardSet of each hand, the player of
+ * the hand on top of the table (0xFF for none), the CardSet of that hand, the
+ * current turn and the number of passes, one byte each but the sets</li>
+ * </ul>
+ * A string is a 16-bit length followed by that many bytes of UTF-8, with the
+ * length 0xFFFF standing for null. A MOVE takes 8 bytes on the wire and a
+ * START 60, against several hundred for their serialized forms.
+ * <p>
+ * A client chooses this codec by making a HELLO message, encoded with this
+ * codec, the first message it sends. The server then answers in this codec
+ * for the rest of the connection.
+ *
+ * @author chanyuyan
+ *
+ */
+public class BinaryCodec extends MessageCodec {
+	/**
+	 * The version of the layout written by this codec.
+	 */
+	public static final int VERSION = 1;
+
+	// The kind of deck holding Card objects
+	private static final int DECK = 0;
+	// The kind of deck holding BigTwoCard objects
+	private static final int BIG_TWO_DECK = 1;
+	// The length written for a null string
+	private static final int NULL_STRING = 0xFFFF;
+	// The mask written for a pass
+	private static final int PASS = 0xFFFF;
+	// The number of card indices a mask can hold
+	private static final int MAX_CARD_INDICES = 15;
+
+	/**
+	 * Returns true if the specified payload holds a HELLO message encoded by
+	 * this codec. A serialized message cannot be mistaken for one, since a
+	 * serialization stream starts with the byte 0xAC.
+	 *
+	 * @param payload
+	 *            the array holding the payload
+	 * @param offset
+	 *            the index of the first byte of the payload
+	 * @param length
+	 *            the number of bytes of the payload
+	 * @return true if the payload is a binary HELLO message
+	 */
+	public static boolean isHello(byte[] payload, int offset, int length) {
+		return length == 3 && payload[offset] == CardGameMessage.HELLO;
+	}
+
+	/**
+	 * Encodes the specified message as a frame in the binary layout.
+	 *
+	 * @see MessageCodec#encode(CardGameMessage)
+	 */
+	@Override
+	public byte[] encode(CardGameMessage message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		// reserves the length field
+		out.writeInt(0);
+		out.writeByte(message.getType());
+		out.writeByte(message.getPlayerID());
+
+		Object data = message.getData();
+		switch (message.getType()) {
+		case CardGameMessage.PLAYER_LIST:
+			writeStrings(out, (String[]) cast(data, String[].class, message));
+			break;
+		case CardGameMessage.JOIN:
+		case CardGameMessage.QUIT:
+		case CardGameMessage.MSG:
+		case CardGameMessage.SESSION:
+		case CardGameMessage.RESUME:
+			writeString(out, (String) cast(data, String.class, message));
+			break;
+		case CardGameMessage.FULL:
+		case CardGameMessage.READY:
+		case CardGameMessage.PING:
+			break;
+		case CardGameMessage.START:
+			Deck deck = (Deck) cast(data, Deck.class, message);
+			out.writeByte(deck instanceof BigTwoDeck ? BIG_TWO_DECK : DECK);
+			out.writeByte(deck.size());
+			for (int i = 0; i < deck.size(); i++) {
+				Card card = deck.getCard(i);
+				out.writeByte(card.getSuit() * 13 + card.getRank());
+			}
+			break;
+		case CardGameMessage.MOVE:
+		case CardGameMessage.ILLEGAL:
+			out.writeShort(toMask((int[]) cast(data, int[].class, message)));
+			break;
+		case CardGameMessage.HELLO:
+			out.writeByte(VERSION);
+			break;
+		case CardGameMessage.SNAPSHOT:
+			writeSnapshot(out, (GameSnapshot) cast(data, GameSnapshot.class, message));
+			break;
+		default:
+			throw new InvalidObjectException("Unknown message type: "
+					+ message.getType());
+		}
+		return writeHeader(bytes.toByteArray());
+	}
+
+	/**
+	 * Decodes a frame in the binary layout.
+	 *
+	 * @see MessageCodec#decode(byte[], int, int)
+	 */
+	@Override
+	public CardGameMessage decode(byte[] payload, int offset, int length)
+			throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(payload, offset, length);
+		try {
+			int type = in.get();
+			int playerID = in.get();
+			Object data;
+			switch (type) {
+			case CardGameMessage.PLAYER_LIST:
+				data = readStrings(in);
+				break;
+			case CardGameMessage.JOIN:
+			case CardGameMessage.QUIT:
+			case CardGameMessage.MSG:
+			case CardGameMessage.SESSION:
+			case CardGameMessage.RESUME:
+				data = readString(in);
+				break;
+			case CardGameMessage.FULL:
+			case CardGameMessage.READY:
+			case CardGameMessage.PING:
+				data = null;
+				break;
+			case CardGameMessage.START:
+				data = readDeck(in);
+				break;
+			case CardGameMessage.MOVE:
+			case CardGameMessage.ILLEGAL:
+				data = fromMask(in.getShort() & 0xFFFF);
+				break;
+			case CardGameMessage.HELLO:
+				data = Integer.valueOf(in.get() & 0xFF);
+				break;
+			case CardGameMessage.SNAPSHOT:
+				data = readSnapshot(in);
+				break;
+			default:
+				throw new StreamCorruptedException("Unknown message type: "
+						+ type);
+			}
+			if (in.hasRemaining()) {
+				throw new StreamCorruptedException("Trailing bytes in a message of type "
+						+ type);
+			}
+			return new CardGameMessage(type, playerID, data);
+		} catch (BufferUnderflowException ex) {
+			throw new StreamCorruptedException("Truncated message");
+		}
+	}
+
+	/**
+	 * Checks the type of the data of a message before it is encoded.
+	 *
+	 * @param data
+	 *            the data of the message
+	 * @param type
+	 *            the type expected for the message type
+	 * @param message
+	 *            the message
+	 * @return the data
+	 * @throws InvalidObjectException
+	 *             if the data is not of the expected type
+	 */
+	private static Object cast(Object data, Class<?> type,
+			CardGameMessage message) throws InvalidObjectException {
+		if (data != null && !type.isInstance(data)) {
+			throw new InvalidObjectException("Cannot encode " + data.getClass().getName()
+					+ " in a message of type " + message.getType());
+		}
+		if (data == null && (type == String[].class || type == Deck.class
+				|| type == GameSnapshot.class)) {
+			throw new InvalidObjectException("Missing data in a message of type "
+					+ message.getType());
+		}
+		return data;
+	}
+
+	/**
+	 * Writes a length-prefixed UTF-8 string.
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param string
+	 *            the string, or null
+	 * @throws IOException
+	 *             if the string is too long
+	 */
+	private static void writeString(DataOutputStream out, String string)
+			throws IOException {
+		if (string == null) {
+			out.writeShort(NULL_STRING);
+			return;
+		}
+		byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+		if (utf8.length >= NULL_STRING) {
+			throw new InvalidObjectException("String too long: " + utf8.length
+					+ " bytes");
+		}
+		out.writeShort(utf8.length);
+		out.write(utf8);
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string.
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @return the string, or null
+	 */
+	private static String readString(ByteBuffer in) {
+		int length = in.getShort() & 0xFFFF;
+		if (length == NULL_STRING) {
+			return null;
+		}
+		if (length > in.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		String string = new String(in.array(), in.arrayOffset() + in.position(),
+				length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return string;
+	}
+
+	/**
+	 * Reads a deck.
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @return the deck, holding the cards in the order they were written
+	 * @throws StreamCorruptedException
+	 *             if the deck is not valid
+	 */
+	private static Deck readDeck(ByteBuffer in) throws StreamCorruptedException {
+		int kind = in.get();
+		int size = in.get() & 0xFF;
+		if ((kind != DECK && kind != BIG_TWO_DECK) || size > 52) {
+			throw new StreamCorruptedException("Invalid deck");
+		}
+		Deck deck = kind == BIG_TWO_DECK ? new BigTwoDeck() : new Deck();
+		deck.removeAllCards();
+		long seen = 0;
+		for (int i = 0; i < size; i++) {
+			int index = in.get();
+			if (index < 0 || index >= 52 || (seen & (1L << index)) != 0) {
+				throw new StreamCorruptedException("Invalid card in deck: " + index);
+			}
+			seen |= 1L << index;
+			deck.addCard(kind == BIG_TWO_DECK ? BigTwoCard.valueOf(index / 13,
+					index % 13) : Card.valueOf(index / 13, index % 13));
+		}
+		return deck;
+	}
+
+	/**
+	 * Writes a snapshot.
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param snapshot
+	 *            the snapshot
+	 * @throws IOException
+	 *             if a string is too long
+	 */
+	private static void writeSnapshot(DataOutputStream out,
+			GameSnapshot snapshot) throws IOException {
+		writeStrings(out, snapshot.getNames());
+		writeStrings(out, snapshot.getLog());
+		out.writeByte(snapshot.getNumOfHands());
+		if (!snapshot.isGameInProgress()) {
+			return;
+		}
+		for (int i = 0; i < snapshot.getNumOfHands(); i++) {
+			out.writeLong(snapshot.getHand(i).bits());
+		}
+		out.writeByte(snapshot.getLastPlayer());
+		out.writeLong(snapshot.getLastHand().bits());
+		out.writeByte(snapshot.getCurrentIdx());
+		out.writeByte(snapshot.getNumOfPasses());
+	}
+
+	/**
+	 * Reads a snapshot.
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @return the snapshot
+	 * @throws StreamCorruptedException
+	 *             if the snapshot is not valid
+	 */
+	private static GameSnapshot readSnapshot(ByteBuffer in)
+			throws StreamCorruptedException {
+		String[] names = readStrings(in);
+		String[] log = readStrings(in);
+		int numOfHands = in.get() & 0xFF;
+		if (numOfHands == 0) {
+			return new GameSnapshot(names, log);
+		}
+		if (numOfHands != names.length) {
+			throw new StreamCorruptedException("Invalid snapshot");
+		}
+		CardSet[] hands = new CardSet[numOfHands];
+		for (int i = 0; i < numOfHands; i++) {
+			hands[i] = CardSet.valueOf(in.getLong());
+		}
+		int lastPlayer = in.get();
+		CardSet lastHand = CardSet.valueOf(in.getLong());
+		int currentIdx = in.get();
+		int numOfPasses = in.get();
+		if (lastPlayer < -1 || lastPlayer >= numOfHands || currentIdx < 0
+				|| currentIdx >= numOfHands || numOfPasses < 0) {
+			throw new StreamCorruptedException("Invalid snapshot");
+		}
+		return new GameSnapshot(names, log, hands, lastPlayer, lastHand,
+				currentIdx, numOfPasses);
+	}
+
+	/**
+	 * Writes a count-prefixed list of strings.
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param strings
+	 *            the strings, at most 255
+	 * @throws IOException
+	 *             if a string is too long
+	 */
+	private static void writeStrings(DataOutputStream out, String[] strings)
+			throws IOException {
+		out.writeByte(strings.length);
+		for (String string : strings) {
+			writeString(out, string);
+		}
+	}
+
+	/**
+	 * Reads a count-prefixed list of strings.
+	 *
+	 * @param in
+	 *            the buffer to read from
+	 * @return the strings
+	 */
+	private static String[] readStrings(ByteBuffer in) {
+		String[] strings = new String[in.get() & 0xFF];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = readString(in);
+		}
+		return strings;
+	}
+
+	/**
+	 * Converts the card indices of a move to a mask.
+	 *
+	 * @param cardIdx
+	 *            the indices of the selected cards, or null for a pass
+	 * @return the mask, or PASS
+	 * @throws InvalidObjectException
+	 *             if an index does not fit in the mask
+	 */
+	private static int toMask(int[] cardIdx) throws InvalidObjectException {
+		if (cardIdx == null) {
+			return PASS;
+		}
+		int mask = 0;
+		for (int index : cardIdx) {
+			if (index < 0 || index >= MAX_CARD_INDICES) {
+				throw new InvalidObjectException("Card index out of range: " + index);
+			}
+			mask |= 1 << index;
+		}
+		return mask;
+	}
+
+	/**
+	 * Converts a mask back to card indices in ascending order.
+	 *
+	 * @param mask
+	 *            the mask, or PASS
+	 * @return the indices of the selected cards, or null for a pass
+	 */
+	private static int[] fromMask(int mask) {
+		if (mask == PASS) {
+			return null;
+		}
+		int[] cardIdx = new int[Integer.bitCount(mask)];
+		for (int i = 0; mask != 0; i++) {
+			cardIdx[i] = Integer.numberOfTrailingZeros(mask);
+			mask &= mask - 1;
+		}
+		return cardIdx;
+	}
+}
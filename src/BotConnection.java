@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+/**
+ * This class is used to represent a bot playing on the server itself, which
+ * the lobby seats in place of a missing player. A bot takes its seat through
+ * the same connection interface as a remote client: the frames a room sends
+ * to it are decoded and handed to handle(), and the messages it sends are
+ * passed to the server as if they had been read from a socket. Rooms need
+ * no special case for bots, other than leaving when only bots are left.
+ * <p>
+ * The frames for a bot are handled by a task on the room executor, one
+ * frame at a time, in the order they were sent, so a subclass needs no
+ * locking as long as its state is touched in handle() only.
+ *
+ * @author chanyuyan
+ *
+ */
+public abstract class BotConnection extends ClientConnection {
+	// The server of this bot
+	private final CardGameServer server;
+	// The executor of the task handling the frames sent to this bot
+	private final Executor executor;
+	// The task handling the frames sent to this bot
+	private final Runnable reader = this::readFrames;
+	// Whether the bot has left
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a bot of the specified server.
+	 *
+	 * @param server
+	 *            the server of the bot
+	 * @param botID
+	 *            a number telling the bots of the server apart
+	 */
+	protected BotConnection(CardGameServer server, int botID) {
+		super(server, InetSocketAddress.createUnresolved("bot-" + botID, 0));
+		this.server = server;
+		this.executor = server.getRoomExecutor();
+		// frames are decoded in the binary layout, and shared with the
+		// clients using it
+		setCodec(new BinaryCodec());
+		setAdmitted();
+	}
+
+	/**
+	 * Returns true, as this connection is a bot.
+	 *
+	 * @return true
+	 */
+	@Override
+	public boolean isBot() {
+		return true;
+	}
+
+	/**
+	 * Handles a message sent to this bot by its room.
+	 *
+	 * @param message
+	 *            the message
+	 */
+	protected abstract void handle(CardGameMessage message);
+
+	/**
+	 * Sends a message from this bot to its room.
+	 *
+	 * @param message
+	 *            the message
+	 */
+	protected void send(CardGameMessage message) {
+		if (!closed) {
+			server.parseMessage(this, message);
+		}
+	}
+
+	/**
+	 * Returns the server of this bot.
+	 *
+	 * @return the server of this bot
+	 */
+	protected CardGameServer getServer() {
+		return server;
+	}
+
+	// implementation of method from the ClientConnection class
+	protected void startWriter() {
+		executor.execute(reader);
+	}
+
+	/**
+	 * Decodes and handles the frames sent to this bot until none is left.
+	 * Runs as the writer task of this connection.
+	 */
+	private void readFrames() {
+		byte[] frame;
+		while ((frame = pollFrame()) != null) {
+			if (closed) {
+				continue;
+			}
+			try {
+				handle(getCodec().decode(frame, MessageCodec.HEADER_LENGTH,
+						frame.length - MessageCodec.HEADER_LENGTH));
+			} catch (IOException | RuntimeException ex) {
+				server.println("Error in handling a message sent to "
+						+ getRemoteSocketAddress(), ex);
+			}
+		}
+	}
+
+	// implementation of method from the ClientConnection class
+	public void startReading() {
+		// a bot has nothing to read
+	}
+
+	// implementation of method from the ClientConnection class
+	public void close() {
+		closed = true;
+	}
+}
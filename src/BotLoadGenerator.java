@@ -0,0 +1,478 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is used to put a running BigTwoServer under load with headless
+ * bots, which need neither a display nor a name dialog.
+ * <p>
+ * Each bot opens a connection and speaks the same protocol as BigTwoClient:
+ * HELLO (unless the serialization codec is chosen), JOIN and READY. The
+ * server fills its tables with the bots. A bot keeps its own BigTwoEngine,
+ * applies every MOVE broadcast to it, and when its turn comes, picks a legal
+ * move with a MoveGenerator and a strategy. At the end of a game, or when a
+ * player quits, it sends READY again, so the tables keep playing. Bots may
+ * also chat at a fixed rate, which loads the broadcast path with droppable
+ * frames.
+ * <p>
+ * The latency of a move is the time from sending it to receiving its MOVE
+ * broadcast back, which covers the read, the room event loop, the encoding
+ * and the outbound queue of the server. The report gives its percentiles,
+ * the rate of moves and messages, and the number of errors: ILLEGAL replies,
+ * broadcasts the bot's engine rejects, lost connections and FULL replies.
+ *
+ * @author chanyuyan
+ *
+ */
+public class BotLoadGenerator {
+	// The strategy of the bots, which keeps no state and is shared
+	private static final BigTwoStrategy STRATEGY = new GreedyStrategy();
+
+	// The host of the server
+	private final String host;
+	// The port of the server
+	private final int port;
+	// Whether the bots use the binary codec rather than serialization
+	private final boolean binary;
+	// Whether the bots read on virtual threads
+	private final boolean virtualThreads;
+	// Whether the run is still going; replies after the end are not counted
+	private volatile boolean running = true;
+
+	// The number of moves sent
+	private final LongAdder movesSent = new LongAdder();
+	// The number of MOVE broadcasts received by all bots
+	private final LongAdder movesReceived = new LongAdder();
+	// The number of messages received by all bots
+	private final LongAdder messagesReceived = new LongAdder();
+	// The number of chat messages sent
+	private final LongAdder chatsSent = new LongAdder();
+	// The number of games started, counted by the bot in seat 0
+	private final LongAdder gamesStarted = new LongAdder();
+	// The number of games played to the end, counted by the bot in seat 0
+	private final LongAdder gamesFinished = new LongAdder();
+	// The number of ILLEGAL replies
+	private final LongAdder illegalMoves = new LongAdder();
+	// The number of MOVE broadcasts rejected by the engine of a bot
+	private final LongAdder desyncs = new LongAdder();
+	// The number of connections lost or refused
+	private final LongAdder disconnects = new LongAdder();
+	// The number of FULL replies
+	private final LongAdder fullReplies = new LongAdder();
+
+	/**
+	 * Creates and returns an instance of the BotLoadGenerator class.
+	 *
+	 * @param host
+	 *            the host of the server
+	 * @param port
+	 *            the port of the server
+	 * @param binary
+	 *            true for the binary codec; false for serialization
+	 * @param virtualThreads
+	 *            true to read on virtual threads, if the JVM supports them
+	 */
+	public BotLoadGenerator(String host, int port, boolean binary,
+			boolean virtualThreads) {
+		this.host = host;
+		this.port = port;
+		this.binary = binary;
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Runs the specified number of bots for the specified time, and prints a
+	 * report.
+	 *
+	 * @param numOfBots
+	 *            the number of bots
+	 * @param seconds
+	 *            how long the bots play, once all are connected
+	 * @param chatRate
+	 *            the number of chat messages each bot sends per second, or 0
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void run(int numOfBots, int seconds, double chatRate)
+			throws InterruptedException {
+		Bot[] bots = new Bot[numOfBots];
+		for (int i = 0; i < numOfBots; i++) {
+			bots[i] = new Bot(i);
+			try {
+				bots[i].connect();
+			} catch (IOException ex) {
+				disconnects.increment();
+				bots[i] = null;
+			}
+		}
+
+		ScheduledExecutorService chat = Executors.newScheduledThreadPool(1, r -> {
+			Thread t = new Thread(r, "Chat");
+			t.setDaemon(true);
+			return t;
+		});
+		if (chatRate > 0) {
+			long period = Math.max(1, (long) (1e6 / chatRate));
+			Random random = new Random();
+			for (final Bot bot : bots) {
+				if (bot != null) {
+					chat.scheduleAtFixedRate(bot::chat,
+							(long) (random.nextDouble() * period), period,
+							TimeUnit.MICROSECONDS);
+				}
+			}
+		}
+
+		long startTime = System.nanoTime();
+		long movesBefore = movesSent.sum();
+		long receivedBefore = messagesReceived.sum();
+		Thread.sleep(seconds * 1000L);
+		running = false;
+		double elapsed = (System.nanoTime() - startTime) / 1e9;
+		chat.shutdownNow();
+
+		long[] latencies = new long[0];
+		for (Bot bot : bots) {
+			if (bot != null) {
+				long[] botLatencies = bot.getLatencies();
+				int length = latencies.length;
+				latencies = Arrays.copyOf(latencies, length + botLatencies.length);
+				System.arraycopy(botLatencies, 0, latencies, length,
+						botLatencies.length);
+			}
+		}
+		Arrays.sort(latencies);
+		report(numOfBots, elapsed, movesSent.sum() - movesBefore,
+				messagesReceived.sum() - receivedBefore, latencies);
+	}
+
+	/**
+	 * Prints the report of a run.
+	 *
+	 * @param numOfBots
+	 *            the number of bots
+	 * @param seconds
+	 *            the length of the run
+	 * @param moves
+	 *            the number of moves sent during the run
+	 * @param received
+	 *            the number of messages received during the run
+	 * @param latencies
+	 *            the latencies of the moves in nanoseconds, sorted
+	 */
+	private void report(int numOfBots, double seconds, long moves,
+			long received, long[] latencies) {
+		System.out.printf("%d bots (%s codec) for %.1f s: %d games started, "
+				+ "%d finished%n", numOfBots, binary ? "binary" : "serialization",
+				seconds, gamesStarted.sum(), gamesFinished.sum());
+		System.out.printf("moves sent %d (%.0f/s), MOVE broadcasts received %d, "
+				+ "messages received %.0f/s, chat sent %d%n", moves,
+				moves / seconds, movesReceived.sum(), received / seconds,
+				chatsSent.sum());
+		if (latencies.length > 0) {
+			System.out.printf("MOVE broadcast latency us: p50 %.0f p90 %.0f "
+					+ "p99 %.0f p99.9 %.0f max %.0f (%d samples)%n",
+					percentile(latencies, 0.5), percentile(latencies, 0.9),
+					percentile(latencies, 0.99), percentile(latencies, 0.999),
+					latencies[latencies.length - 1] / 1e3, latencies.length);
+		}
+		System.out.printf("errors: illegal %d, desync %d, disconnects %d, "
+				+ "full %d%n", illegalMoves.sum(), desyncs.sum(),
+				disconnects.sum(), fullReplies.sum());
+	}
+
+	/**
+	 * Returns the value at the specified fraction of sorted latencies.
+	 *
+	 * @param sorted
+	 *            latencies in nanoseconds, in ascending order
+	 * @param fraction
+	 *            a value between 0 and 1
+	 * @return the latency in microseconds
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e3;
+	}
+
+	/**
+	 * This inner class is used for a bot, which plays one seat of a table.
+	 * Its thread reads the messages from the server and answers them; chat
+	 * messages are sent from the chat thread.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private class Bot implements Runnable {
+		// The number of this bot
+		private final int number;
+		// The codec of the connection
+		private final MessageCodec codec = binary ? new BinaryCodec()
+				: new SerializationCodec();
+		// The state of the game of the table of this bot
+		private BigTwoEngine engine = new BigTwoEngine();
+		// The generator of legal moves, used by the reading thread only
+		private final MoveGenerator generator = new MoveGenerator();
+		// The list of legal moves
+		private final MoveList moves = new MoveList();
+		// The source of randomness of the strategy
+		private final Random random = new Random();
+		// The lock for writing from the reading and chat threads
+		private final ReentrantLock writeLock = new ReentrantLock();
+		// The socket to the server
+		private Socket socket;
+		// The buffered stream to the server
+		private OutputStream out;
+		// The seat of this bot
+		private int playerID = -1;
+		// When the move waiting for its broadcast was sent, or 0 if none
+		private long moveSentNanos;
+		// The latencies of the moves of this bot, in nanoseconds
+		private long[] latencies = new long[64];
+		// The number of latencies recorded
+		private int numOfLatencies;
+
+		/**
+		 * Creates and returns an instance of the Bot class.
+		 *
+		 * @param number
+		 *            the number of this bot
+		 */
+		public Bot(int number) {
+			this.number = number;
+		}
+
+		/**
+		 * Connects to the server, joins a table and starts reading.
+		 *
+		 * @throws IOException
+		 *             if the server cannot be reached
+		 */
+		public void connect() throws IOException {
+			socket = new Socket(host, port);
+			socket.setTcpNoDelay(true);
+			out = new BufferedOutputStream(socket.getOutputStream());
+			if (binary) {
+				send(new CardGameMessage(CardGameMessage.HELLO, -1,
+						BinaryCodec.VERSION), false);
+			}
+			send(new CardGameMessage(CardGameMessage.JOIN, -1, "Bot " + number),
+					false);
+			send(new CardGameMessage(CardGameMessage.READY, -1, null), true);
+			Threads.newThread(this, "Bot " + number, virtualThreads).start();
+		}
+
+		// implementation of method from the Runnable interface
+		public void run() {
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(
+						socket.getInputStream()));
+				while (true) {
+					handle(codec.read(in));
+				}
+			} catch (IOException ex) {
+				if (running) {
+					disconnects.increment();
+				}
+			}
+		}
+
+		/**
+		 * Handles a message from the server.
+		 *
+		 * @param message
+		 *            the message
+		 * @throws IOException
+		 *             if a reply cannot be sent
+		 */
+		private void handle(CardGameMessage message) throws IOException {
+			messagesReceived.increment();
+			switch (message.getType()) {
+			case CardGameMessage.PLAYER_LIST:
+				playerID = message.getPlayerID();
+				break;
+			case CardGameMessage.FULL:
+				fullReplies.increment();
+				socket.close();
+				break;
+			case CardGameMessage.START:
+				engine.start((Deck) message.getData());
+				if (playerID == 0) {
+					gamesStarted.increment();
+				}
+				play();
+				break;
+			case CardGameMessage.MOVE:
+				onMove(message.getPlayerID(), (int[]) message.getData());
+				break;
+			case CardGameMessage.ILLEGAL:
+				illegalMoves.increment();
+				moveSentNanos = 0;
+				break;
+			case CardGameMessage.QUIT:
+				// the game is abandoned; waits for the next one
+				engine = new BigTwoEngine();
+				moveSentNanos = 0;
+				send(new CardGameMessage(CardGameMessage.READY, -1, null), true);
+				break;
+			case CardGameMessage.PING:
+				send(new CardGameMessage(CardGameMessage.PING, -1, null), true);
+				break;
+			default:
+				// JOIN, READY, MSG, SESSION and HELLO need no answer
+				break;
+			}
+		}
+
+		/**
+		 * Applies a MOVE broadcast, and plays if the turn has come to this
+		 * bot.
+		 *
+		 * @param mover
+		 *            the player who made the move
+		 * @param cardIdx
+		 *            the indices of the cards played, or null for a pass
+		 * @throws IOException
+		 *             if a reply cannot be sent
+		 */
+		private void onMove(int mover, int[] cardIdx) throws IOException {
+			movesReceived.increment();
+			if (mover == playerID && moveSentNanos != 0) {
+				if (running) {
+					record(System.nanoTime() - moveSentNanos);
+				}
+				moveSentNanos = 0;
+			}
+			if (!engine.checkMove(mover, cardIdx).isLegal()) {
+				desyncs.increment();
+				return;
+			}
+			if (engine.endOfGame()) {
+				if (playerID == 0) {
+					gamesFinished.increment();
+				}
+				send(new CardGameMessage(CardGameMessage.READY, -1, null), true);
+				return;
+			}
+			play();
+		}
+
+		/**
+		 * Sends a legal move if it is the turn of this bot.
+		 *
+		 * @throws IOException
+		 *             if the move cannot be sent
+		 */
+		private void play() throws IOException {
+			if (engine.getCurrentIdx() != playerID || moveSentNanos != 0) {
+				return;
+			}
+			CardGamePlayer player = engine.getPlayerList().get(playerID);
+			if (generator.generate(player, engine.getHandsOnTable(), moves) == 0) {
+				return;
+			}
+			int choice = STRATEGY.chooseMove(engine, playerID, moves, random);
+			int[] cardIdx = player.getCardIndices(CardSet.valueOf(moves
+					.getCards(choice)));
+			moveSentNanos = System.nanoTime();
+			send(new CardGameMessage(CardGameMessage.MOVE, -1, cardIdx), true);
+			movesSent.increment();
+		}
+
+		/**
+		 * Sends a chat message. Called by the chat thread.
+		 */
+		public void chat() {
+			try {
+				send(new CardGameMessage(CardGameMessage.MSG, -1, "Hello from bot "
+						+ number), true);
+				chatsSent.increment();
+			} catch (IOException ex) {
+				// the reading thread counts the lost connection
+			}
+		}
+
+		/**
+		 * Writes a message to the server.
+		 *
+		 * @param message
+		 *            the message
+		 * @param flush
+		 *            true to send the buffered messages now
+		 * @throws IOException
+		 *             if the message cannot be sent
+		 */
+		private void send(CardGameMessage message, boolean flush)
+				throws IOException {
+			byte[] frame = codec.encode(message);
+			writeLock.lock();
+			try {
+				out.write(frame);
+				if (flush) {
+					out.flush();
+				}
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		/**
+		 * Records the latency of a move.
+		 *
+		 * @param nanos
+		 *            the latency in nanoseconds
+		 */
+		private synchronized void record(long nanos) {
+			if (numOfLatencies == latencies.length) {
+				latencies = Arrays.copyOf(latencies, latencies.length * 2);
+			}
+			latencies[numOfLatencies++] = nanos;
+		}
+
+		/**
+		 * Returns the latencies recorded so far.
+		 *
+		 * @return a copy of the latencies in nanoseconds
+		 */
+		public synchronized long[] getLatencies() {
+			return Arrays.copyOf(latencies, numOfLatencies);
+		}
+	} // Bot
+
+	/**
+	 * main() method for running the load generator.
+	 *
+	 * @param args
+	 *            the number of bots (default 400), the number of seconds
+	 *            (default 30), the chat messages per second of each bot
+	 *            (default 0.2), the host (default 127.0.0.1), the port
+	 *            (default 2396), the codec, "binary" or "serial" (default
+	 *            binary; serial needs a server started with "serial"), and
+	 *            "virtual" to read on virtual threads
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int numOfBots = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+		double chatRate = args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+		String host = args.length > 3 ? args[3] : "127.0.0.1";
+		int port = args.length > 4 ? Integer.parseInt(args[4]) : 2396;
+		boolean binary = args.length <= 5 || !args[5].equalsIgnoreCase("serial");
+		boolean virtual = args.length > 6 && args[6].equalsIgnoreCase("virtual");
+
+		new BotLoadGenerator(host, port, binary, virtual).run(numOfBots,
+				seconds, chatRate);
+		System.exit(0);
+	}
+}
@@ -1,3 +1,5 @@
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 
 /**
@@ -15,6 +17,16 @@ public class Card implements Comparable<Card>, Serializable {
 
 	protected final int suit; // 0 - 3
 	protected final int rank; // 0 - 12
+	// The 52 canonical cards, indexed by suit * 13 + rank
+	private static final Card[] CARDS = new Card[52];
+
+	static {
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 13; j++) {
+				CARDS[i * 13 + j] = new Card(i, j);
+			}
+		}
+	}
 
 	/**
 	 * Creates and returns an instance of the Card class.
@@ -34,6 +46,26 @@ public class Card implements Comparable<Card>, Serializable {
 		this.rank = rank;
 	}
 
+	/**
+	 * Returns the canonical instance of the card with the specified suit and
+	 * rank. Repeated calls with the same suit and rank return the same object.
+	 * 
+	 * @param suit
+	 *            an int value between 0 and 3 representing the suit of a card
+	 * @param rank
+	 *            an int value between 0 and 12 representing the rank of a card
+	 * @return the canonical card with the specified suit and rank
+	 * @throws IllegalArgumentException
+	 *             if the suit or rank is out of range
+	 */
+	public static Card valueOf(int suit, int rank) {
+		if (suit < 0 || suit > 3 || rank < 0 || rank > 12) {
+			throw new IllegalArgumentException("Invalid card: suit " + suit
+					+ ", rank " + rank);
+		}
+		return CARDS[suit * 13 + rank];
+	}
+
 	/**
 	 * Returns the suit of a card.
 	 * 
@@ -101,16 +133,51 @@ public class Card implements Comparable<Card>, Serializable {
 	 *         card; false otherwise
 	 */
 	public boolean equals(Object card) {
+		if (this == card) {
+			return true;
+		}
+		if (!(card instanceof Card)) {
+			return false;
+		}
 		return (this.rank == ((Card) card).getRank() && suit == ((Card) card)
 				.getSuit());
 	}
 
 	/**
-	 * Returns a hash code value for the card.
+	 * Returns a hash code value for the card. Each of the 52 cards has its own
+	 * hash code.
 	 * 
 	 * @return a hash code value for the card
 	 */
 	public int hashCode() {
-		return rank;
+		return suit * 13 + rank;
+	}
+
+	/**
+	 * Checks that a deserialized card has a valid suit and rank.
+	 * 
+	 * @throws InvalidObjectException
+	 *             if the suit or rank is out of range
+	 */
+	protected void checkRange() throws InvalidObjectException {
+		if (suit < 0 || suit > 3 || rank < 0 || rank > 12) {
+			throw new InvalidObjectException("Invalid card: suit " + suit
+					+ ", rank " + rank);
+		}
+	}
+
+	/**
+	 * Replaces a deserialized card with its canonical instance.
+	 * 
+	 * @return the canonical card with the same suit and rank
+	 * @throws ObjectStreamException
+	 *             if the suit or rank is out of range
+	 */
+	protected Object readResolve() throws ObjectStreamException {
+		if (getClass() != Card.class) {
+			return this;
+		}
+		checkRange();
+		return valueOf(suit, rank);
 	}
 }
@@ -57,6 +57,52 @@ public class CardGameMessage extends GameMessage {
 	 * sent this chat message, and data is a reference to a string containing a formated chat message.
 	 */
 	public static final int MSG = 7;
+	/**
+	 * Sent by the server to a client only, when the move sent by the client is
+	 * rejected. The rejected move is not broadcast. In this message, playerID
+	 * specifies the player who made the move, and data is a reference to the
+	 * array of int of the rejected move.
+	 */
+	public static final int ILLEGAL = 8;
+	/**
+	 * Sent by a client as its first message to choose the binary layout of
+	 * BinaryCodec for the connection, and answered by the server in that
+	 * layout before the PLAYER_LIST message. In this message, playerID is -1
+	 * (not being used), and data is a reference to an Integer holding the
+	 * version of the layout.
+	 */
+	public static final int HELLO = 9;
+	/**
+	 * Sent by the server to a client only, when its JOIN message is accepted
+	 * and when it resumes its session. In this message, playerID specifies the
+	 * playerID of the local player, and data is a reference to a string
+	 * holding the session token, with which the client can take back its seat
+	 * after losing its connection.
+	 */
+	public static final int SESSION = 10;
+	/**
+	 * Sent by a client which has lost its connection, in place of JOIN, to
+	 * take back its seat. The server answers with a SNAPSHOT message, or with
+	 * a PLAYER_LIST message if the session has expired. In this message,
+	 * playerID is -1 (not being used), and data is a reference to a string
+	 * holding the session token.
+	 */
+	public static final int RESUME = 11;
+	/**
+	 * Sent by the server to a client only, when it resumes its session. In
+	 * this message, playerID specifies the playerID of the local player, and
+	 * data is a reference to a GameSnapshot object holding the state of the
+	 * room and of its game.
+	 */
+	public static final int SNAPSHOT = 12;
+	/**
+	 * Sent by the server to a client which has been quiet for a while, and
+	 * sent back by the client upon receiving it, to show that the connection
+	 * is alive. The message the client sends back is not broadcast. In this
+	 * message, playerID is -1 (not being used) and data is simply null (not
+	 * being used).
+	 */
+	public static final int PING = 13;
 
 	/**
 	 * Creates and returns an instance of CardGameMessage.
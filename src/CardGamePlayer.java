@@ -7,6 +7,7 @@ public class CardGamePlayer {
 	private static int playerId = 0;
 	private String name = "";
 	private CardList cardsInHand = new CardList();
+	private CardSet cardSet = CardSet.EMPTY;
 
 	/**
 	 * Creates and returns an instance of the Player class.
@@ -54,6 +55,7 @@ public class CardGamePlayer {
 	public void addCard(Card card) {
 		if (card != null) {
 			cardsInHand.addCard(card);
+			cardSet = cardSet.add(card);
 		}
 	}
 
@@ -65,9 +67,27 @@ public class CardGamePlayer {
 	 *            the list of cards to be removed from this player
 	 */
 	public void removeCards(CardList cards) {
-		for (int i = 0; i < cards.size(); i++) {
-			cardsInHand.removeCard(cards.getCard(i));
+		removeCards(CardSet.of(cards));
+	}
+
+	/**
+	 * Removes the set of cards from this player, if they are held by this
+	 * player.
+	 * 
+	 * @param cards
+	 *            the set of cards to be removed from this player
+	 */
+	public void removeCards(CardSet cards) {
+		long removed = cardSet.bits() & cards.bits();
+		if (removed == 0L) {
+			return;
+		}
+		for (int i = cardsInHand.size() - 1; i >= 0; i--) {
+			if ((removed & CardSet.bitOf(cardsInHand.getCard(i))) != 0L) {
+				cardsInHand.removeCard(i);
+			}
 		}
+		cardSet = CardSet.valueOf(cardSet.bits() & ~removed);
 	}
 
 	/**
@@ -75,6 +95,7 @@ public class CardGamePlayer {
 	 */
 	public void removeAllCards() {
 		cardsInHand = new CardList();
+		cardSet = CardSet.EMPTY;
 	}
 
 	/**
@@ -102,6 +123,40 @@ public class CardGamePlayer {
 		return cardsInHand;
 	}
 
+	/**
+	 * Returns the set of cards held by this player.
+	 * 
+	 * @return the set of cards held by this player
+	 */
+	public CardSet getCardSet() {
+		return cardSet;
+	}
+
+	/**
+	 * Returns the indices of the specified cards in the list of cards held by
+	 * this player, in ascending order. This turns a move from a MoveList into
+	 * the form used by play() and by MOVE messages.
+	 * 
+	 * @param cards
+	 *            the set of cards to be located
+	 * @return the indices of the cards held by this player that are in the
+	 *         set, or null if there are none
+	 */
+	public int[] getCardIndices(CardSet cards) {
+		long wanted = cardSet.bits() & cards.bits();
+		if (wanted == 0L) {
+			return null;
+		}
+		int[] cardIdx = new int[Long.bitCount(wanted)];
+		int count = 0;
+		for (int i = 0; i < cardsInHand.size(); i++) {
+			if ((wanted & CardSet.bitOf(cardsInHand.getCard(i))) != 0L) {
+				cardIdx[count++] = i;
+			}
+		}
+		return cardIdx;
+	}
+
 	/**
 	 * Returns the list of cards played by this player.
 	 * 
@@ -1,48 +1,179 @@
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-
-import javax.swing.JFrame;
-import javax.swing.JMenu;
-import javax.swing.JMenuBar;
-import javax.swing.JMenuItem;
-import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
-import javax.swing.ScrollPaneConstants;
+import java.net.SocketException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * This class is used to model a card game server.
+ * This class is used to model a card game server. The server hosts any
+ * number of rooms, each of which is a table for one game (see GameRoom).
+ * <p>
+ * The server logs to a ServerLog, which writes from a thread of its own. A
+ * server with a console shows the log in a window; a headless server loads
+ * no AWT or Swing class, and its log goes to the files set by setLogFile().
  * 
  * @author Kenneth Wong
  *
  */
 public class CardGameServer {
+	/**
+	 * The transport that serves each client with a thread blocked in reading
+	 * its socket.
+	 */
+	public static final int BLOCKING_TRANSPORT = 0;
+	/**
+	 * The transport that serves all clients with a few threads waiting on
+	 * non-blocking channels.
+	 */
+	public static final int NIO_TRANSPORT = 1;
+	/**
+	 * The overflow policy that drops a client whose outbound queue is full.
+	 */
+	public static final int DISCONNECT_ON_OVERFLOW = 0;
+	/**
+	 * The overflow policy that drops chat messages for a client whose
+	 * outbound queue is full, and drops the client only if the queue holds no
+	 * chat messages.
+	 */
+	public static final int DROP_CHAT_ON_OVERFLOW = 1;
+	/**
+	 * The rate limit policy that drops the messages over the limit.
+	 */
+	public static final int DROP_OVER_LIMIT = 0;
+	/**
+	 * The rate limit policy that holds the messages over the limit back until
+	 * the limit lets them through, and drops those which would be held back
+	 * for more than MAX_RATE_LIMIT_DELAY milliseconds.
+	 */
+	public static final int DELAY_OVER_LIMIT = 1;
+	/**
+	 * The rate limit policy that drops a client which sends a message over
+	 * the limit.
+	 */
+	public static final int DISCONNECT_OVER_LIMIT = 2;
+	/**
+	 * The longest a message over its rate limit is held back, in
+	 * milliseconds.
+	 */
+	public static final long MAX_RATE_LIMIT_DELAY = 1000;
+
 	// The name of this card game server
 	private String serverName;
 	// The maximum number of players in a card game
 	private final int maxNumOfPlayers;
-	// Array for holding sockets of the clients
-	private Socket[] clientSockets;
-	// Array for holding ObjectOutputStreams of the clients
-	private ObjectOutputStream[] clientOutputStreams;
-	// Array for holding player names of the clients
-	private String[] clientNames;
-	// Array for holding ready states of the clients
-	private boolean[] clientReadyStates;
-	// number of current players
-	private int numOfPlayers = 0;
-	// the main frame of the server
-	private JFrame frame = null;
-	// text area for displaying server states
-	private JTextArea textArea = null;
+	// The maximum number of rooms
+	private int maxNumOfRooms = 4096;
+	// The rooms opened so far, by room ID
+	private final ConcurrentHashMap<Integer, GameRoom> rooms = new ConcurrentHashMap<Integer, GameRoom>();
+	// The rooms which may have free seats
+	private final Queue<GameRoom> openRooms = new ConcurrentLinkedQueue<GameRoom>();
+	// The number of rooms opened so far
+	private final AtomicInteger numOfRooms = new AtomicInteger();
+	// The rooms of the players with a session, by session token
+	private final ConcurrentHashMap<String, GameRoom> sessions = new ConcurrentHashMap<String, GameRoom>();
+	// The source of session tokens
+	private final SecureRandom random = new SecureRandom();
+	// How long the seat of a player who loses the connection is held, in ms
+	private long sessionGracePeriod = 30000;
+	// the number of messages the log holds before it drops them
+	private static final int LOG_CAPACITY = 8192;
+	// the log of the server
+	private final ServerLog log = new ServerLog(LOG_CAPACITY);
 	// a boolean indicating if the server is up
 	private boolean serverUp = false;
+	// the number of bytes of the frames encoded for clients
+	private final LongAdder bytesEncoded = new LongAdder();
+	// the number of bytes written to clients
+	private final LongAdder bytesSent = new LongAdder();
+	// the number of writes to client sockets
+	private final LongAdder socketWrites = new LongAdder();
+	// how long the frames of an event may wait for those of later events, in us
+	private long writeCoalescingDelay = 0;
+	// whether Nagle's algorithm is disabled on client sockets
+	private boolean tcpNoDelay = true;
+	// the maximum number of frames waiting to be written to a client
+	private int outboundQueueCapacity = 256;
+	// what happens when the outbound queue of a client is full
+	private int overflowPolicy = DROP_CHAT_ON_OVERFLOW;
+	// the number of frames waiting to be written to all clients
+	private final LongAdder queuedFrames = new LongAdder();
+	// the number of frames dropped because an outbound queue was full
+	private final LongAdder framesDropped = new LongAdder();
+	// the number of clients dropped because their outbound queue was full
+	private final LongAdder overflowDisconnects = new LongAdder();
+	// the messages per second allowed to a client for MSG and MOVE, in that
+	// order, or 0 for no limit
+	private final double[] limitRates = { 4, 200 };
+	// the burst sizes allowed to a client for MSG and MOVE
+	private final int[] limitBursts = { 8, 50 };
+	// what happens to the MSG and MOVE messages over the limit
+	private final int[] limitPolicies = { DROP_OVER_LIMIT, DELAY_OVER_LIMIT };
+	// the metrics of the server
+	private final ServerMetrics metrics = new ServerMetrics(this);
+	// the port of the HTTP endpoint of the metrics, or -1 for none
+	private int metricsPort = -1;
+	// whether clients are seated by a lobby, a whole table at a time
+	private boolean lobbyEnabled = false;
+	// the maximum number of clients waiting in the lobby
+	private int lobbyCapacity = 4096;
+	// how long a client waits in the lobby before bots fill its table, in ms
+	private long botFillDelay = -1;
+	// the lobby, or null if clients are seated as they arrive
+	private Lobby lobby;
+	// the size of a segment file of the journal, in bytes
+	private static final long JOURNAL_SEGMENT_SIZE = 32 * 1024 * 1024;
+	// the directory of the journal, or null for no journal
+	private String journalDirectory;
+	// the journal of the events of the rooms, or null if there is none
+	private EventJournal journal;
+	// how long a client may be quiet before it is pinged, in ms, or 0 for never
+	private long pingInterval = 15000;
+	// how long a client may be silent before it is dropped, in ms
+	private long idleTimeout = 45000;
+	// the monitor pinging and dropping silent clients, or null if there is none
+	private HeartbeatMonitor heartbeat;
+	// the executor of the writer tasks of the blocking transport
+	private Executor writers;
+	// the executor running the event loops of the rooms
+	private Executor roomExecutor;
+	// the number of threads running the event loops of the rooms
+	private int numOfRoomThreads = Runtime.getRuntime().availableProcessors();
+	// the transport used for client connections
+	private int transport = BLOCKING_TRANSPORT;
+	// whether clients may send Java-serialized messages
+	private boolean serializationAllowed = false;
+	// whether the blocking transport reads on virtual threads
+	private boolean virtualThreads = false;
+	// the number of I/O threads of the NIO transport
+	private int numOfIoThreads = Math.max(1, Math.min(4, Runtime.getRuntime()
+			.availableProcessors()));
+	// a timer for closing rejected connections and expiring held seats
+	private final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "CardGameServer timer");
+				t.setDaemon(true);
+				return t;
+			});
 
 	/**
-	 * Creates and returns an instance of the BigTwoServer class.
+	 * Creates and returns an instance of the CardGameServer class with a
+	 * console window.
 	 * 
 	 * @param serverName
 	 *            the name of this card game server
@@ -50,50 +181,436 @@ public class CardGameServer {
 	 *            the maximum number of players in a card game
 	 */
 	public CardGameServer(String serverName, int maxNumOfPlayers) {
+		this(serverName, maxNumOfPlayers, false);
+	}
+
+	/**
+	 * Creates and returns an instance of the CardGameServer class.
+	 * 
+	 * @param serverName
+	 *            the name of this card game server
+	 * @param maxNumOfPlayers
+	 *            the maximum number of players in a card game
+	 * @param headless
+	 *            true for no console window; false to show the log in one
+	 */
+	public CardGameServer(String serverName, int maxNumOfPlayers,
+			boolean headless) {
 		this.serverName = serverName;
 		this.maxNumOfPlayers = maxNumOfPlayers;
 
-		// creates arrays for holding client sockets, output streams, player
-		// names, and ready states
-		clientSockets = new Socket[maxNumOfPlayers];
-		clientOutputStreams = new ObjectOutputStream[maxNumOfPlayers];
-		clientNames = new String[maxNumOfPlayers];
-		clientReadyStates = new boolean[maxNumOfPlayers];
-
-		buildGUI();
-	}
-
-	/**
-	 * Builds the GUI for the server
-	 */
-	private void buildGUI() {
-		// build a GUI
-		frame = new JFrame(serverName);
-		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		textArea = new JTextArea(20, 40);
-		textArea.setEditable(false);
-		textArea.setLineWrap(true);
-		textArea.setWrapStyleWord(true);
-		JScrollPane scroller = new JScrollPane(textArea);
-		scroller.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
-		scroller.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
-		frame.add(scroller);
-
-		// build the menu bar
-		JMenuItem clearMenuItem = new JMenuItem("Clear console");
-		clearMenuItem.addActionListener(new ClearMenuItemListener());
-		JMenuItem quitMenuItem = new JMenuItem("Quit");
-		quitMenuItem.addActionListener(new QuitMenuItemListener());
-		JMenu menu = new JMenu("Option");
-		menu.add(clearMenuItem);
-		menu.add(quitMenuItem);
-		JMenuBar menuBar = new JMenuBar();
-		menuBar.add(menu);
-		frame.setJMenuBar(menuBar);
-
-		frame.pack();
-		frame.setVisible(true);
-	} // buildGUI
+		if (!headless) {
+			log.addSubscriber(new ServerConsole(serverName));
+		}
+	}
+
+	/**
+	 * Writes the log to a file as well, which rolls over at the specified
+	 * size.
+	 * 
+	 * @param path
+	 *            the path of the file
+	 * @param maxFileSize
+	 *            the size at which the file rolls over, in bytes
+	 * @param maxBackups
+	 *            the number of rolled-over files kept
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public void setLogFile(String path, long maxFileSize, int maxBackups)
+			throws IOException {
+		log.addSubscriber(new RollingFileLog(new File(path), maxFileSize,
+				maxBackups));
+	}
+
+	/**
+	 * Returns the log of the server, to which more subscribers may be added.
+	 * 
+	 * @return the log of the server
+	 */
+	public ServerLog getLog() {
+		return log;
+	}
+
+	/**
+	 * Sets the transport used for client connections. Must be called before
+	 * the server starts.
+	 * 
+	 * @param transport
+	 *            BLOCKING_TRANSPORT or NIO_TRANSPORT
+	 */
+	public void setTransport(int transport) {
+		if (transport != BLOCKING_TRANSPORT && transport != NIO_TRANSPORT) {
+			throw new IllegalArgumentException("Unknown transport: " + transport);
+		}
+		this.transport = transport;
+	}
+
+	/**
+	 * Sets whether the blocking transport reads each connection on a virtual
+	 * thread rather than a platform thread. Falls back to platform threads if
+	 * the JVM has no virtual threads. Must be called before the server starts.
+	 * 
+	 * @param virtualThreads
+	 *            true for virtual threads; false for platform threads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Sets the maximum number of frames waiting to be written to a client.
+	 * Must be called before the server starts.
+	 * 
+	 * @param outboundQueueCapacity
+	 *            the capacity of the outbound queue of each client, at least 1
+	 */
+	public void setOutboundQueueCapacity(int outboundQueueCapacity) {
+		if (outboundQueueCapacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1");
+		}
+		this.outboundQueueCapacity = outboundQueueCapacity;
+	}
+
+	/**
+	 * Returns the maximum number of frames waiting to be written to a client.
+	 * 
+	 * @return the capacity of the outbound queue of each client
+	 */
+	public int getOutboundQueueCapacity() {
+		return outboundQueueCapacity;
+	}
+
+	/**
+	 * Sets what happens when the outbound queue of a client is full.
+	 * 
+	 * @param overflowPolicy
+	 *            DISCONNECT_ON_OVERFLOW or DROP_CHAT_ON_OVERFLOW
+	 */
+	public void setOverflowPolicy(int overflowPolicy) {
+		if (overflowPolicy != DISCONNECT_ON_OVERFLOW
+				&& overflowPolicy != DROP_CHAT_ON_OVERFLOW) {
+			throw new IllegalArgumentException("Unknown overflow policy: "
+					+ overflowPolicy);
+		}
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Returns what happens when the outbound queue of a client is full.
+	 * 
+	 * @return DISCONNECT_ON_OVERFLOW or DROP_CHAT_ON_OVERFLOW
+	 */
+	public int getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Sets the rate limit of a type of message sent by each client. Every
+	 * client has a token bucket of its own for each limited type. The
+	 * defaults let a client chat 4 times a second in bursts of 8, and move
+	 * 200 times a second in bursts of 50, which no person comes near; chat
+	 * over the limit is dropped, and moves are delayed. Must be called before
+	 * the server starts.
+	 * 
+	 * @param type
+	 *            CardGameMessage.MSG or CardGameMessage.MOVE
+	 * @param rate
+	 *            the messages allowed per second, or 0 for no limit
+	 * @param burst
+	 *            the number of messages which may be sent at once, at least 1
+	 * @param policy
+	 *            DROP_OVER_LIMIT, DELAY_OVER_LIMIT or DISCONNECT_OVER_LIMIT
+	 * @see TokenBucket
+	 */
+	public void setRateLimit(int type, double rate, int burst, int policy) {
+		int index = limitIndex(type);
+		if (index < 0) {
+			throw new IllegalArgumentException("Cannot limit messages of type "
+					+ type);
+		}
+		if (rate < 0 || burst < 1) {
+			throw new IllegalArgumentException("Invalid rate or burst size");
+		}
+		if (policy != DROP_OVER_LIMIT && policy != DELAY_OVER_LIMIT
+				&& policy != DISCONNECT_OVER_LIMIT) {
+			throw new IllegalArgumentException("Unknown rate limit policy: "
+					+ policy);
+		}
+		limitRates[index] = rate;
+		limitBursts[index] = burst;
+		limitPolicies[index] = policy;
+	}
+
+	/**
+	 * Returns the index of the rate limit of a type of message.
+	 * 
+	 * @param type
+	 *            the type of message
+	 * @return 0 for MSG, 1 for MOVE, or -1 if the type cannot be limited
+	 */
+	private static int limitIndex(int type) {
+		if (type == CardGameMessage.MSG) {
+			return 0;
+		} else if (type == CardGameMessage.MOVE) {
+			return 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates the token bucket of a client for a type of message.
+	 * 
+	 * @param type
+	 *            CardGameMessage.MSG or CardGameMessage.MOVE
+	 * @return a full bucket, or null if the type is not limited
+	 */
+	TokenBucket newBucket(int type) {
+		int index = limitIndex(type);
+		if (index < 0 || limitRates[index] == 0) {
+			return null;
+		}
+		return new TokenBucket(limitRates[index], limitBursts[index]);
+	}
+
+	/**
+	 * Sets how long the frames sent while a room handles an event may be held
+	 * back for the frames of the events waiting after it, so that they leave
+	 * in the same write. Frames are never held back for events which have
+	 * not arrived, so this bounds the latency added under load only. With 0,
+	 * the default, the frames of each event leave together as soon as the
+	 * event has been handled.
+	 * 
+	 * @param writeCoalescingDelay
+	 *            the latency bound in microseconds
+	 */
+	public void setWriteCoalescingDelay(long writeCoalescingDelay) {
+		if (writeCoalescingDelay < 0) {
+			throw new IllegalArgumentException("The delay cannot be negative");
+		}
+		this.writeCoalescingDelay = writeCoalescingDelay;
+	}
+
+	/**
+	 * Returns how long the frames of an event may be held back for the frames
+	 * of later events.
+	 * 
+	 * @return the latency bound in microseconds
+	 */
+	public long getWriteCoalescingDelay() {
+		return writeCoalescingDelay;
+	}
+
+	/**
+	 * Sets whether Nagle's algorithm is disabled on client sockets. It is by
+	 * default: the rooms already coalesce their frames, and Nagle's algorithm
+	 * would only hold the last frame of an event back until the client
+	 * acknowledges the previous segment. Must be called before the server
+	 * starts.
+	 * 
+	 * @param tcpNoDelay
+	 *            true to disable Nagle's algorithm
+	 */
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	/**
+	 * Returns whether Nagle's algorithm is disabled on client sockets.
+	 * 
+	 * @return true if TCP_NODELAY is set on client sockets
+	 */
+	public boolean getTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 * Sets the number of I/O threads used by the NIO transport. Must be called
+	 * before the server starts.
+	 * 
+	 * @param numOfIoThreads
+	 *            the number of I/O threads, at least 1
+	 */
+	public void setNumOfIoThreads(int numOfIoThreads) {
+		if (numOfIoThreads < 1) {
+			throw new IllegalArgumentException("At least 1 I/O thread is needed");
+		}
+		this.numOfIoThreads = numOfIoThreads;
+	}
+
+	/**
+	 * Sets the number of threads running the event loops of the rooms. Must
+	 * be called before the server starts.
+	 * 
+	 * @param numOfRoomThreads
+	 *            the number of threads, at least 1
+	 */
+	public void setNumOfRoomThreads(int numOfRoomThreads) {
+		if (numOfRoomThreads < 1) {
+			throw new IllegalArgumentException("At least 1 room thread is needed");
+		}
+		this.numOfRoomThreads = numOfRoomThreads;
+	}
+
+	/**
+	 * Sets how long the seat of a player who loses the connection is held
+	 * for the player to resume the session.
+	 * 
+	 * @param sessionGracePeriod
+	 *            the grace period in milliseconds, or 0 to free the seat at
+	 *            once
+	 */
+	public void setSessionGracePeriod(long sessionGracePeriod) {
+		if (sessionGracePeriod < 0) {
+			throw new IllegalArgumentException("The grace period cannot be negative");
+		}
+		this.sessionGracePeriod = sessionGracePeriod;
+	}
+
+	/**
+	 * Returns how long the seat of a player who loses the connection is held.
+	 * 
+	 * @return the grace period in milliseconds
+	 */
+	public long getSessionGracePeriod() {
+		return sessionGracePeriod;
+	}
+
+	/**
+	 * Sets the port of the plain-text HTTP endpoint of the metrics, which is
+	 * bound to the loopback address only. The metrics are registered with JMX
+	 * whether or not the endpoint is served. Must be called before the
+	 * server starts.
+	 * 
+	 * @param metricsPort
+	 *            the port of the endpoint, 0 for any free port, or -1 for no
+	 *            endpoint
+	 */
+	public void setMetricsPort(int metricsPort) {
+		this.metricsPort = metricsPort;
+	}
+
+	/**
+	 * Sets whether clients are seated by a lobby, which seats them a whole
+	 * table at a time, rather than as they arrive. Must be called before the
+	 * server starts.
+	 * 
+	 * @param lobbyEnabled
+	 *            true to seat clients through a lobby
+	 * @see Lobby
+	 */
+	public void setLobbyEnabled(boolean lobbyEnabled) {
+		this.lobbyEnabled = lobbyEnabled;
+	}
+
+	/**
+	 * Sets the maximum number of clients waiting in the lobby. Clients
+	 * arriving when the lobby is full get a FULL message. Must be called
+	 * before the server starts.
+	 * 
+	 * @param lobbyCapacity
+	 *            the capacity of the lobby, at least 1
+	 */
+	public void setLobbyCapacity(int lobbyCapacity) {
+		if (lobbyCapacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1");
+		}
+		this.lobbyCapacity = lobbyCapacity;
+	}
+
+	/**
+	 * Sets how long a client waits in the lobby before bots take the empty
+	 * seats of its table. Only servers whose createBot() returns bots can
+	 * fill tables. Must be called before the server starts.
+	 * 
+	 * @param botFillDelay
+	 *            the delay in milliseconds, or -1 to wait for players only
+	 */
+	public void setBotFillDelay(long botFillDelay) {
+		this.botFillDelay = botFillDelay;
+	}
+
+	/**
+	 * Sets how quiet a client may be. A client which has sent nothing for the
+	 * ping interval gets a PING message, which it is expected to send back,
+	 * and one which has sent nothing for the idle timeout is dropped as if its
+	 * connection had been lost, keeping its seat for the session grace
+	 * period. Must be called before the server starts.
+	 * 
+	 * @param pingInterval
+	 *            the ping interval in milliseconds, or 0 to never ping nor
+	 *            drop silent clients
+	 * @param idleTimeout
+	 *            the idle timeout in milliseconds, longer than the ping
+	 *            interval
+	 * @see HeartbeatMonitor
+	 */
+	public void setHeartbeat(long pingInterval, long idleTimeout) {
+		if (pingInterval < 0 || (pingInterval > 0 && idleTimeout <= pingInterval)) {
+			throw new IllegalArgumentException(
+					"The idle timeout must be longer than the ping interval");
+		}
+		this.pingInterval = pingInterval;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Returns the current tick of the heartbeat monitor, with which the
+	 * connections record when their clients were last heard.
+	 * 
+	 * @return the current tick, or 0 if silent clients are not dropped
+	 */
+	long getHeartbeatTick() {
+		return heartbeat == null ? 0 : heartbeat.now();
+	}
+
+	/**
+	 * Returns the number of clients waiting in the lobby.
+	 * 
+	 * @return the number of clients waiting, 0 if there is no lobby
+	 */
+	public int getNumOfWaiting() {
+		return lobby == null ? 0 : lobby.getNumOfWaiting();
+	}
+
+	/**
+	 * Sets the directory in which the events which change the state of the
+	 * rooms are journaled. Must be called before the server starts.
+	 * 
+	 * @param journalDirectory
+	 *            the directory of the journal, or null for no journal
+	 * @see EventJournal
+	 */
+	public void setJournalDirectory(String journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+
+	/**
+	 * Returns the journal of the events of the rooms.
+	 * 
+	 * @return the journal, or null if there is none
+	 */
+	EventJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Returns the metrics of the server.
+	 * 
+	 * @return the metrics of the server
+	 */
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the executor running the event loops of the rooms.
+	 * 
+	 * @return the executor of the rooms
+	 */
+	Executor getRoomExecutor() {
+		return roomExecutor;
+	}
 
 	/**
 	 * Starts the server at the specified port
@@ -102,254 +619,712 @@ public class CardGameServer {
 	 *            the specified port at which the server starts
 	 */
 	public void start(int port) {
+		// events of rooms never block, so one thread per core is enough
+		final AtomicInteger numOfThreads = new AtomicInteger();
+		roomExecutor = Executors.newFixedThreadPool(numOfRoomThreads, task -> {
+			Thread t = new Thread(task, "Room loop "
+					+ numOfThreads.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+		startMetrics(port);
+		if (journalDirectory != null) {
+			try {
+				journal = new EventJournal(new File(journalDirectory),
+						JOURNAL_SEGMENT_SIZE, log);
+				println("Journals the events of the rooms in " + journalDirectory);
+			} catch (IOException ex) {
+				println("Error in opening the journal in " + journalDirectory,
+						ex);
+			}
+		}
+		if (lobbyEnabled) {
+			lobby = new Lobby(this, maxNumOfPlayers, lobbyCapacity, botFillDelay);
+		}
+		if (pingInterval > 0) {
+			heartbeat = new HeartbeatMonitor(this, pingInterval, idleTimeout);
+		}
+
+		if (transport == NIO_TRANSPORT) {
+			startNio(port);
+			return;
+		}
+
+		// writer tasks block in writing, so each gets a thread of its own
+		if (virtualThreads && Threads.isVirtualSupported()) {
+			writers = task -> Threads.newThread(task, "Writer", true).start();
+		} else {
+			writers = Executors.newCachedThreadPool(task -> {
+				Thread t = new Thread(task, "Writer");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+
 		// start the server
 		try {
-			// creates a ServerScoket
-			ServerSocket serverSocket = new ServerSocket(port);
+			// creates a ServerScoket, which may take over the port from a
+			// server which has just stopped, with a backlog long enough for
+			// a burst of clients
+			ServerSocket serverSocket = new ServerSocket();
+			serverSocket.setReuseAddress(true);
+			serverSocket.bind(new InetSocketAddress(port), 1024);
 			println("Starts up the server at localhost:"
-					+ serverSocket.getLocalPort());
+					+ serverSocket.getLocalPort()
+					+ (virtualThreads && Threads.isVirtualSupported() ? " with virtual threads"
+							: " with platform threads"));
 			serverUp = true;
 			while (serverUp) {
 				// waits for clients to connect
 				Socket clientSocket = serverSocket.accept();
-				addConnection(clientSocket);
+				try {
+					configureSocket(clientSocket);
+					addConnection(new SocketConnection(clientSocket));
+				} catch (IOException ex) {
+					println("Error in establishing a connection with a client at "
+							+ clientSocket.getRemoteSocketAddress(), ex);
+					clientSocket.close();
+				}
 			} // while
 			serverSocket.close();
 		} catch (Exception ex) {
-			println("Error in starting up the server at localhost:" + port);
-			ex.printStackTrace();
+			println("Error in starting up the server at localhost:" + port, ex);
 		}
 	} // start
 
 	/**
-	 * Parses the incoming message from the specified client.
+	 * Registers the metrics with JMX, and serves them over HTTP if a port has
+	 * been set for the endpoint. The server runs without them if they cannot
+	 * be published.
+	 * 
+	 * @param port
+	 *            the port at which the server starts
+	 */
+	private void startMetrics(int port) {
+		try {
+			metrics.register(port);
+		} catch (Exception ex) {
+			println("Error in registering the metrics with JMX", ex);
+		}
+		if (metricsPort >= 0) {
+			try {
+				println("Serves the metrics at http://localhost:"
+						+ metrics.startHttp(metricsPort) + "/metrics");
+			} catch (IOException ex) {
+				println("Error in serving the metrics at localhost:"
+						+ metricsPort, ex);
+			}
+		}
+	} // startMetrics
+
+	/**
+	 * Starts the server at the specified port with the NIO transport.
+	 * 
+	 * @param port
+	 *            the specified port at which the server starts
+	 */
+	private void startNio(int port) {
+		try {
+			NioTransport nio = new NioTransport(this, numOfIoThreads);
+			serverUp = true;
+			println("Starts up the server at localhost:" + nio.bind(port)
+					+ " with " + numOfIoThreads + " I/O threads");
+			nio.run();
+		} catch (Exception ex) {
+			println("Error in starting up the server at localhost:" + port, ex);
+		}
+	} // startNio
+
+	/**
+	 * Passes the incoming message from the specified client to its room. A
+	 * HELLO message, which has chosen the codec, is answered at once. The
+	 * first message other than HELLO gets the client seated first: a RESUME
+	 * message takes back the seat of its session, and any other message takes
+	 * a free seat. A PING message goes no further, as its receipt has already
+	 * shown the client to be alive. MSG and MOVE messages go through their
+	 * rate limits (see setRateLimit()).
 	 * 
-	 * @param clientSocket
-	 *            the socket connection to the specified client
+	 * @param connection
+	 *            the connection to the specified client
 	 * @param message
 	 *            the message received from the specified client
 	 */
-	private synchronized void parseMessage(Socket clientSocket,
-			CardGameMessage message) {
-		// updates the playerID
-		for (int i = 0; i < maxNumOfPlayers; i++) {
-			if (clientSockets[i] == clientSocket) {
-				message.setPlayerID(i);
-				break;
+	void parseMessage(ClientConnection connection, CardGameMessage message) {
+		metrics.countMessage(message.getType());
+		if (message.getType() == CardGameMessage.HELLO) {
+			if (!connection.isAdmitted()) {
+				println("Uses the binary codec (version " + message.getData()
+						+ ") for the client at "
+						+ connection.getRemoteSocketAddress());
+				try {
+					// confirms the codec before anything else is sent
+					connection.sendFrame(encode(connection.getCodec(),
+							new CardGameMessage(CardGameMessage.HELLO, -1,
+									BinaryCodec.VERSION)));
+				} catch (Exception ex) {
+					println("Error in sending a HELLO message to the client at "
+							+ connection.getRemoteSocketAddress(), ex);
+				}
 			}
+			return;
 		}
-
-		// parses the message based on it type
-		switch (message.getType()) {
-		case CardGameMessage.JOIN:
-			// adds a player to the game
-			addPlayer(clientSocket, (String) message.getData());
-			break;
-		case CardGameMessage.READY:
-			// marks the specified player as ready for a new game
-			setReadyState(clientSocket);
-			break;
-		case CardGameMessage.MOVE:
-			println("Broadcasts a \"MOVE\" message from "
-					+ clientSocket.getRemoteSocketAddress());
-			// broadcast the MOVE message to all clients
-			broadcastMessage(message);
-			break;
-		case CardGameMessage.MSG:
-			println("Broadcasts a user message from "
-					+ clientSocket.getRemoteSocketAddress());
-			// broadcast the user message to all clients
-			broadcastUserMessage(clientSocket, (String) message.getData());
-			break;
-		default:
-			println("Wrong message type: " + message.getType());
-			// invalid message
-			break;
+		if (message.getType() == CardGameMessage.PING) {
+			return;
+		}
+		if (!connection.isAdmitted()) {
+			connection.setAdmitted();
+			if (message.getType() == CardGameMessage.RESUME) {
+				resume(connection, message.getData());
+				return;
+			}
+			seat(connection);
+		}
+		if (message.getType() == CardGameMessage.RESUME) {
+			// a session can only be resumed by a new connection
+			return;
+		}
+		if (!throttle(connection, message)) {
+			dispatch(connection, message);
 		}
 	} // parseMessage
 
 	/**
-	 * Broadcasts the specified message to all clients.
+	 * Applies the rate limit of its type to a message from a client. A
+	 * message over the limit is dropped, delayed, or gets the client dropped,
+	 * as the policy of the type says. A delayed message is held back by the
+	 * connection and dispatched later from the timer of the server, and the
+	 * messages which arrive after it are held back behind it, so that the
+	 * room gets the messages of a client in the order they were sent.
 	 * 
+	 * @param connection
+	 *            the connection to the client
 	 * @param message
-	 *            the specified message to be broadcast to all clients
-	 */
-	private synchronized void broadcastMessage(CardGameMessage message) {
-		if (numOfPlayers > 0) {
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] != null && clientOutputStreams[i] != null) {
-					try {
-						clientOutputStreams[i].writeObject(message);
-					} catch (Exception ex) {
-						println("Error in broadcasting a message to the client at "
-								+ clientSockets[i].getRemoteSocketAddress());
-						ex.printStackTrace();
-					}
-				}
+	 *            the message received from the client
+	 * @return true if the message has been dealt with; false if it is within
+	 *         the limit, and should be dispatched now
+	 */
+	private boolean throttle(final ClientConnection connection,
+			final CardGameMessage message) {
+		TokenBucket bucket = connection.getBucket(message.getType());
+		long now = System.nanoTime();
+		long wait = 0;
+		if (bucket != null && !connection.isBot()) {
+			if (connection.isRemoved()) {
+				// already dropped for going over a limit
+				return true;
+			}
+			int policy = limitPolicies[limitIndex(message.getType())];
+			wait = bucket.take(now,
+					policy == DELAY_OVER_LIMIT ? MAX_RATE_LIMIT_DELAY * 1000000 : 0);
+			if (wait > 0) {
+				metrics.countThrottled(message.getType(), DELAY_OVER_LIMIT);
+			} else if (wait < 0 && policy == DISCONNECT_OVER_LIMIT) {
+				metrics.countThrottled(message.getType(), DISCONNECT_OVER_LIMIT);
+				println("Rate limit exceeded: drops the client at "
+						+ connection.getRemoteSocketAddress());
+				removeConnection(connection);
+				return true;
+			} else if (wait < 0) {
+				metrics.countThrottled(message.getType(), DROP_OVER_LIMIT);
+				return true;
 			}
 		}
-	} // broadcastMessage
-
-	/**
-	 * Adds a new socket connection to the server
-	 * 
-	 * @param clientSocket
-	 *            the socket connection to be added to the server
-	 */
-	private synchronized void addConnection(Socket clientSocket) {
-		// adds this connection to the server if the server is not full
-		if (numOfPlayers < maxNumOfPlayers) {
-			// locates the first empty slot for the new connection
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == null) {
-					try {
-						// creates an ObjectOutputStream for this client socket
-						ObjectOutputStream oostream = new ObjectOutputStream(
-								clientSocket.getOutputStream());
-
-						clientSockets[i] = clientSocket;
-						clientOutputStreams[i] = oostream;
-						clientNames[i] = null;
-						clientReadyStates[i] = false;
-						numOfPlayers++;
-						println("Establishes a connection with a client at "
-								+ clientSocket.getRemoteSocketAddress());
-
-						// creates a thread for receiving messages from this
-						// client
-						Thread t = new Thread(new ClientHandler(clientSocket));
-						t.start();
-
-						// sends the player list to the new player
-						oostream.writeObject(new CardGameMessage(
-								CardGameMessage.PLAYER_LIST, i, clientNames));
-					} catch (Exception ex) {
-						println("Error in establishing a connection with a client at "
-								+ clientSocket.getRemoteSocketAddress());
-						ex.printStackTrace();
-					}
-					break;
-				}
-			} // for
-		} else {
-			// Max. no. of players reached
-			println("Server is full: cannot establish a connection with a client at "
-					+ clientSocket.getRemoteSocketAddress());
+		// a message within its limit still waits for the delayed ones before it
+		return connection.hold(message, now + wait, wait > 0);
+	} // throttle
 
-			// creates a thread for sending a FULL message to this client, waits
-			// for 1000 milliseconds and closes the socket
-			Thread t = new Thread(new ClientHandler2(clientSocket));
-			t.start();
+	/**
+	 * Passes a message from an admitted client to its room, or holds it in
+	 * the lobby while the client waits to be seated.
+	 * 
+	 * @param connection
+	 *            the connection to the client
+	 * @param message
+	 *            the message received from the client
+	 */
+	void dispatch(ClientConnection connection, CardGameMessage message) {
+		if (lobby != null && lobby.hold(connection, message)) {
+			// the client is waiting to be seated
+			return;
+		}
+
+		GameRoom room = connection.getRoom();
+		if (room != null) {
+			room.parseMessage(connection, message);
 		}
+	} // dispatch
 
+	/**
+	 * Adds a new client connection to the server, starts watching it for
+	 * silence, and starts receiving messages from it. The client is seated
+	 * once its first message has chosen the codec of the connection.
+	 * 
+	 * @param connection
+	 *            the client connection to be added to the server
+	 */
+	void addConnection(ClientConnection connection) {
+		connection.setSerializationAllowed(serializationAllowed);
+		metrics.connectionOpened();
+		if (heartbeat != null) {
+			heartbeat.watch(connection);
+		}
+		// starts receiving messages from this client
+		connection.startReading();
 	} // addConnection
 
 	/**
-	 * Removes a connection from the server (possibly due to connection loss).
+	 * Gives a client back the seat of its session, or seats it as a new
+	 * client if the session is unknown or has expired.
 	 * 
-	 * @param clientSocket
-	 *            the socket connection being removed from the server
+	 * @param connection
+	 *            the connection to the client
+	 * @param token
+	 *            the session token presented by the client
 	 */
-	private synchronized void removeConnection(Socket clientSocket) {
-		if (numOfPlayers > 0) {
-			// locates the client socket in the array
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == clientSocket) {
-					String name = clientNames[i];
+	private void resume(ClientConnection connection, Object token) {
+		GameRoom room = token instanceof String ? sessions.get(token) : null;
+		if (room == null) {
+			println("Cannot resume an unknown session of the client at "
+					+ connection.getRemoteSocketAddress());
+			seat(connection);
+			return;
+		}
+		room.resumeConnection(connection, (String) token);
+	}
 
-					clientSockets[i] = null;
-					clientOutputStreams[i] = null;
-					clientNames[i] = null;
-					clientReadyStates[i] = false;
-					numOfPlayers--;
+	/**
+	 * Seats a client in a room with a free seat. A new room is opened if there
+	 * is none, and the client gets a FULL message if no more rooms can be
+	 * opened. With a lobby, the client waits in the lobby instead, and gets a
+	 * FULL message only if the lobby is full.
+	 * 
+	 * @param connection
+	 *            the connection to the client
+	 */
+	void seat(ClientConnection connection) {
+		if (lobby != null) {
+			if (!lobby.add(connection)) {
+				reject(connection);
+			}
+			return;
+		}
 
-					println(name + " (" + clientSocket.getRemoteSocketAddress()
-							+ ") leaves the game.");
+		// tries the rooms with free seats first; a room found full drops
+		// itself from the list until a player leaves it
+		GameRoom room;
+		while ((room = openRooms.peek()) != null) {
+			if (room.addConnection(connection)) {
+				return;
+			}
+		}
 
-					String remoteAddress = clientSocket
-							.getRemoteSocketAddress().toString();
+		// opens a new room if the server is not full
+		room = openRoom();
+		if (room != null) {
+			if (!room.addConnection(connection)) {
+				// the new room was filled by other clients in the meantime
+				seat(connection);
+			}
+			return;
+		}
+		reject(connection);
+	} // seat
 
-					// broadcasts a message about the leaving of this player
-					broadcastMessage(new CardGameMessage(CardGameMessage.QUIT,
-							i, remoteAddress));
-					break;
-				}
+	/**
+	 * Opens a new room, unless the maximum number of rooms are open. With a
+	 * lobby, an open room whose players have all left is used again first.
+	 * 
+	 * @return the room, or null if no room can be opened
+	 */
+	GameRoom openRoom() {
+		if (lobby != null) {
+			GameRoom room = findOpenRoom(true);
+			if (room != null) {
+				return room;
 			}
 		}
-	} // removeConnection
+		int roomID = numOfRooms.getAndIncrement();
+		if (roomID >= maxNumOfRooms) {
+			numOfRooms.decrementAndGet();
+			return null;
+		}
+		GameRoom room = createRoom(roomID);
+		rooms.put(roomID, room);
+		openRooms.add(room);
+		println("Opens room " + roomID);
+		return room;
+	}
 
 	/**
-	 * adds a player to the game.
+	 * Finds a room in the list of rooms with free seats, dropping the rooms
+	 * found full from the list.
 	 * 
-	 * @param clientSocket
-	 *            the socket connection to the player who is joining the game
-	 * @param name
-	 *            the name of the player who is joining the game
+	 * @param empty
+	 *            true for a room with no players; false for a room with some
+	 *            players and a free seat
+	 * @return the room, or null if there is none
 	 */
-	private synchronized void addPlayer(Socket clientSocket, String name) {
-		if (numOfPlayers > 0) {
-			// locates the client socket in the array
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == clientSocket) {
-					// updates the name of the new player
-					clientNames[i] = name;
+	GameRoom findOpenRoom(boolean empty) {
+		for (GameRoom room : openRooms) {
+			if (room.delistIfFull()) {
+				continue;
+			}
+			if ((room.getNumOfPlayers() == 0) == empty) {
+				return room;
+			}
+		}
+		return null;
+	}
 
-					println(name + " (" + clientSocket.getRemoteSocketAddress()
-							+ ") joins the game.");
+	/**
+	 * Turns a client away as the server is full: sends it a FULL message,
+	 * waits for 1000 milliseconds and closes the connection.
+	 * 
+	 * @param connection
+	 *            the connection to the client
+	 */
+	private void reject(ClientConnection connection) {
+		// Max. no. of rooms reached
+		println("Server is full: cannot establish a connection with a client at "
+				+ connection.getRemoteSocketAddress());
 
-					// broadcasts a message about this player joining the game
-					broadcastMessage(new CardGameMessage(CardGameMessage.JOIN,
-							i, name));
-					break;
-				}
-			}
+		// sends a FULL message to this client, waits for 1000 milliseconds
+		// and closes the connection
+		try {
+			connection.sendFrame(encode(connection.getCodec(),
+					new CardGameMessage(CardGameMessage.FULL, -1, null)));
+		} catch (Exception ex) {
+			println("Error in sending a FULL message to the client at "
+					+ connection.getRemoteSocketAddress(), ex);
 		}
-	} // addPlayer
+		timer.schedule(() -> removeConnection(connection), 1000,
+				TimeUnit.MILLISECONDS);
+	} // reject
 
 	/**
-	 * Marks the specified player as ready for a new game.
+	 * Removes a connection from the server (possibly due to connection loss).
 	 * 
-	 * @param clientSocket
-	 *            the socket connection to the player who becomes ready for a
-	 *            new game
+	 * @param connection
+	 *            the client connection being removed from the server
 	 */
-	private synchronized void setReadyState(Socket clientSocket) {
-		if (numOfPlayers > 0) {
-			// locates the client socket in the array
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == clientSocket) {
-					clientReadyStates[i] = true;
-					println(clientNames[i] + " ("
-							+ clientSocket.getRemoteSocketAddress()
-							+ " ) is ready for the next game.");
-					broadcastMessage(new CardGameMessage(CardGameMessage.READY,
-							i, null));
-					break;
-				}
-			}
+	void removeConnection(ClientConnection connection) {
+		if (connection.setRemoved() && !connection.isBot()) {
+			metrics.connectionClosed();
+		}
+		GameRoom room = connection.getRoom();
+		if (room != null) {
+			room.removeConnection(connection);
 		}
+		connection.close();
+	} // removeConnection
 
-		// checks if all players are ready
-		if (numOfPlayers == maxNumOfPlayers) {
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientReadyStates[i] == false) {
-					// returns if any of the players is not ready
-					return;
-				}
-			}
+	/**
+	 * Encodes a message for sending, and counts the bytes encoded.
+	 * 
+	 * @param codec
+	 *            the codec of the recipients
+	 * @param message
+	 *            the message to be encoded
+	 * @return the frame of the message
+	 * @throws IOException
+	 *             if the message cannot be encoded
+	 */
+	byte[] encode(MessageCodec codec, CardGameMessage message)
+			throws IOException {
+		byte[] frame;
+		try {
+			frame = codec.encode(message);
+		} catch (IOException | RuntimeException ex) {
+			metrics.countEncodeError();
+			throw ex;
+		}
+		bytesEncoded.add(frame.length);
+		return frame;
+	}
 
-			// resets the ready states of all the players for the next game
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				clientReadyStates[i] = false;
-			}
+	/**
+	 * Counts bytes written to a client.
+	 * 
+	 * @param numOfBytes
+	 *            the number of bytes written
+	 */
+	void countBytesSent(long numOfBytes) {
+		bytesSent.add(numOfBytes);
+	}
+
+	/**
+	 * Counts a write to a client socket.
+	 */
+	void countSocketWrite() {
+		socketWrites.increment();
+	}
+
+	/**
+	 * Sets the options of a socket to a client. TCP_NODELAY is set as chosen
+	 * by setTcpNoDelay(), and SO_KEEPALIVE is set so that the connection of a
+	 * client which has vanished is dropped eventually even if the server
+	 * never writes to it. The buffer sizes are left to the auto-tuning of the
+	 * operating system.
+	 * 
+	 * @param socket
+	 *            the socket to a client
+	 * @throws SocketException
+	 *             if an option cannot be set
+	 */
+	void configureSocket(Socket socket) throws SocketException {
+		socket.setTcpNoDelay(tcpNoDelay);
+		socket.setKeepAlive(true);
+	}
+
+	/**
+	 * Counts frames added to or removed from the outbound queue of a client.
+	 * 
+	 * @param numOfFrames
+	 *            the change in the number of waiting frames
+	 */
+	void countQueuedFrames(int numOfFrames) {
+		queuedFrames.add(numOfFrames);
+	}
 
-			// creates a new deck, shuffles the deck, and starts a new game
-			Deck deck = createDeck();
-			deck.shuffle();
-			println("All players are ready. Game starts.");
-			broadcastMessage(new CardGameMessage(CardGameMessage.START, -1,
-					deck));
+	/**
+	 * Counts frames dropped because an outbound queue was full.
+	 * 
+	 * @param numOfFrames
+	 *            the number of frames dropped
+	 */
+	void countFramesDropped(int numOfFrames) {
+		framesDropped.add(numOfFrames);
+	}
+
+	/**
+	 * Drops a client whose outbound queue is full. Its removal from its room
+	 * is posted to the room, so it happens after the broadcast in progress.
+	 * 
+	 * @param connection
+	 *            the connection whose queue has overflowed
+	 */
+	void overflow(ClientConnection connection) {
+		overflowDisconnects.increment();
+		println("Outbound queue full: drops the client at "
+				+ connection.getRemoteSocketAddress());
+		removeConnection(connection);
+	}
+
+	/**
+	 * Returns the number of writes to client sockets. Divided into the number
+	 * of frames sent, it gives how well frames are coalesced.
+	 * 
+	 * @return the number of writes
+	 */
+	public long getSocketWrites() {
+		return socketWrites.sum();
+	}
+
+	/**
+	 * Returns the number of frames waiting to be written to all clients.
+	 * 
+	 * @return the total depth of the outbound queues
+	 */
+	public long getQueuedFrames() {
+		return queuedFrames.sum();
+	}
+
+	/**
+	 * Returns the number of frames dropped because an outbound queue was full.
+	 * 
+	 * @return the number of frames dropped
+	 */
+	public long getFramesDropped() {
+		return framesDropped.sum();
+	}
+
+	/**
+	 * Returns the number of clients dropped because their outbound queue was
+	 * full.
+	 * 
+	 * @return the number of clients dropped
+	 */
+	public long getOverflowDisconnects() {
+		return overflowDisconnects.sum();
+	}
+
+	/**
+	 * Returns the number of bytes of the frames encoded for clients. A
+	 * broadcast frame is encoded once and counted once.
+	 * 
+	 * @return the number of bytes encoded
+	 */
+	public long getBytesEncoded() {
+		return bytesEncoded.sum();
+	}
+
+	/**
+	 * Returns the number of bytes written to clients. The gap between this
+	 * count and the bytes encoded is the encoding saved by broadcasting the
+	 * same frame to several clients.
+	 * 
+	 * @return the number of bytes sent
+	 */
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	/**
+	 * Creates a session token for a player of the specified room.
+	 * 
+	 * @param room
+	 *            the room of the player
+	 * @return the session token
+	 */
+	String newSession(GameRoom room) {
+		byte[] bytes = new byte[16];
+		random.nextBytes(bytes);
+		String token = Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(bytes);
+		sessions.put(token, room);
+		return token;
+	}
+
+	/**
+	 * Forgets a session token which has been replaced or has expired.
+	 * 
+	 * @param token
+	 *            the session token
+	 */
+	void removeSession(String token) {
+		sessions.remove(token);
+	}
+
+	/**
+	 * Runs a task on the timer of the server after the specified delay.
+	 * 
+	 * @param task
+	 *            the task to be run
+	 * @param delayMillis
+	 *            the delay in milliseconds
+	 */
+	void schedule(Runnable task, long delayMillis) {
+		schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs a task on the timer of the server after the specified delay.
+	 * 
+	 * @param task
+	 *            the task to be run
+	 * @param delay
+	 *            the delay
+	 * @param unit
+	 *            the unit of the delay
+	 */
+	void schedule(Runnable task, long delay, TimeUnit unit) {
+		timer.schedule(task, delay, unit);
+	}
+
+	/**
+	 * Runs a task on the timer of the server repeatedly, at the specified
+	 * period.
+	 * 
+	 * @param task
+	 *            the task to be run
+	 * @param periodMillis
+	 *            the period in milliseconds
+	 */
+	void scheduleAtFixedRate(Runnable task, long periodMillis) {
+		timer.scheduleAtFixedRate(task, periodMillis, periodMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Puts a room back in the list of rooms with free seats.
+	 * 
+	 * @param room
+	 *            a room in which a seat has become free
+	 */
+	void addOpenRoom(GameRoom room) {
+		openRooms.add(room);
+	}
+
+	/**
+	 * Takes a room out of the list of rooms with free seats.
+	 * 
+	 * @param room
+	 *            a room which has become full
+	 */
+	void removeOpenRoom(GameRoom room) {
+		openRooms.remove(room);
+	}
+
+	/**
+	 * Sets whether clients may send Java-serialized messages. If not, every
+	 * client must choose the binary codec with a HELLO message, and no object
+	 * from the network is ever deserialized. Serialized messages are refused
+	 * unless this is turned on. Must be called before the server starts.
+	 * 
+	 * @param serializationAllowed
+	 *            true to accept serialized messages
+	 */
+	public void setSerializationAllowed(boolean serializationAllowed) {
+		this.serializationAllowed = serializationAllowed;
+	}
+
+	/**
+	 * Sets the maximum number of rooms. Clients arriving when all the rooms
+	 * are full get a FULL message. Must be called before the server starts.
+	 * 
+	 * @param maxNumOfRooms
+	 *            the maximum number of rooms, at least 1
+	 */
+	public void setMaxNumOfRooms(int maxNumOfRooms) {
+		if (maxNumOfRooms < 1) {
+			throw new IllegalArgumentException("At least 1 room is needed");
 		}
+		this.maxNumOfRooms = maxNumOfRooms;
+	}
+
+	/**
+	 * Returns the number of rooms opened so far.
+	 * 
+	 * @return the number of rooms
+	 */
+	public int getNumOfRooms() {
+		return rooms.size();
+	}
+
+	/**
+	 * Returns the room with the specified ID.
+	 * 
+	 * @param roomID
+	 *            the ID of the room
+	 * @return the room, or null if it has not been opened
+	 */
+	public GameRoom getRoom(int roomID) {
+		return rooms.get(roomID);
+	}
+
+	/**
+	 * Creates and returns a room of this server. Overrides this method if
+	 * the rooms need to keep the state of their games.
+	 * 
+	 * @param roomID
+	 *            the ID of the new room
+	 * @return an instance of the GameRoom class
+	 */
+	protected GameRoom createRoom(int roomID) {
+		return new GameRoom(this, roomID, maxNumOfPlayers);
+	}
+
+	/**
+	 * Creates and returns a bot to take an empty seat of a table formed by the
+	 * lobby. This implementation has no bots. Overrides this method to let
+	 * bots fill tables.
+	 * 
+	 * @param botID
+	 *            a number telling the bots of the server apart
+	 * @return the bot, or null if the server has no bots
+	 */
+	protected BotConnection createBot(int botID) {
+		return null;
 	}
 
 	/**
@@ -362,155 +1337,162 @@ public class CardGameServer {
 		return new Deck();
 	}
 
-	private synchronized void broadcastUserMessage(Socket clientSocket,
-			String msg) {
-		if (numOfPlayers > 0) {
-			// locates the client in the array
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == clientSocket) {
-					String longMsg = clientNames[i] + " ("
-							+ clientSocket.getRemoteSocketAddress() + "): "
-							+ msg;
-					broadcastMessage(new CardGameMessage(CardGameMessage.MSG,
-							i, longMsg));
-					break;
-				}
-			}
-		}
+	/**
+	 * Logs the specified message. Never blocks.
+	 * 
+	 * @param msg
+	 *            the message
+	 */
+	void println(String msg) {
+		log.log(msg);
 	}
 
 	/**
-	 * Prints the specified message to the text area.
+	 * Logs the specified message followed by the stack trace of an
+	 * exception. Never blocks.
 	 * 
 	 * @param msg
+	 *            the message
+	 * @param ex
+	 *            the exception
 	 */
-	private void println(String msg) {
-		textArea.append(msg + "\n");
-		textArea.setCaretPosition(textArea.getDocument().getLength());
+	void println(String msg, Throwable ex) {
+		log.log(msg, ex);
 	}
 
 	/**
-	 * This inner class is used for receiving incoming messages from a client
+	 * This inner class is used to represent a connection served by the
+	 * blocking transport.
 	 * 
-	 * @author Kenneth Wong
+	 * @author chanyuyan
 	 *
 	 */
-	private class ClientHandler implements Runnable {
-		private Socket clientSocket; // socket connection to the client
-		private ObjectInputStream oistream; // ObjectInputStream of the client
+	private class SocketConnection extends ClientConnection {
+		private final Socket clientSocket; // socket connection to the client
+		private final OutputStream ostream; // buffered OutputStream of the client
+		private final Runnable writer = this::writeFrames; // the writer task
 
 		/**
-		 * Creates and returns an instance of the ClientHandler class.
+		 * Creates and returns an instance of the SocketConnection class.
 		 * 
 		 * @param clientSocket
 		 *            the socket connection to the client
+		 * @throws IOException
+		 *             if the streams of the socket cannot be obtained
 		 */
-		public ClientHandler(Socket clientSocket) {
+		public SocketConnection(Socket clientSocket) throws IOException {
+			super(CardGameServer.this, clientSocket.getRemoteSocketAddress());
 			this.clientSocket = clientSocket;
-			try {
-				// creates an ObjectInputStream and chains it to the InputStream
-				// of the client socket
-				oistream = new ObjectInputStream(clientSocket.getInputStream());
-			} catch (Exception ex) {
-				println("Error in creating an ObjectInputStream for the client at "
-						+ clientSocket.getRemoteSocketAddress());
-				ex.printStackTrace();
-			}
-		} // constructor
-
-		// implementation of method from the Runnable interface
-		public void run() {
-			CardGameMessage message;
-			try {
-				// waits for messages from the client
-				while ((message = (CardGameMessage) oistream.readObject()) != null) {
-					println("Message received from "
-							+ clientSocket.getRemoteSocketAddress());
-					parseMessage(clientSocket, message);
-				} // close while
-			} catch (Exception ex) {
-				println("Error in receiving messages from the client at "
-						+ clientSocket.getRemoteSocketAddress());
-				ex.printStackTrace();
-				// possible connection loss, removes the connection
-				removeConnection(clientSocket);
-			}
-		} // run
-	} // ClientHandler
+			this.ostream = new BufferedOutputStream(clientSocket.getOutputStream());
+		}
 
-	private class ClientHandler2 implements Runnable {
-		private Socket clientSocket; // socket connection to the client
+		// implementation of method from the ClientConnection class
+		protected void startWriter() {
+			writers.execute(writer);
+		}
 
 		/**
-		 * Creates and returns an instance of the ClientHandler2 class.
-		 * 
-		 * @param clientSocket
-		 *            the socket connection to the client
+		 * Writes the queued frames until the queue is empty, and flushes
+		 * them. Runs as the writer task of this connection.
 		 */
-		public ClientHandler2(Socket clientSocket) {
-			this.clientSocket = clientSocket;
-		} // constructor
-
-		// implementation of method from the Runnable interface
-		public void run() {
+		private void writeFrames() {
 			try {
-				// creates an ObjectOutputStream and chains it to the
-				// OutputStream
-				// of the client socket
-				ObjectOutputStream oostream = new ObjectOutputStream(
-						clientSocket.getOutputStream());
-				// sends a FULL message to the client
-				oostream.writeObject(new CardGameMessage(CardGameMessage.FULL,
-						-1, null));
-				oostream.flush();
+				// the buffer gathers the frames released together, which
+				// the flush writes at once
+				byte[] frame;
+				boolean written = false;
+				while ((frame = pollFrame()) != null) {
+					ostream.write(frame);
+					countBytesSent(frame.length);
+					written = true;
+				}
+				if (written) {
+					ostream.flush();
+					countSocketWrite();
+				}
 			} catch (Exception ex) {
-				println("Error in sending a FULL message to the client at "
-						+ clientSocket.getRemoteSocketAddress());
-				ex.printStackTrace();
+				// the reading thread sees the broken connection as well
+				println("Error in sending messages to the client at "
+						+ getRemoteSocketAddress());
+				removeConnection(this);
+				// discards the frames left, so that a later frame starts a
+				// new writer task
+				while (pollFrame() != null) {
+					continue;
+				}
 			}
+		}
 
-			// sleeps for 1000 milliseconds before closing the socket
-			try {
-				Thread.sleep(1000);
-			} catch (Exception ex) {
-				println("Error in sleeping before closing the client socket at "
-						+ clientSocket.getRemoteSocketAddress());
-				ex.printStackTrace();
-			}
+		// implementation of method from the ClientConnection class
+		public void startReading() {
+			Thread t = Threads.newThread(new ClientHandler(this),
+					"ClientHandler " + getRemoteSocketAddress(), virtualThreads);
+			t.start();
+		}
 
-			// closes the socket
+		// implementation of method from the ClientConnection class
+		public void close() {
 			try {
 				clientSocket.close();
 			} catch (Exception ex) {
 				println("Error in closing the client socket at "
-						+ clientSocket.getRemoteSocketAddress());
-				ex.printStackTrace();
+						+ getRemoteSocketAddress(), ex);
 			}
-		} // run
-	} // ClientHandler2
-
-	/**
-	 * This inner class is used for handling the Clear menu
-	 * 
-	 * @author Kenneth Wong
-	 *
-	 */
-	private class ClearMenuItemListener implements ActionListener {
-		public void actionPerformed(ActionEvent e) {
-			textArea.setText("");
 		}
-	} // ClearMenuItemListener
+	} // SocketConnection
 
 	/**
-	 * This inner class is used for handling the Quit menu
+	 * This inner class is used for receiving incoming messages from a client
 	 * 
 	 * @author Kenneth Wong
 	 *
 	 */
-	private class QuitMenuItemListener implements ActionListener {
-		public void actionPerformed(ActionEvent e) {
-			frame.dispose();
-			System.exit(0);
-		}
-	} // QuitMenuItemListener
+	private class ClientHandler implements Runnable {
+		private SocketConnection connection; // connection to the client
+		private DataInputStream distream; // DataInputStream of the client
+
+		/**
+		 * Creates and returns an instance of the ClientHandler class.
+		 * 
+		 * @param connection
+		 *            the connection to the client
+		 */
+		public ClientHandler(SocketConnection connection) {
+			this.connection = connection;
+			try {
+				// creates a DataInputStream and chains it to the InputStream
+				// of the client socket
+				distream = new DataInputStream(new BufferedInputStream(
+						connection.clientSocket.getInputStream()));
+			} catch (Exception ex) {
+				println("Error in creating a DataInputStream for the client at "
+						+ connection.getRemoteSocketAddress(), ex);
+			}
+		} // constructor
+
+		// implementation of method from the Runnable interface
+		public void run() {
+			CardGameMessage message;
+			try {
+				// waits for messages from the client
+				while (true) {
+					byte[] payload = MessageCodec.readPayload(distream);
+					metrics.countBytesReceived(MessageCodec.HEADER_LENGTH
+							+ payload.length);
+					message = connection.decode(payload, 0, payload.length);
+					// the PING messages of quiet clients would flood the log
+					if (message.getType() != CardGameMessage.PING) {
+						println("Message received from "
+								+ connection.getRemoteSocketAddress());
+					}
+					parseMessage(connection, message);
+				} // close while
+			} catch (Exception ex) {
+				println("Error in receiving messages from the client at "
+						+ connection.getRemoteSocketAddress(), ex);
+				// possible connection loss, removes the connection
+				removeConnection(connection);
+			}
+		} // run
+	} // ClientHandler
 }
@@ -0,0 +1,342 @@
+import java.io.Serializable;
+
+/**
+ * This class is used to represent a set of cards as a single 64-bit word.
+ * Each of the 52 cards owns one bit. Bits are ordered by Big Two strength, so
+ * the lowest set bit is the smallest card and the highest set bit is the top
+ * card of the set.
+ * <p>
+ * The bit of a card is 4 * (Big Two rank) + suit, where the Big Two rank runs
+ * from 0 for '3' up to 12 for '2'. The four cards of a rank therefore share one
+ * 4-bit group. Instances are immutable.
+ *
+ * @author chanyuyan
+ *
+ */
+public final class CardSet implements Serializable {
+	private static final long serialVersionUID = 2853017724620310641L;
+
+	/**
+	 * The empty set of cards.
+	 */
+	public static final CardSet EMPTY = new CardSet(0L);
+
+	/**
+	 * The set of all 52 cards.
+	 */
+	public static final CardSet FULL = new CardSet((1L << 52) - 1);
+
+	// The bits of the cards in this set
+	private final long bits;
+
+	/**
+	 * Creates a set with the specified bits.
+	 *
+	 * @param bits the bits of the cards in the set
+	 */
+	private CardSet(long bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * Returns the set with the specified bits.
+	 *
+	 * @param bits the bits of the cards in the set
+	 * @return the set with the specified bits
+	 */
+	public static CardSet valueOf(long bits) {
+		return bits == 0L ? EMPTY : new CardSet(bits & FULL.bits);
+	}
+
+	/**
+	 * Returns the set containing the specified card only.
+	 *
+	 * @param card the card
+	 * @return the set containing the specified card
+	 */
+	public static CardSet of(Card card) {
+		return new CardSet(bitOf(card));
+	}
+
+	/**
+	 * Returns the set of cards in the specified list.
+	 *
+	 * @param cards the list of cards
+	 * @return the set of cards in the list
+	 */
+	public static CardSet of(CardList cards) {
+		return valueOf(bitsOf(cards));
+	}
+
+	/**
+	 * Converts a rank of the Card class ('A' = 0, '2' = 1, '3' = 2, ...) to a
+	 * Big Two rank ('3' = 0, ..., 'K' = 10, 'A' = 11, '2' = 12).
+	 *
+	 * @param rank a rank between 0 and 12 as used by the Card class
+	 * @return the Big Two rank between 0 and 12
+	 */
+	public static int bigTwoRank(int rank) {
+		return (rank + 11) % 13;
+	}
+
+	/**
+	 * Converts a Big Two rank back to a rank of the Card class.
+	 *
+	 * @param bigTwoRank a Big Two rank between 0 and 12
+	 * @return the rank between 0 and 12 as used by the Card class
+	 */
+	public static int cardRank(int bigTwoRank) {
+		return (bigTwoRank + 2) % 13;
+	}
+
+	/**
+	 * Returns the bit index of the card with the specified suit and rank.
+	 *
+	 * @param suit the suit of the card, between 0 and 3
+	 * @param rank the rank of the card as used by the Card class
+	 * @return the bit index of the card, between 0 and 51
+	 */
+	public static int indexOf(int suit, int rank) {
+		return bigTwoRank(rank) * 4 + suit;
+	}
+
+	/**
+	 * Returns the bit index of the specified card.
+	 *
+	 * @param card the card
+	 * @return the bit index of the card, between 0 and 51
+	 */
+	public static int indexOf(Card card) {
+		return indexOf(card.getSuit(), card.getRank());
+	}
+
+	/**
+	 * Returns the single bit owned by the specified card.
+	 *
+	 * @param card the card
+	 * @return the bit of the card
+	 */
+	public static long bitOf(Card card) {
+		return 1L << indexOf(card);
+	}
+
+	/**
+	 * Returns the bits of the cards in the specified list without creating a
+	 * CardSet.
+	 *
+	 * @param cards the list of cards
+	 * @return the bits of the cards in the list
+	 */
+	public static long bitsOf(CardList cards) {
+		long bits = 0L;
+		for (int i = 0; i < cards.size(); i++) {
+			bits |= bitOf(cards.getCard(i));
+		}
+		return bits;
+	}
+
+	/**
+	 * Returns the suit of the card at the specified bit index.
+	 *
+	 * @param index the bit index of the card
+	 * @return the suit of the card, between 0 and 3
+	 */
+	public static int suitAt(int index) {
+		return index & 3;
+	}
+
+	/**
+	 * Returns the rank (as used by the Card class) of the card at the
+	 * specified bit index.
+	 *
+	 * @param index the bit index of the card
+	 * @return the rank of the card, between 0 and 12
+	 */
+	public static int rankAt(int index) {
+		return cardRank(index >>> 2);
+	}
+
+	/**
+	 * Returns the Big Two card at the specified bit index.
+	 *
+	 * @param index the bit index of the card
+	 * @return the card at the bit index
+	 */
+	public static Card cardAt(int index) {
+		return BigTwoCard.valueOf(suitAt(index), rankAt(index));
+	}
+
+	/**
+	 * Returns the bits of the cards in this set.
+	 *
+	 * @return the bits of the cards in this set
+	 */
+	public long bits() {
+		return bits;
+	}
+
+	/**
+	 * Returns the union of this set and the specified set.
+	 *
+	 * @param other the other set
+	 * @return the cards that are in either set
+	 */
+	public CardSet union(CardSet other) {
+		return valueOf(bits | other.bits);
+	}
+
+	/**
+	 * Returns the cards of this set that are not in the specified set.
+	 *
+	 * @param other the other set
+	 * @return the cards that are in this set but not in the other set
+	 */
+	public CardSet difference(CardSet other) {
+		return valueOf(bits & ~other.bits);
+	}
+
+	/**
+	 * Returns the cards that are in both this set and the specified set.
+	 *
+	 * @param other the other set
+	 * @return the cards that are in both sets
+	 */
+	public CardSet intersection(CardSet other) {
+		return valueOf(bits & other.bits);
+	}
+
+	/**
+	 * Returns this set with the specified card added.
+	 *
+	 * @param card the card to be added
+	 * @return this set with the card added
+	 */
+	public CardSet add(Card card) {
+		return valueOf(bits | bitOf(card));
+	}
+
+	/**
+	 * Returns this set with the specified card removed.
+	 *
+	 * @param card the card to be removed
+	 * @return this set with the card removed
+	 */
+	public CardSet remove(Card card) {
+		return valueOf(bits & ~bitOf(card));
+	}
+
+	/**
+	 * Returns true if this set contains the specified card.
+	 *
+	 * @param card the card whose presence is to be tested
+	 * @return true if this set contains the card; otherwise false
+	 */
+	public boolean contains(Card card) {
+		return (bits & bitOf(card)) != 0L;
+	}
+
+	/**
+	 * Returns true if this set contains every card of the specified set.
+	 *
+	 * @param other the set whose cards are to be tested
+	 * @return true if this set contains all cards of the other set
+	 */
+	public boolean containsAll(CardSet other) {
+		return (other.bits & ~bits) == 0L;
+	}
+
+	/**
+	 * Returns true if this set contains no cards.
+	 *
+	 * @return true if this set contains no cards; otherwise false
+	 */
+	public boolean isEmpty() {
+		return bits == 0L;
+	}
+
+	/**
+	 * Returns the number of cards in this set.
+	 *
+	 * @return the number of cards in this set
+	 */
+	public int size() {
+		return Long.bitCount(bits);
+	}
+
+	/**
+	 * Returns the bit index of the smallest card in this set.
+	 *
+	 * @return the bit index of the smallest card, or -1 if this set is empty
+	 */
+	public int first() {
+		return bits == 0L ? -1 : Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * Returns the bit index of the largest card in this set.
+	 *
+	 * @return the bit index of the largest card, or -1 if this set is empty
+	 */
+	public int last() {
+		return 63 - Long.numberOfLeadingZeros(bits);
+	}
+
+	/**
+	 * Returns the bit index of the smallest card in this set that is larger
+	 * than the card at the specified bit index. Together with first(), this
+	 * iterates the set in Big Two order:
+	 * <p>
+	 * for (int i = set.first(); i >= 0; i = set.next(i)) { ... }
+	 *
+	 * @param index the bit index to start after
+	 * @return the bit index of the next card, or -1 if there is none
+	 */
+	public int next(int index) {
+		if (index >= 63) {
+			return -1;
+		}
+		long rest = bits & (-1L << (index + 1));
+		return rest == 0L ? -1 : Long.numberOfTrailingZeros(rest);
+	}
+
+	/**
+	 * Returns the cards of this set as a list sorted in Big Two order.
+	 *
+	 * @return the list of cards in this set
+	 */
+	public CardList toCardList() {
+		CardList cards = new CardList();
+		for (int i = first(); i >= 0; i = next(i)) {
+			cards.addCard(cardAt(i));
+		}
+		return cards;
+	}
+
+	/**
+	 * Indicates whether the specified set holds the same cards as this one.
+	 *
+	 * @param obj the reference object with which to compare
+	 * @return true if the other object is a set with the same cards
+	 */
+	public boolean equals(Object obj) {
+		return obj instanceof CardSet && ((CardSet) obj).bits == bits;
+	}
+
+	/**
+	 * Returns a hash code value for the set.
+	 *
+	 * @return a hash code value for the set
+	 */
+	public int hashCode() {
+		return Long.hashCode(bits);
+	}
+
+	/**
+	 * Returns a string representation of the cards in the set.
+	 *
+	 * @return a string representation of the cards in the set
+	 */
+	public String toString() {
+		return toCardList().toString();
+	}
+}
@@ -0,0 +1,559 @@
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is used to represent the connection between a card game server
+ * and one of its clients, whatever transport carries it.
+ * <p>
+ * Frames sent to the client wait in a bounded queue, which a writer task of
+ * the transport drains. A room therefore never waits for a slow client.
+ * When the queue of a client is full, the overflow policy of the server
+ * decides between dropping chat messages and dropping the client.
+ * <p>
+ * A room corks the connections it sends to while it handles an event, and
+ * uncorks them afterwards, so that all the frames caused by one event leave
+ * in as few writes as the transport can manage.
+ * 
+ * @author chanyuyan
+ *
+ */
+public abstract class ClientConnection {
+	// The server of this connection
+	private final CardGameServer server;
+	// The address of the client
+	private final SocketAddress remoteAddress;
+	// The frames waiting to be written, guarded by queueLock
+	private final ArrayDeque<byte[]> outboundFrames = new ArrayDeque<byte[]>();
+	// Whether each waiting frame may be dropped on overflow, in queue order
+	private final ArrayDeque<Boolean> droppable = new ArrayDeque<Boolean>();
+	// The lock guarding the queue of waiting frames
+	private final ReentrantLock queueLock = new ReentrantLock();
+	// The maximum number of waiting frames
+	private final int queueCapacity;
+	// Whether a writer task is draining the queue, guarded by queueLock
+	private boolean writerScheduled = false;
+	// Whether the queue has overflowed and the client is being dropped
+	private boolean overflowed = false;
+	// Whether queued frames are held back until uncork(), guarded by queueLock
+	private boolean corked = false;
+	// The codec used for the messages of this connection
+	private volatile MessageCodec codec = new SerializationCodec();
+	// Whether serialized messages are accepted from the client
+	private boolean serializationAllowed = false;
+	// Whether the first frame from the client has chosen the codec
+	private boolean negotiated = false;
+	// Whether the server has dealt with the first message other than HELLO
+	private volatile boolean admitted = false;
+	// The room in which the client is seated
+	private volatile GameRoom room;
+	// The seat of the client in its room, set on the event loop of the room
+	private volatile int seat = -1;
+	// Whether the connection has been removed from the server
+	private final AtomicBoolean removed = new AtomicBoolean();
+	// The tick of the heartbeat wheel at which a frame was last read
+	private volatile long lastActivity;
+	// The token bucket limiting the MSG messages of the client, or null
+	private final TokenBucket chatBucket;
+	// The token bucket limiting the MOVE messages of the client, or null
+	private final TokenBucket moveBucket;
+	// The messages held back by a rate limit, and those which arrived after
+	// them, in arrival order, guarded by heldLock
+	private final ArrayDeque<CardGameMessage> heldMessages = new ArrayDeque<CardGameMessage>();
+	// The time each held message may be dispatched, in ns, in queue order
+	private final ArrayDeque<Long> heldUntil = new ArrayDeque<Long>();
+	// Whether the timer is dispatching held messages, guarded by heldLock
+	private boolean releasing = false;
+	// The lock guarding the held messages
+	private final ReentrantLock heldLock = new ReentrantLock();
+
+	/**
+	 * Creates a connection to the client at the specified address.
+	 * 
+	 * @param server
+	 *            the server of this connection
+	 * @param remoteAddress
+	 *            the address of the client
+	 */
+	protected ClientConnection(CardGameServer server, SocketAddress remoteAddress) {
+		this.server = server;
+		this.remoteAddress = remoteAddress;
+		this.queueCapacity = server.getOutboundQueueCapacity();
+		this.chatBucket = server.newBucket(CardGameMessage.MSG);
+		this.moveBucket = server.newBucket(CardGameMessage.MOVE);
+	}
+
+	/**
+	 * Returns the address of the client.
+	 * 
+	 * @return the address of the client
+	 */
+	public SocketAddress getRemoteSocketAddress() {
+		return remoteAddress;
+	}
+
+	/**
+	 * Returns the codec used for the messages of this connection.
+	 * 
+	 * @return the codec of this connection
+	 */
+	public MessageCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Sets the codec used for the messages of this connection.
+	 * 
+	 * @param codec
+	 *            the codec of this connection
+	 */
+	public void setCodec(MessageCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Sets whether serialized messages are accepted from the client. If not,
+	 * the first frame must be a binary HELLO message.
+	 * 
+	 * @param serializationAllowed
+	 *            true to accept serialized messages
+	 */
+	void setSerializationAllowed(boolean serializationAllowed) {
+		this.serializationAllowed = serializationAllowed;
+	}
+
+	/**
+	 * Decodes the payload of a frame from the client. The first frame chooses
+	 * the codec of the connection: a binary HELLO message switches it to
+	 * BinaryCodec, and anything else keeps SerializationCodec. The frame also
+	 * shows the client to be alive. Called by the thread reading the
+	 * connection.
+	 * 
+	 * @param payload
+	 *            the array holding the payload
+	 * @param offset
+	 *            the index of the first byte of the payload
+	 * @param length
+	 *            the number of bytes of the payload
+	 * @return the decoded message
+	 * @throws IOException
+	 *             if the payload is not a valid message, or is serialized when
+	 *             that is not allowed
+	 */
+	public CardGameMessage decode(byte[] payload, int offset, int length)
+			throws IOException {
+		// stores only when the tick has changed, to spare the cache line
+		long now = server.getHeartbeatTick();
+		if (lastActivity != now) {
+			lastActivity = now;
+		}
+		try {
+			if (!negotiated) {
+				negotiated = true;
+				if (BinaryCodec.isHello(payload, offset, length)) {
+					codec = new BinaryCodec();
+				} else if (!serializationAllowed) {
+					throw new InvalidObjectException(
+							"Serialized messages are not accepted");
+				}
+			}
+			return codec.decode(payload, offset, length);
+		} catch (IOException ex) {
+			server.getMetrics().countDecodeError();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns the tick of the heartbeat wheel at which a frame was last read
+	 * from the client.
+	 * 
+	 * @return the tick of the last frame read
+	 */
+	long getLastActivity() {
+		return lastActivity;
+	}
+
+	/**
+	 * Sets the tick of the heartbeat wheel at which the client was last heard.
+	 * 
+	 * @param lastActivity
+	 *            the tick
+	 */
+	void setLastActivity(long lastActivity) {
+		this.lastActivity = lastActivity;
+	}
+
+	/**
+	 * Returns the token bucket limiting a type of message from the client.
+	 * 
+	 * @param type
+	 *            the type of message
+	 * @return the bucket, or null if the type is not limited
+	 */
+	TokenBucket getBucket(int type) {
+		if (type == CardGameMessage.MSG) {
+			return chatBucket;
+		} else if (type == CardGameMessage.MOVE) {
+			return moveBucket;
+		}
+		return null;
+	}
+
+	/**
+	 * Holds back a message from the client until the specified time, and
+	 * until the messages held back before it have been dispatched, so that
+	 * its room gets the messages of the client in the order they arrived.
+	 * Called by the thread reading the connection.
+	 * 
+	 * @param message
+	 *            the message from the client
+	 * @param releaseTime
+	 *            the System.nanoTime() at which the message may be dispatched
+	 * @param delayed
+	 *            true if the message is over its rate limit and must wait
+	 *            until the release time
+	 * @return true if the message is held back; false if no message is held
+	 *         and it may be dispatched now
+	 */
+	boolean hold(CardGameMessage message, long releaseTime, boolean delayed) {
+		heldLock.lock();
+		try {
+			if (heldMessages.isEmpty() && !releasing) {
+				if (!delayed) {
+					return false;
+				}
+				server.schedule(this::releaseHeld, releaseTime - System.nanoTime(),
+						TimeUnit.NANOSECONDS);
+			}
+			// a message held while the timer is releasing is picked up by
+			// its next pass
+			heldMessages.add(message);
+			heldUntil.add(releaseTime);
+			return true;
+		} finally {
+			heldLock.unlock();
+		}
+	}
+
+	/**
+	 * Dispatches the held messages in order, up to the first one whose time
+	 * has not come, and schedules itself again for that one. The messages
+	 * due are taken out under the lock and dispatched after it is released;
+	 * until the queue is found empty, messages read meanwhile are held
+	 * behind them. Runs on the timer of the server.
+	 */
+	private void releaseHeld() {
+		ArrayList<CardGameMessage> due = new ArrayList<CardGameMessage>();
+		while (true) {
+			heldLock.lock();
+			try {
+				if (isRemoved()) {
+					heldMessages.clear();
+					heldUntil.clear();
+				}
+				long now = System.nanoTime();
+				while (!heldMessages.isEmpty() && heldUntil.peek() <= now) {
+					heldUntil.poll();
+					due.add(heldMessages.poll());
+				}
+				if (due.isEmpty()) {
+					releasing = false;
+					if (!heldMessages.isEmpty()) {
+						server.schedule(this::releaseHeld, heldUntil.peek() - now,
+								TimeUnit.NANOSECONDS);
+					}
+					return;
+				}
+				releasing = true;
+			} finally {
+				heldLock.unlock();
+			}
+			for (int i = 0; i < due.size(); i++) {
+				server.dispatch(this, due.get(i));
+			}
+			due.clear();
+		}
+	}
+
+	/**
+	 * Returns true if the connection has been removed from the server.
+	 * 
+	 * @return true if the connection has been removed
+	 */
+	boolean isRemoved() {
+		return removed.get();
+	}
+
+	/**
+	 * Returns true if the connection is a bot playing on the server rather
+	 * than a remote client.
+	 * 
+	 * @return false; overridden by BotConnection
+	 */
+	public boolean isBot() {
+		return false;
+	}
+
+	/**
+	 * Marks the connection as removed from the server, and discards the
+	 * frames waiting to be written. Frames sent afterwards are discarded too.
+	 * 
+	 * @return true the first time; false if it had been removed already
+	 */
+	boolean setRemoved() {
+		if (!removed.compareAndSet(false, true)) {
+			return false;
+		}
+		queueLock.lock();
+		try {
+			server.countQueuedFrames(-outboundFrames.size());
+			outboundFrames.clear();
+			droppable.clear();
+		} finally {
+			queueLock.unlock();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true once the server has dealt with the first message other
+	 * than HELLO from the client, seating the client or turning it away.
+	 * 
+	 * @return true if the client has been admitted or rejected
+	 */
+	boolean isAdmitted() {
+		return admitted;
+	}
+
+	/**
+	 * Marks the first message other than HELLO from the client as dealt with.
+	 */
+	void setAdmitted() {
+		admitted = true;
+	}
+
+	/**
+	 * Returns the room in which the client is seated.
+	 * 
+	 * @return the room of the client, or null if it has none
+	 */
+	public GameRoom getRoom() {
+		return room;
+	}
+
+	/**
+	 * Sets the room in which the client is seated.
+	 * 
+	 * @param room
+	 *            the room of the client
+	 */
+	void setRoom(GameRoom room) {
+		this.room = room;
+	}
+
+	/**
+	 * Returns the seat of the client in its room, which is also its playerID.
+	 * 
+	 * @return the seat of the client, or -1 if it is not seated
+	 */
+	public int getSeat() {
+		return seat;
+	}
+
+	/**
+	 * Sets the seat of the client in its room. Called on the event loop of
+	 * the room.
+	 * 
+	 * @param seat
+	 *            the seat of the client, or -1 once it has left
+	 */
+	void setSeat(int seat) {
+		this.seat = seat;
+	}
+
+	/**
+	 * Queues an encoded frame for sending to the client. The frame must not be
+	 * modified afterwards, since it may still be queued for sending, and the
+	 * same frame may be sent to other clients.
+	 * 
+	 * @param frame
+	 *            the frame to be sent
+	 */
+	public void sendFrame(byte[] frame) {
+		sendFrame(frame, false);
+	}
+
+	/**
+	 * Queues an encoded frame for sending to the client, and starts a writer
+	 * task if none is draining the queue. If the queue is full, the overflow
+	 * policy of the server applies. Frames for a client that is being dropped,
+	 * or has been removed, are discarded.
+	 * 
+	 * @param frame
+	 *            the frame to be sent
+	 * @param canDrop
+	 *            true if the frame may be dropped when the queue is full, as
+	 *            chat messages may
+	 */
+	public void sendFrame(byte[] frame, boolean canDrop) {
+		boolean startWriter = false;
+		boolean overflow = false;
+		queueLock.lock();
+		try {
+			if (overflowed || removed.get()) {
+				return;
+			}
+			if (outboundFrames.size() >= queueCapacity) {
+				if (server.getOverflowPolicy() == CardGameServer.DROP_CHAT_ON_OVERFLOW) {
+					if (canDrop) {
+						// drops the new chat message
+						server.countFramesDropped(1);
+						return;
+					}
+					dropQueuedChat();
+				}
+				if (outboundFrames.size() >= queueCapacity) {
+					// drops the client, which will not get any further frame
+					overflowed = true;
+					overflow = true;
+					server.countQueuedFrames(-outboundFrames.size());
+					outboundFrames.clear();
+					droppable.clear();
+				}
+			}
+			if (!overflow) {
+				outboundFrames.add(frame);
+				droppable.add(canDrop);
+				server.countQueuedFrames(1);
+				server.getMetrics().recordQueueDepth(outboundFrames.size());
+				if (!writerScheduled && !corked) {
+					writerScheduled = true;
+					startWriter = true;
+				}
+			}
+		} finally {
+			queueLock.unlock();
+		}
+		if (overflow) {
+			server.overflow(this);
+		} else if (startWriter) {
+			startWriter();
+		}
+	}
+
+	/**
+	 * Drops the chat messages waiting in the queue. Called with queueLock
+	 * held.
+	 */
+	private void dropQueuedChat() {
+		Iterator<byte[]> frames = outboundFrames.iterator();
+		Iterator<Boolean> flags = droppable.iterator();
+		int dropped = 0;
+		while (frames.hasNext()) {
+			frames.next();
+			if (flags.next()) {
+				frames.remove();
+				flags.remove();
+				dropped++;
+			}
+		}
+		server.countFramesDropped(dropped);
+		server.countQueuedFrames(-dropped);
+	}
+
+	/**
+	 * Holds back the frames queued from now on until uncork() is called.
+	 * A writer task which is running stops at its next frame.
+	 */
+	void cork() {
+		queueLock.lock();
+		try {
+			corked = true;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Releases the frames held back since cork(), starting a writer task for
+	 * them.
+	 */
+	void uncork() {
+		boolean startWriter = false;
+		queueLock.lock();
+		try {
+			corked = false;
+			if (!outboundFrames.isEmpty() && !writerScheduled) {
+				writerScheduled = true;
+				startWriter = true;
+			}
+		} finally {
+			queueLock.unlock();
+		}
+		if (startWriter) {
+			startWriter();
+		}
+	}
+
+	/**
+	 * Takes the next frame to be written from the queue. Called by the writer
+	 * task; once this method returns null the writer task must stop, and the
+	 * next frame queued, or uncork(), starts a new one.
+	 * 
+	 * @return the next frame, or null if the queue is empty or corked
+	 */
+	protected byte[] pollFrame() {
+		queueLock.lock();
+		try {
+			byte[] frame = corked ? null : outboundFrames.poll();
+			if (frame == null) {
+				writerScheduled = false;
+			} else {
+				droppable.poll();
+				server.countQueuedFrames(-1);
+			}
+			return frame;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of frames waiting to be written.
+	 * 
+	 * @return the depth of the outbound queue
+	 */
+	public int getQueueDepth() {
+		queueLock.lock();
+		try {
+			return outboundFrames.size();
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Starts a writer task which writes the frames returned by pollFrame()
+	 * until it returns null. Called when a frame is queued and no writer task
+	 * is running.
+	 */
+	protected abstract void startWriter();
+
+	/**
+	 * Starts receiving messages from the client. Called once the server has
+	 * accepted the connection.
+	 */
+	public abstract void startReading();
+
+	/**
+	 * Closes the connection.
+	 */
+	public abstract void close();
+}
@@ -0,0 +1,242 @@
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class is used to benchmark how a BigTwoServer copes with many
+ * connections under each way of serving them: platform threads, virtual
+ * threads, or the NIO transport.
+ * <p>
+ * For each mode a server is started in a JVM of its own, and connections are
+ * opened one after another and kept open. The accept latency of a connection
+ * is the time from the start of the connect, through the HELLO and JOIN
+ * messages, the latter of which gets the client seated, to the arrival of the
+ * PLAYER_LIST message. Memory per connection is the growth of the resident
+ * set and of the used heap once all connections are open, divided by the
+ * number of connections. The client sockets live in the same JVM, so both
+ * figures include their small cost too.
+ *
+ * @author chanyuyan
+ *
+ */
+public class ConnectionBenchmark {
+	// The modes benchmarked when none are given
+	private static final String[] MODES = { "platform", "virtual", "nio" };
+
+	/**
+	 * Runs the benchmark of one mode in the current JVM.
+	 *
+	 * @param mode
+	 *            "platform", "virtual" or "nio"
+	 * @param numOfConnections
+	 *            the number of connections to be opened
+	 * @throws Exception
+	 *             if the server cannot be reached
+	 */
+	private static void run(String mode, int numOfConnections) throws Exception {
+		final BigTwoServer server = new BigTwoServer(true);
+		if (mode.equals("nio")) {
+			server.setTransport(CardGameServer.NIO_TRANSPORT);
+		} else if (mode.equals("virtual")) {
+			if (!Threads.isVirtualSupported()) {
+				System.out.println("virtual: this JVM has no virtual threads; "
+						+ "platform threads are used instead");
+			}
+			server.setVirtualThreads(true);
+		} else if (!mode.equals("platform")) {
+			throw new IllegalArgumentException("Unknown mode: " + mode);
+		}
+		server.setMaxNumOfRooms(numOfConnections / 4 + 2);
+		final int port = freePort();
+		Thread serverThread = new Thread(() -> server.start(port), "server");
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		MessageCodec codec = new BinaryCodec();
+		ArrayList<Socket> sockets = new ArrayList<Socket>();
+		// the first connection waits for the server to come up and is not
+		// measured
+		sockets.add(connect(port, codec, 10000));
+
+		long rssBefore = residentSetSize();
+		long heapBefore = usedHeap();
+		int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+		long[] latencies = new long[numOfConnections];
+		long startTime = System.nanoTime();
+		for (int i = 0; i < numOfConnections; i++) {
+			long t = System.nanoTime();
+			sockets.add(connect(port, codec, 0));
+			latencies[i] = System.nanoTime() - t;
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+
+		long rssAfter = residentSetSize();
+		long heapAfter = usedHeap();
+		int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+
+		Arrays.sort(latencies);
+		System.out.printf("%-8s %6d connections, %8.0f connects/s, accept latency us: "
+				+ "p50 %6.0f p90 %6.0f p99 %6.0f max %7.0f%n", mode,
+				numOfConnections, numOfConnections / seconds,
+				percentile(latencies, 0.5), percentile(latencies, 0.9),
+				percentile(latencies, 0.99), latencies[numOfConnections - 1] / 1e3);
+		System.out.printf("%-8s RSS %s KiB/connection, heap %.1f KiB/connection, "
+				+ "platform threads %d -> %d%n", mode,
+				rssBefore < 0 ? "n/a" : String.format("%.1f",
+						(rssAfter - rssBefore) / 1024.0 / numOfConnections),
+				(heapAfter - heapBefore) / 1024.0 / numOfConnections,
+				threadsBefore, threadsAfter);
+		// the connections stay open until the JVM exits, so that closing them
+		// does not flood the server log of the next mode
+	}
+
+	/**
+	 * Opens a connection to the server and waits for the PLAYER_LIST message.
+	 *
+	 * @param port
+	 *            the port of the server
+	 * @param codec
+	 *            the codec of the server
+	 * @param timeoutMillis
+	 *            how long to keep retrying while the server is not up
+	 * @return the open socket
+	 * @throws Exception
+	 *             if the connection fails
+	 */
+	private static Socket connect(int port, MessageCodec codec,
+			long timeoutMillis) throws Exception {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			try {
+				Socket socket = new Socket("127.0.0.1", port);
+				// the server seats a client at its first message other than
+				// HELLO
+				socket.getOutputStream().write(codec.encode(new CardGameMessage(
+						CardGameMessage.HELLO, -1, BinaryCodec.VERSION)));
+				socket.getOutputStream().write(codec.encode(new CardGameMessage(
+						CardGameMessage.JOIN, -1, "bench")));
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				CardGameMessage message = codec.read(in);
+				if (message.getType() == CardGameMessage.HELLO) {
+					message = codec.read(in);
+				}
+				if (message.getType() != CardGameMessage.PLAYER_LIST) {
+					throw new IOException("Unexpected message type "
+							+ message.getType());
+				}
+				return socket;
+			} catch (IOException ex) {
+				if (System.currentTimeMillis() >= deadline) {
+					throw ex;
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	/**
+	 * Returns a port that is free at the time of the call.
+	 *
+	 * @return a free port
+	 * @throws IOException
+	 *             if no port can be bound
+	 */
+	private static int freePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		return port;
+	}
+
+	/**
+	 * Returns the value at the specified fraction of sorted latencies.
+	 *
+	 * @param sorted
+	 *            latencies in nanoseconds, in ascending order
+	 * @param fraction
+	 *            a value between 0 and 1
+	 * @return the latency in microseconds
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e3;
+	}
+
+	/**
+	 * Returns the used heap after a garbage collection.
+	 *
+	 * @return the used heap in bytes
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the collection
+	 */
+	private static long usedHeap() throws InterruptedException {
+		System.gc();
+		Thread.sleep(200);
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Returns the resident set size of this process, read from /proc.
+	 *
+	 * @return the resident set size in bytes, or -1 if it is not available
+	 */
+	private static long residentSetSize() {
+		try (BufferedReader reader = new BufferedReader(new FileReader(
+				"/proc/self/status"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+				}
+			}
+		} catch (IOException | NumberFormatException ex) {
+			// not on Linux
+		}
+		return -1;
+	}
+
+	/**
+	 * main() method for running the benchmark.
+	 *
+	 * @param args
+	 *            the number of connections (default 2000), followed by the
+	 *            modes to be run in the current JVM. Without modes every mode
+	 *            runs in a JVM of its own
+	 * @throws Exception
+	 *             if a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int numOfConnections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		if (args.length > 1) {
+			for (int i = 1; i < args.length; i++) {
+				run(args[i], numOfConnections);
+			}
+			System.exit(0);
+		}
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classPath = System.getProperty("java.class.path");
+		for (String mode : MODES) {
+			ArrayList<String> command = new ArrayList<String>();
+			command.add(java);
+			command.add("-cp");
+			command.add(classPath);
+			command.add(ConnectionBenchmark.class.getName());
+			command.add(Integer.toString(numOfConnections));
+			command.add(mode);
+			Process process = new ProcessBuilder(command).inheritIO().start();
+			if (process.waitFor() != 0) {
+				System.out.println(mode + " failed");
+			}
+		}
+	}
+}
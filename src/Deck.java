@@ -1,3 +1,5 @@
+import java.util.Random;
+
 /**
  * This class is used to represent a deck of cards in general card games.
  * 
@@ -20,8 +22,7 @@ public class Deck extends CardList {
 		removeAllCards();
 		for (int i = 0; i < 4; i++) {
 			for (int j = 0; j < 13; j++) {
-				Card card = new Card(i, j);
-				addCard(card);
+				addCard(Card.valueOf(i, j));
 			}
 		}
 	}
@@ -38,4 +39,22 @@ public class Deck extends CardList {
 			}
 		}
 	}
+
+	/**
+	 * Shuffles the deck of cards using the specified source of randomness.
+	 * Callers that shuffle from many threads should pass one Random per
+	 * thread, since Math.random() is shared by the whole JVM.
+	 * 
+	 * @param random
+	 *            the source of randomness
+	 */
+	public void shuffle(Random random) {
+		for (int i = 0; i < this.size(); i++) {
+			int j = random.nextInt(this.size());
+			if (i != j) {
+				Card card = setCard(i, getCard(j));
+				setCard(j, card);
+			}
+		}
+	}
 }
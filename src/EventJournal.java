@@ -0,0 +1,749 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * This class is used to model the append-only journal of the events which
+ * change the state of the rooms of a card game server: players joining and
+ * leaving, the deal of each game, the accepted moves and the results. It is
+ * kept for audits, disputes and recovery after a crash.
+ * <p>
+ * The journal is a directory of segment files, each holding a fixed number
+ * of fixed-size records and named after the sequence number of its first
+ * record. A record is written straight into the segment, which is mapped
+ * into memory: appending takes a sequence number with one atomic increment,
+ * which also gives the record its place, so that the room threads append in
+ * parallel without a lock, and a few stores into the mapping. Segments are
+ * mapped as the sequence numbers reach them, so the journal rolls over to a
+ * new file without stopping the writers, and a segment is closed once all
+ * its records have been written and forced to disk. The flusher maps the
+ * next segment while the current one is half full, so that no writer waits
+ * for a file to be created.
+ * <p>
+ * Appending never waits for the disk. A flusher thread forces the segments
+ * written since its last pass every COMMIT_INTERVAL milliseconds, so one
+ * sync commits all the records appended in that time. The records are in
+ * the page cache as soon as they are appended, and outlive a crash of the
+ * server; a crash of the operating system loses at most the records of the
+ * last commit interval. A record which was being written during a crash
+ * fails its checksum and is skipped by readers.
+ * <p>
+ * A record is RECORD_SIZE bytes, big-endian: the sequence number (8 bytes,
+ * 0 for a record never written), the time in milliseconds since the epoch
+ * (8), the room ID (4), the type of the event (1), the seat of the player
+ * (1, or -1), the length of the data (1), a reserved byte, DATA_SIZE bytes
+ * of data, and the CRC-32 of all the bytes before it (4).
+ *
+ * @author chanyuyan
+ *
+ */
+public class EventJournal {
+	/**
+	 * A player has joined a room. The data is the name of the player in
+	 * UTF-8, cut to DATA_SIZE bytes.
+	 */
+	public static final int JOIN = 1;
+	/**
+	 * A player has left a room, and the seat is free. There is no data.
+	 */
+	public static final int QUIT = 2;
+	/**
+	 * A game has started. The data is the shuffled deck, one byte per card
+	 * holding suit * 13 + rank, in the order of the deck.
+	 */
+	public static final int DEAL = 3;
+	/**
+	 * A move has been accepted. The data is the 16-bit mask of the selected
+	 * card indices, or 0xFFFF for a pass, as in BinaryCodec.
+	 */
+	public static final int MOVE = 4;
+	/**
+	 * A game has ended; the player of the record is the winner. The data is
+	 * the number of cards left in each hand, one byte per player.
+	 */
+	public static final int RESULT = 5;
+	/**
+	 * The size of a record in bytes.
+	 */
+	public static final int RECORD_SIZE = 128;
+	/**
+	 * The number of bytes of data a record holds.
+	 */
+	public static final int DATA_SIZE = 100;
+	/**
+	 * How often the records appended are forced to disk, in milliseconds.
+	 */
+	public static final long COMMIT_INTERVAL = 10;
+
+	// The names of the types of event, by type
+	private static final String[] TYPE_NAMES = { null, "JOIN", "QUIT", "DEAL",
+			"MOVE", "RESULT" };
+	// The offset of the data in a record
+	private static final int DATA_OFFSET = 24;
+	// The offset of the checksum in a record
+	private static final int CRC_OFFSET = DATA_OFFSET + DATA_SIZE;
+	// The suffix of the names of segment files
+	private static final String SUFFIX = ".journal";
+
+	// The directory of the segment files
+	private final File directory;
+	// The log of the server, to which a failure of the journal is reported
+	private final ServerLog log;
+	// The number of records in a segment
+	private final int recordsPerSegment;
+	// The sequence number of the first record of this run
+	private final long firstSequence;
+	// The sequence number of the next record
+	private final AtomicLong nextSequence;
+	// The segments open, by index from the first segment of this run
+	private final ConcurrentHashMap<Long, Segment> segments = new ConcurrentHashMap<Long, Segment>();
+	// The segment appended to last, checked before the map
+	private volatile Segment current;
+	// The lock guarding the mapping of new segments
+	private final ReentrantLock mapLock = new ReentrantLock();
+	// The buffer in which each thread builds a record, with its checksum
+	private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+	// The number of syncs of segments to disk
+	private final LongAdder syncs = new LongAdder();
+	// The number of records dropped because the journal has failed
+	private final LongAdder dropped = new LongAdder();
+	// The thread forcing the records to disk
+	private final Thread flusher;
+	// Whether a segment could not be mapped, after which records are dropped
+	private volatile boolean failed = false;
+	// Whether the journal has been closed
+	private volatile boolean closed = false;
+	// The number of appends under way
+	private final AtomicInteger inFlight = new AtomicInteger();
+	// The hook closing the journal when the JVM exits
+	private final Thread shutdownHook;
+
+	/**
+	 * Opens the journal in a directory, creating the directory if needed.
+	 * The sequence numbers go on from the last record in the directory, and
+	 * this run starts a new segment.
+	 *
+	 * @param directory
+	 *            the directory of the segment files
+	 * @param segmentSize
+	 *            the size of a segment file in bytes, rounded down to a
+	 *            whole number of records
+	 * @param log
+	 *            the log of the server, to which a failure is reported
+	 * @throws IOException
+	 *             if the directory cannot be created or read
+	 */
+	public EventJournal(File directory, long segmentSize, ServerLog log)
+			throws IOException {
+		if (segmentSize < RECORD_SIZE || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid segment size: "
+					+ segmentSize);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + directory);
+		}
+		this.directory = directory;
+		this.log = log;
+		this.recordsPerSegment = (int) (segmentSize / RECORD_SIZE);
+		this.firstSequence = lastSequence(directory) + 1;
+		this.nextSequence = new AtomicLong(firstSequence);
+		// maps the first segment now rather than on the first event
+		current = segment(0);
+		if (current == null) {
+			throw new IOException("Cannot map a segment in " + directory);
+		}
+
+		flusher = new Thread(this::flushLoop, "EventJournal flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+		// commits what is left when the JVM exits
+		shutdownHook = new Thread(this::close, "EventJournal shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Appends a record to the journal. May be called from any thread, and
+	 * never blocks on the disk.
+	 *
+	 * @param roomID
+	 *            the ID of the room of the event
+	 * @param type
+	 *            the type of the event, such as MOVE
+	 * @param playerID
+	 *            the seat of the player of the event, or -1
+	 * @param data
+	 *            the data of the event, of at most DATA_SIZE bytes, or null
+	 * @return the sequence number of the record, or -1 if it was dropped
+	 */
+	public long append(int roomID, int type, int playerID, byte[] data) {
+		int length = data == null ? 0 : data.length;
+		if (length > DATA_SIZE) {
+			throw new IllegalArgumentException("Too much data: " + length);
+		}
+		// counted before closed is read, so that close() waits for it
+		inFlight.incrementAndGet();
+		try {
+			if (failed || closed) {
+				dropped.increment();
+				return -1;
+			}
+
+			long sequence = nextSequence.getAndIncrement();
+			long offset = sequence - firstSequence;
+			long index = offset / recordsPerSegment;
+			Segment segment = current;
+			if (segment.index != index) {
+				segment = segment(index);
+				if (segment == null) {
+					dropped.increment();
+					return -1;
+				}
+				// a race may leave an older segment here, which only costs a
+				// lookup in the map
+				current = segment;
+			}
+
+			Scratch record = scratch.get();
+			ByteBuffer buffer = record.buffer;
+			buffer.clear();
+			buffer.putLong(sequence);
+			buffer.putLong(System.currentTimeMillis());
+			buffer.putInt(roomID);
+			buffer.put((byte) type);
+			buffer.put((byte) playerID);
+			buffer.put((byte) length);
+			buffer.put((byte) 0);
+			Arrays.fill(record.bytes, DATA_OFFSET, CRC_OFFSET, (byte) 0);
+			if (length > 0) {
+				System.arraycopy(data, 0, record.bytes, DATA_OFFSET, length);
+			}
+			record.crc.reset();
+			record.crc.update(record.bytes, 0, CRC_OFFSET);
+			buffer.putInt(CRC_OFFSET, (int) record.crc.getValue());
+
+			// the sequence number goes last, so that a record half written is
+			// never taken for a written one
+			int position = (int) (offset % recordsPerSegment) * RECORD_SIZE;
+			MappedByteBuffer mapped = segment.buffer;
+			for (int i = RECORD_SIZE - 8; i > 0; i -= 8) {
+				mapped.putLong(position + i, buffer.getLong(i));
+			}
+			mapped.putLong(position, sequence);
+			segment.written.incrementAndGet();
+			return sequence;
+		} finally {
+			inFlight.decrementAndGet();
+		}
+	} // append
+
+	/**
+	 * Returns the segment of the specified index, mapping it if it is not
+	 * open yet.
+	 *
+	 * @param index
+	 *            the index of the segment from the first segment of this run
+	 * @return the segment, or null if it cannot be mapped
+	 */
+	private Segment segment(long index) {
+		Segment segment = segments.get(index);
+		if (segment != null) {
+			return segment;
+		}
+		mapLock.lock();
+		try {
+			segment = segments.get(index);
+			if (segment == null && !failed) {
+				long first = firstSequence + index * recordsPerSegment;
+				File file = new File(directory, String.format("%020d", first)
+						+ SUFFIX);
+				try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+					// the mapping stays valid once the file is closed
+					segment = new Segment(index, raf.getChannel().map(
+							FileChannel.MapMode.READ_WRITE, 0,
+							(long) recordsPerSegment * RECORD_SIZE));
+				} catch (IOException ex) {
+					// records are dropped from now on, and counted in the
+					// metrics of the server
+					log.log("Stops writing the journal to " + directory
+							+ ": " + ex);
+					failed = true;
+					return null;
+				}
+				segments.put(index, segment);
+			}
+			return segment;
+		} finally {
+			mapLock.unlock();
+		}
+	} // segment
+
+	/**
+	 * Forces the segments written since the last pass to disk, every
+	 * COMMIT_INTERVAL milliseconds, until the journal is closed. Runs on the
+	 * flusher thread.
+	 */
+	private void flushLoop() {
+		while (!closed) {
+			try {
+				Thread.sleep(COMMIT_INTERVAL);
+			} catch (InterruptedException ex) {
+				break;
+			}
+			commit();
+		}
+	}
+
+	/**
+	 * Forces the segments written since the last commit to disk, lets go of
+	 * the segments which are full and forced, and maps the next segment once
+	 * the current one is half full.
+	 */
+	private void commit() {
+		Segment last = current;
+		if (last.written.get() >= recordsPerSegment / 2) {
+			segment(last.index + 1);
+		}
+		for (Segment segment : segments.values()) {
+			int written = segment.written.get();
+			if (written == segment.forced) {
+				continue;
+			}
+			segment.buffer.force();
+			segment.forced = written;
+			syncs.increment();
+			if (written == recordsPerSegment) {
+				// the mapping is released once no longer referenced
+				segments.remove(segment.index);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of records appended by this run.
+	 *
+	 * @return the number of records appended
+	 */
+	public long getRecords() {
+		return nextSequence.get() - firstSequence;
+	}
+
+	/**
+	 * Returns the number of times segments have been forced to disk.
+	 *
+	 * @return the number of syncs
+	 */
+	public long getSyncs() {
+		return syncs.sum();
+	}
+
+	/**
+	 * Returns the number of records dropped because a segment could not be
+	 * mapped.
+	 *
+	 * @return the number of records dropped
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Returns the data of a JOIN record: a name in UTF-8, cut to DATA_SIZE
+	 * bytes without splitting a character.
+	 *
+	 * @param name
+	 *            the name of a player, or null
+	 * @return the data
+	 */
+	public static byte[] toData(String name) {
+		byte[] bytes = name == null ? new byte[0] : name
+				.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length <= DATA_SIZE) {
+			return bytes;
+		}
+		int length = DATA_SIZE;
+		// backs up over the continuation bytes of a character cut in two
+		while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+			length--;
+		}
+		return Arrays.copyOf(bytes, length);
+	}
+
+	/**
+	 * Returns the data of a DEAL record: one byte per card of a deck.
+	 *
+	 * @param deck
+	 *            the shuffled deck
+	 * @return the data
+	 */
+	public static byte[] toData(Deck deck) {
+		byte[] cards = new byte[Math.min(deck.size(), DATA_SIZE)];
+		for (int i = 0; i < cards.length; i++) {
+			Card card = deck.getCard(i);
+			cards[i] = (byte) (card.getSuit() * 13 + card.getRank());
+		}
+		return cards;
+	}
+
+	/**
+	 * Returns the data of a MOVE record: the 16-bit mask of the selected card
+	 * indices, or 0xFFFF for a pass.
+	 *
+	 * @param cardIdx
+	 *            the indices of the cards played, or null for a pass
+	 * @return the data
+	 */
+	public static byte[] toData(int[] cardIdx) {
+		int mask = 0;
+		if (cardIdx == null || cardIdx.length == 0) {
+			mask = 0xFFFF;
+		} else {
+			for (int index : cardIdx) {
+				mask |= 1 << index;
+			}
+		}
+		return new byte[] { (byte) (mask >>> 8), (byte) mask };
+	}
+
+	/**
+	 * Stops appending, waits for the appends under way, forces the records
+	 * appended to disk and stops the flusher thread. The shutdown hook of the
+	 * journal is removed, unless the JVM is already exiting.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		flusher.interrupt();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		try {
+			flusher.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		// an append which got past the check of closed is writing its record
+		// into a segment; it never waits on the disk, so this is short
+		while (inFlight.get() != 0 && System.nanoTime() < deadline) {
+			Thread.yield();
+		}
+		commit();
+		if (Thread.currentThread() != shutdownHook) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException ex) {
+				// the JVM is exiting, and the hook is running or done
+			}
+		}
+	}
+
+	/**
+	 * Returns the segment files of a journal, in the order of their records.
+	 *
+	 * @param directory
+	 *            the directory of the journal
+	 * @return the segment files
+	 */
+	private static File[] segmentFiles(File directory) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files == null) {
+			return new File[0];
+		}
+		// the names are zero-padded sequence numbers
+		Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 * Returns the sequence number of the last record written to a journal.
+	 *
+	 * @param directory
+	 *            the directory of the journal
+	 * @return the last sequence number, or 0 if the journal is empty
+	 * @throws IOException
+	 *             if a segment cannot be read
+	 */
+	private static long lastSequence(File directory) throws IOException {
+		long last = 0;
+		File[] files = segmentFiles(directory);
+		// a run may have ended before writing its segment, so the last
+		// segments are read until one has records
+		for (int i = files.length - 1; i >= 0 && last == 0; i--) {
+			Record[] records = readSegment(files[i]);
+			for (Record record : records) {
+				last = Math.max(last, record.sequence);
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Reads the written records of a segment file, in the order of their
+	 * sequence numbers. Slots never written and records failing their
+	 * checksum are skipped.
+	 *
+	 * @param file
+	 *            the segment file
+	 * @return the records
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static Record[] readSegment(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		CRC32 crc = new CRC32();
+		Record[] records = new Record[bytes.length / RECORD_SIZE];
+		int numOfRecords = 0;
+		for (int position = 0; position + RECORD_SIZE <= bytes.length; position += RECORD_SIZE) {
+			long sequence = buffer.getLong(position);
+			if (sequence == 0) {
+				continue;
+			}
+			crc.reset();
+			crc.update(bytes, position, CRC_OFFSET);
+			if ((int) crc.getValue() != buffer.getInt(position + CRC_OFFSET)) {
+				continue;
+			}
+			int length = Math.min(bytes[position + 22] & 0xFF, DATA_SIZE);
+			records[numOfRecords++] = new Record(sequence,
+					buffer.getLong(position + 8), buffer.getInt(position + 16),
+					bytes[position + 20], bytes[position + 21],
+					Arrays.copyOfRange(bytes, position + DATA_OFFSET, position
+							+ DATA_OFFSET + length));
+		}
+		return Arrays.copyOf(records, numOfRecords);
+	}
+
+	/**
+	 * Prints the records of a journal, one line per record, for audits.
+	 *
+	 * @param args
+	 *            the directory of the journal
+	 * @throws IOException
+	 *             if a segment cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java EventJournal <directory>");
+			return;
+		}
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+		for (File file : segmentFiles(new File(args[0]))) {
+			for (Record record : readSegment(file)) {
+				System.out.println(record.sequence + " "
+						+ format.format(new Date(record.time)) + " room "
+						+ record.roomID + " " + record.typeName() + " "
+						+ record.playerID + " " + record.describeData());
+			}
+		}
+	}
+
+	/**
+	 * This inner class is used to represent a segment file mapped into
+	 * memory.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private static class Segment {
+		// The index of the segment from the first segment of its run
+		private final long index;
+		// The mapping of the file
+		private final MappedByteBuffer buffer;
+		// The number of records written to the segment
+		private final AtomicInteger written = new AtomicInteger();
+		// The number of records written when the segment was last forced,
+		// used by the committing thread only
+		private int forced = 0;
+
+		/**
+		 * Creates and returns an instance of the Segment class.
+		 *
+		 * @param index
+		 *            the index of the segment
+		 * @param buffer
+		 *            the mapping of the file
+		 */
+		public Segment(long index, MappedByteBuffer buffer) {
+			this.index = index;
+			this.buffer = buffer;
+		}
+	} // Segment
+
+	/**
+	 * This inner class is used to hold the buffer in which a thread builds
+	 * its records.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private static class Scratch {
+		// The bytes of the record
+		private final byte[] bytes = new byte[RECORD_SIZE];
+		// The buffer over the bytes
+		private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		// The checksum of the record
+		private final CRC32 crc = new CRC32();
+	} // Scratch
+
+	/**
+	 * This inner class is used to represent a record read from a journal.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	public static class Record {
+		// The sequence number of the record
+		private final long sequence;
+		// The time of the event, in milliseconds since the epoch
+		private final long time;
+		// The ID of the room of the event
+		private final int roomID;
+		// The type of the event
+		private final int type;
+		// The seat of the player of the event, or -1
+		private final int playerID;
+		// The data of the event
+		private final byte[] data;
+
+		/**
+		 * Creates and returns an instance of the Record class.
+		 *
+		 * @param sequence
+		 *            the sequence number of the record
+		 * @param time
+		 *            the time of the event
+		 * @param roomID
+		 *            the ID of the room of the event
+		 * @param type
+		 *            the type of the event
+		 * @param playerID
+		 *            the seat of the player of the event, or -1
+		 * @param data
+		 *            the data of the event
+		 */
+		public Record(long sequence, long time, int roomID, int type,
+				int playerID, byte[] data) {
+			this.sequence = sequence;
+			this.time = time;
+			this.roomID = roomID;
+			this.type = type;
+			this.playerID = playerID;
+			this.data = data;
+		}
+
+		/**
+		 * Returns the sequence number of the record.
+		 *
+		 * @return the sequence number
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Returns the time of the event.
+		 *
+		 * @return the time in milliseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Returns the ID of the room of the event.
+		 *
+		 * @return the room ID
+		 */
+		public int getRoomID() {
+			return roomID;
+		}
+
+		/**
+		 * Returns the type of the event.
+		 *
+		 * @return the type, such as MOVE
+		 */
+		public int getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the seat of the player of the event.
+		 *
+		 * @return the seat, or -1
+		 */
+		public int getPlayerID() {
+			return playerID;
+		}
+
+		/**
+		 * Returns the data of the event.
+		 *
+		 * @return a copy of the data
+		 */
+		public byte[] getData() {
+			return data.clone();
+		}
+
+		/**
+		 * Returns the name of the type of the event.
+		 *
+		 * @return the name of the type
+		 */
+		private String typeName() {
+			return type > 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type]
+					: "TYPE" + type;
+		}
+
+		/**
+		 * Returns the data of the event in readable form.
+		 *
+		 * @return the data as text
+		 */
+		private String describeData() {
+			switch (type) {
+			case JOIN:
+				return new String(data, StandardCharsets.UTF_8);
+			case DEAL:
+				StringBuilder deck = new StringBuilder();
+				for (byte card : data) {
+					deck.append(deck.length() == 0 ? "" : " ")
+							.append(new Card(card / 13, card % 13));
+				}
+				return deck.toString();
+			case MOVE:
+				int mask = data.length < 2 ? 0xFFFF
+						: ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+				if (mask == 0xFFFF) {
+					return "pass";
+				}
+				StringBuilder cards = new StringBuilder();
+				for (int i = 0; i < 16; i++) {
+					if ((mask & (1 << i)) != 0) {
+						cards.append(cards.length() == 0 ? "" : " ").append(i);
+					}
+				}
+				return "cards " + cards;
+			case RESULT:
+				return "cards left " + Arrays.toString(data);
+			default:
+				return Arrays.toString(data);
+			}
+		}
+	} // Record
+}
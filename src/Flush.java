@@ -31,44 +31,6 @@ public class Flush extends Hand{
 		return this.getCard(this.size()-1);
 	}
 	
-	/**
-	 * Overrides the beat method in Hand.
-	 * Determines if this Flush hand beats the specified hand.
-	 * 
-	 * @param hand the specified hand
-	 * @see Hand#beats(Hand)
-	 */
-	public boolean beats(Hand hand) {
-		this.sort();
-		hand.sort();
-		if (this.size() != hand.size()) {
-			return false;
-		} 
-		if (this.getType() == hand.getType()) {
-			// A flush with a higher suit beats one with a lower suit
-			if (this.getTopCard().getSuit() > hand.getTopCard().getSuit()) {
-				return true;
-			} else if (this.getTopCard().getSuit() < hand.getTopCard().getSuit()) {
-				return false;
-			} else {
-				if (this.getTopCard().compareTo(hand.getTopCard()) == 1) {
-					return true;
-				} else {
-					return false;
-				}
-			}
-		} else {
-			String handType = hand.getType();
-			// Only other possible hand of 5 that Flush can beat is Straight
-			if (handType == "Straight") {
-				return true;
-			} else {
-				return false;
-			}
-		}
-	}
-	
-	
 	/**
 	 * Determines if this is a valid Flush hand.
 	 * 
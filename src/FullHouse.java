@@ -36,38 +36,6 @@ public class FullHouse extends Hand{
 		return null;
 	}
 	
-	/**
-	 * Overrides the beat method in Hand.
-	 * Determines if this FullHouse hand beats the specified hand.
-	 * 
-	 * @param hand the specified hand
-	 * @return whether this FullHouse hand beats the specified hand
-	 * @see Hand#beats(Hand)
-	 */
-	public boolean beats(Hand hand) {
-		this.sort();
-		hand.sort();
-		if (this.size() != hand.size()) {
-			return false;
-		} 
-		if (this.getType() == hand.getType()) {
-			if (this.getTopCard().compareTo(hand.getTopCard()) == 1) {
-				return true;
-			} else {
-				return false;
-			}
-		} else {
-			String handType = hand.getType();
-			// Only other possible hands of 5 that can beat full house are Quad and StraightFlush
-			if (handType == "Quad" || handType == "StraightFlush") {
-				return false;
-			} else {
-				return true;
-			}
-		}
-	}
-	
-	
 	/**
 	 * Determines if this is a valid FullHouse hand.
 	 * 
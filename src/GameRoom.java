@@ -0,0 +1,828 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is used to model a room of a card game server, that is, one
+ * table with its own seats, ready states and game.
+ * <p>
+ * A room is an actor: every change to its state is posted to its mailbox as
+ * an event, and the events are run one at a time, in the order they were
+ * posted, by an event loop on the room executor of the server. The state of
+ * a room is therefore only ever touched by one thread at a time and needs no
+ * lock, and rooms run in parallel on as many threads as the executor has.
+ * Events never block, since sending a message only queues a frame for the
+ * writer of the connection. The writers are held back until the event has
+ * been handled, so the frames an event sends to a client leave together;
+ * with a write coalescing delay set on the server, the frames of several
+ * events already waiting in the mailbox may leave together too.
+ * <p>
+ * Only the number of taken seats is shared with other threads, so that a
+ * client can be given a seat at once and its messages posted after the
+ * event which seats it.
+ * <p>
+ * A player who has joined gets a session token. If the connection of the
+ * player is lost, the seat is held for the session grace period of the
+ * server, and a client which presents the token in a RESUME message within
+ * that time takes the seat back and gets a snapshot of the room. Only when
+ * the grace period runs out do the other clients get a QUIT message.
+ * <p>
+ * Overrides startGame(), stopGame() and checkMove() to keep the state of the
+ * game of a room on the server, createSnapshot() to include that state in
+ * snapshots, and getResult() to journal the results of games. They are
+ * called on the event loop.
+ *
+ * @author chanyuyan
+ *
+ */
+public class GameRoom {
+	// The maximum number of events run before the event loop yields its
+	// thread to other rooms
+	private static final int MAX_EVENTS_PER_RUN = 64;
+	// The number of chat messages kept for snapshots
+	private static final int RECENT_LOG_SIZE = 16;
+
+	// The server hosting this room
+	private final CardGameServer server;
+	// The ID of this room
+	private final int roomID;
+	// The maximum number of players in this room
+	private final int maxNumOfPlayers;
+	// Array for holding connections to the clients
+	private final ClientConnection[] clientConnections;
+	// Array for holding player names of the clients
+	private final String[] clientNames;
+	// Array for holding ready states of the clients
+	private final boolean[] clientReadyStates;
+	// Array for holding session tokens of the players who have joined
+	private final String[] sessionTokens;
+	// The recent chat messages, oldest first
+	private final ArrayDeque<String> recentLog = new ArrayDeque<String>();
+	// number of current players
+	private int numOfPlayers = 0;
+	// number of seats taken or promised to clients whose seating is posted
+	private final AtomicInteger numOfSeatsTaken = new AtomicInteger();
+	// whether this room is in the list of rooms with free seats of the server
+	private final AtomicBoolean listed = new AtomicBoolean(true);
+	// the events posted to this room and not yet run
+	private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<Runnable>();
+	// whether the event loop of this room is scheduled or running
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	// the executor running the event loops of the rooms
+	private final Executor executor;
+	// the event loop, which runs the events in the mailbox
+	private final Runnable eventLoop = this::runEvents;
+	// the connections corked since the frames were last released
+	private final ArrayList<ClientConnection> corked = new ArrayList<ClientConnection>();
+	// when the first of the frames held back was queued, in ns
+	private long corkedSince;
+	// the journal of the events of the rooms, or null if there is none
+	private final EventJournal journal;
+
+	/**
+	 * Creates and returns an instance of the GameRoom class.
+	 *
+	 * @param server
+	 *            the server hosting this room
+	 * @param roomID
+	 *            the ID of this room
+	 * @param maxNumOfPlayers
+	 *            the maximum number of players in this room
+	 */
+	public GameRoom(CardGameServer server, int roomID, int maxNumOfPlayers) {
+		this.server = server;
+		this.roomID = roomID;
+		this.maxNumOfPlayers = maxNumOfPlayers;
+		this.executor = server.getRoomExecutor();
+		this.journal = server.getJournal();
+		clientConnections = new ClientConnection[maxNumOfPlayers];
+		clientNames = new String[maxNumOfPlayers];
+		clientReadyStates = new boolean[maxNumOfPlayers];
+		sessionTokens = new String[maxNumOfPlayers];
+	}
+
+	/**
+	 * Returns the ID of this room.
+	 *
+	 * @return the ID of this room
+	 */
+	public int getRoomID() {
+		return roomID;
+	}
+
+	/**
+	 * Returns the number of seats taken in this room, counting clients whose
+	 * seating has been posted but not yet run.
+	 *
+	 * @return the number of players in this room
+	 */
+	public int getNumOfPlayers() {
+		return numOfSeatsTaken.get();
+	}
+
+	/**
+	 * Posts an event to the mailbox of this room, and schedules the event
+	 * loop if it is not already scheduled.
+	 *
+	 * @param event
+	 *            the event to be run on the event loop
+	 */
+	private void post(Runnable event) {
+		mailbox.add(event);
+		if (scheduled.compareAndSet(false, true)) {
+			executor.execute(eventLoop);
+		}
+	}
+
+	/**
+	 * Runs the events in the mailbox. After a batch of events the loop is
+	 * scheduled again rather than run on, so that a busy room does not keep
+	 * other rooms waiting for a thread.
+	 */
+	private void runEvents() {
+		long maxWriteDelay = server.getWriteCoalescingDelay() * 1000;
+		for (int i = 0; i < MAX_EVENTS_PER_RUN; i++) {
+			Runnable event = mailbox.poll();
+			if (event == null) {
+				break;
+			}
+			try {
+				event.run();
+			} catch (RuntimeException ex) {
+				println("Error in handling an event", ex);
+			}
+			if (!corked.isEmpty()
+					&& System.nanoTime() - corkedSince >= maxWriteDelay) {
+				releaseWrites();
+			}
+		}
+		// no frame waits for an event which has not arrived yet
+		releaseWrites();
+		if (!mailbox.isEmpty()) {
+			executor.execute(eventLoop);
+			return;
+		}
+		scheduled.set(false);
+		// an event posted after the poll but before the flag was cleared
+		// would otherwise wait for the next one
+		if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+			executor.execute(eventLoop);
+		}
+	}
+
+	/**
+	 * Holds back the writer of a connection which is about to be sent a
+	 * frame, until releaseWrites() is called. Runs on the event loop.
+	 *
+	 * @param connection
+	 *            the connection to a client
+	 */
+	private void holdWrites(ClientConnection connection) {
+		if (corked.isEmpty()) {
+			corkedSince = System.nanoTime();
+		} else if (corked.contains(connection)) {
+			return;
+		}
+		connection.cork();
+		corked.add(connection);
+	}
+
+	/**
+	 * Lets the writers of the corked connections write the frames held back.
+	 * Runs on the event loop.
+	 */
+	private void releaseWrites() {
+		for (int i = 0; i < corked.size(); i++) {
+			corked.get(i).uncork();
+		}
+		corked.clear();
+	}
+
+	/**
+	 * Takes a seat of this room for a new client, and posts the event which
+	 * seats the client and sends it the player list. Messages from the client
+	 * may be posted as soon as this method returns.
+	 *
+	 * @param connection
+	 *            the connection to the client
+	 * @return true if the client gets a seat; false if the room is full
+	 */
+	boolean addConnection(final ClientConnection connection) {
+		int seatsTaken;
+		do {
+			seatsTaken = numOfSeatsTaken.get();
+			if (seatsTaken >= maxNumOfPlayers) {
+				delistIfFull();
+				return false;
+			}
+		} while (!numOfSeatsTaken.compareAndSet(seatsTaken, seatsTaken + 1));
+
+		post(() -> seat(connection));
+		connection.setRoom(this);
+		return true;
+	}
+
+	/**
+	 * Stops offering this room to new clients if all its seats are taken.
+	 *
+	 * @return true if the room is full
+	 */
+	boolean delistIfFull() {
+		if (numOfSeatsTaken.get() < maxNumOfPlayers) {
+			return false;
+		}
+		if (listed.compareAndSet(true, false)) {
+			server.removeOpenRoom(this);
+			// a seat may have been freed before the room was dropped from
+			// the list
+			if (numOfSeatsTaken.get() < maxNumOfPlayers) {
+				relist();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Seats a new client in the first free seat of this room and sends it the
+	 * player list. A seat held for a player who has lost the connection is
+	 * not free. Runs on the event loop.
+	 *
+	 * @param connection
+	 *            the connection to the client
+	 */
+	private void seat(ClientConnection connection) {
+		// locates the first empty seat for the new connection; held seats
+		// still count in numOfSeatsTaken, so one is always left for a client
+		// whose seat was taken in addConnection()
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (clientConnections[i] == null && sessionTokens[i] == null) {
+				clientConnections[i] = connection;
+				clientNames[i] = null;
+				clientReadyStates[i] = false;
+				numOfPlayers++;
+				connection.setSeat(i);
+				println("Establishes a connection with a client at "
+						+ connection.getRemoteSocketAddress());
+
+				// sends the player list to the new player
+				sendMessage(i, new CardGameMessage(
+						CardGameMessage.PLAYER_LIST, i, clientNames));
+				break;
+			}
+		}
+	} // seat
+
+	/**
+	 * Removes a connection from this room (possibly due to connection loss).
+	 * The removal is posted to the event loop, so it happens after the events
+	 * posted before it.
+	 *
+	 * @param connection
+	 *            the client connection being removed from this room
+	 */
+	void removeConnection(final ClientConnection connection) {
+		post(() -> leave(connection));
+	}
+
+	/**
+	 * Frees the seat of a client which has left, or holds it for the session
+	 * grace period if the client has joined. Runs on the event loop.
+	 *
+	 * @param connection
+	 *            the client connection being removed from this room
+	 */
+	private void leave(ClientConnection connection) {
+		final int i = connection.getSeat();
+		if (i < 0 || clientConnections[i] != connection) {
+			// the client has been removed already
+			return;
+		}
+		clientConnections[i] = null;
+		connection.setSeat(-1);
+		final String address = connection.getRemoteSocketAddress().toString();
+
+		long gracePeriod = server.getSessionGracePeriod();
+		if (sessionTokens[i] != null && gracePeriod > 0 && !connection.isBot()) {
+			println(clientNames[i] + " (" + address
+					+ ") loses the connection; holds the seat for "
+					+ gracePeriod + " ms.");
+			broadcastNotice(i, clientNames[i]
+					+ " lost the connection; the seat is held for a while.");
+			final String token = sessionTokens[i];
+			server.schedule(() -> post(() -> expire(i, token, address)),
+					gracePeriod);
+			return;
+		}
+		free(i, address);
+	} // leave
+
+	/**
+	 * Frees a held seat whose session has not been resumed in time. Runs on
+	 * the event loop.
+	 *
+	 * @param playerID
+	 *            the seat held
+	 * @param token
+	 *            the session token of the seat when it was held
+	 * @param address
+	 *            the address of the lost connection
+	 */
+	private void expire(int playerID, String token, String address) {
+		// a resumed session has a new token, and may be held again since
+		if (clientConnections[playerID] == null
+				&& token.equals(sessionTokens[playerID])) {
+			free(playerID, address);
+		}
+	}
+
+	/**
+	 * Frees a seat, stops the game in progress and tells the other clients.
+	 * Runs on the event loop.
+	 *
+	 * @param playerID
+	 *            the seat to be freed
+	 * @param address
+	 *            the address of the client which has left
+	 */
+	private void free(int playerID, String address) {
+		String name = clientNames[playerID];
+
+		if (sessionTokens[playerID] != null) {
+			server.removeSession(sessionTokens[playerID]);
+		}
+		clientConnections[playerID] = null;
+		clientNames[playerID] = null;
+		clientReadyStates[playerID] = false;
+		sessionTokens[playerID] = null;
+		numOfPlayers--;
+
+		println(name + " (" + address + ") leaves the game.");
+		record(EventJournal.QUIT, playerID, null);
+
+		// the game in progress, if any, cannot go on
+		stopGame();
+
+		// broadcasts a message about the leaving of this player
+		broadcastMessage(new CardGameMessage(CardGameMessage.QUIT, playerID,
+				address));
+
+		// offers the free seat to new clients again
+		numOfSeatsTaken.decrementAndGet();
+		relist();
+
+		// bots do not play on their own, and leave once no player is left
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (clientConnections[i] == null ? sessionTokens[i] != null
+					: !clientConnections[i].isBot()) {
+				return;
+			}
+		}
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (clientConnections[i] != null) {
+				server.removeConnection(clientConnections[i]);
+			}
+		}
+	} // free
+
+	/**
+	 * Posts the event which gives a held seat back to a client resuming its
+	 * session. If the session has expired by then, the client is seated as a
+	 * new one. Messages from the client may be posted as soon as this method
+	 * returns.
+	 *
+	 * @param connection
+	 *            the connection to the client
+	 * @param token
+	 *            the session token presented by the client
+	 */
+	void resumeConnection(final ClientConnection connection,
+			final String token) {
+		post(() -> resume(connection, token));
+		connection.setRoom(this);
+	}
+
+	/**
+	 * Gives a held seat back to a client resuming its session, and sends it a
+	 * snapshot of this room and a new session token. A connection still in
+	 * the seat, which the server has not yet found to be lost, is closed.
+	 * Runs on the event loop.
+	 *
+	 * @param connection
+	 *            the connection to the client
+	 * @param token
+	 *            the session token presented by the client
+	 */
+	private void resume(ClientConnection connection, String token) {
+		int playerID = -1;
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			if (token.equals(sessionTokens[i])) {
+				playerID = i;
+				break;
+			}
+		}
+		if (playerID < 0) {
+			println("Cannot resume an expired session of the client at "
+					+ connection.getRemoteSocketAddress());
+			connection.setRoom(null);
+			server.seat(connection);
+			return;
+		}
+
+		ClientConnection old = clientConnections[playerID];
+		if (old != null) {
+			old.setSeat(-1);
+			old.close();
+		}
+		clientConnections[playerID] = connection;
+		connection.setSeat(playerID);
+		server.removeSession(token);
+		sessionTokens[playerID] = server.newSession(this);
+		println(clientNames[playerID] + " ("
+				+ connection.getRemoteSocketAddress()
+				+ ") resumes the session.");
+
+		sendMessage(playerID, new CardGameMessage(CardGameMessage.SNAPSHOT,
+				playerID, createSnapshot(clientNames.clone(),
+						recentLog.toArray(new String[0]))));
+		sendMessage(playerID, new CardGameMessage(CardGameMessage.SESSION,
+				playerID, sessionTokens[playerID]));
+		broadcastNotice(playerID, clientNames[playerID] + " is back.");
+	} // resume
+
+	/**
+	 * Puts this room back in the list of rooms with free seats of the server,
+	 * unless it is there already.
+	 */
+	private void relist() {
+		if (listed.compareAndSet(false, true)) {
+			server.addOpenRoom(this);
+		}
+	}
+
+	/**
+	 * Posts the incoming message from the specified client to the mailbox of
+	 * this room. The time from now until the message has been handled is
+	 * recorded in the metrics of the server.
+	 *
+	 * @param connection
+	 *            the connection to the specified client
+	 * @param message
+	 *            the message received from the specified client
+	 */
+	void parseMessage(final ClientConnection connection,
+			final CardGameMessage message) {
+		final long receivedAt = System.nanoTime();
+		post(() -> {
+			handleMessage(connection, message);
+			server.getMetrics().recordParse(System.nanoTime() - receivedAt);
+		});
+	}
+
+	/**
+	 * Handles the incoming message from the specified client. Runs on the
+	 * event loop.
+	 *
+	 * @param connection
+	 *            the connection to the specified client
+	 * @param message
+	 *            the message received from the specified client
+	 */
+	private void handleMessage(ClientConnection connection,
+			CardGameMessage message) {
+		// updates the playerID
+		int playerID = connection.getSeat();
+		if (playerID < 0 || clientConnections[playerID] != connection) {
+			// the client has left the room
+			return;
+		}
+		message.setPlayerID(playerID);
+
+		// parses the message based on it type
+		switch (message.getType()) {
+		case CardGameMessage.JOIN:
+			// adds a player to the game
+			addPlayer(playerID, (String) message.getData());
+			break;
+		case CardGameMessage.READY:
+			// marks the specified player as ready for a new game
+			setReadyState(playerID);
+			break;
+		case CardGameMessage.MOVE:
+			Object cardIdx = message.getData();
+			if ((cardIdx != null && !(cardIdx instanceof int[]))
+					|| !checkMove(playerID, (int[]) cardIdx)) {
+				println("Rejects an illegal \"MOVE\" message from "
+						+ connection.getRemoteSocketAddress());
+				// replies to the sender only
+				sendMessage(playerID, new CardGameMessage(
+						CardGameMessage.ILLEGAL, playerID, message.getData()));
+				break;
+			}
+			println("Broadcasts a \"MOVE\" message from "
+					+ connection.getRemoteSocketAddress());
+			record(EventJournal.MOVE, playerID,
+					EventJournal.toData((int[]) cardIdx));
+			// broadcast the MOVE message to all clients
+			broadcastMessage(message);
+			if (journal != null) {
+				byte[] result = getResult();
+				if (result != null) {
+					record(EventJournal.RESULT, playerID, result);
+				}
+			}
+			break;
+		case CardGameMessage.MSG:
+			println("Broadcasts a user message from "
+					+ connection.getRemoteSocketAddress());
+			// broadcast the user message to all clients
+			broadcastUserMessage(playerID, (String) message.getData());
+			break;
+		default:
+			println("Wrong message type: " + message.getType());
+			// invalid message
+			break;
+		}
+	} // handleMessage
+
+	/**
+	 * Broadcasts the specified message to all clients in this room.
+	 *
+	 * @param message
+	 *            the specified message to be broadcast to all clients
+	 */
+	private void broadcastMessage(CardGameMessage message) {
+		long startTime = System.nanoTime();
+		// encodes the message once for each kind of codec in use, and sends
+		// the same immutable frame to every client using that codec
+		Class<?>[] codecTypes = new Class<?>[maxNumOfPlayers];
+		byte[][] frames = new byte[maxNumOfPlayers][];
+		for (int i = 0; i < maxNumOfPlayers; i++) {
+			ClientConnection connection = clientConnections[i];
+			if (connection == null) {
+				continue;
+			}
+			MessageCodec codec = connection.getCodec();
+			byte[] frame = null;
+			for (int j = 0; j < maxNumOfPlayers && codecTypes[j] != null; j++) {
+				if (codecTypes[j] == codec.getClass()) {
+					frame = frames[j];
+					break;
+				}
+			}
+			try {
+				if (frame == null) {
+					frame = server.encode(codec, message);
+					for (int j = 0; j < maxNumOfPlayers; j++) {
+						if (codecTypes[j] == null) {
+							codecTypes[j] = codec.getClass();
+							frames[j] = frame;
+							break;
+						}
+					}
+				}
+				// chat messages may be dropped for a client that falls behind
+				holdWrites(connection);
+				connection.sendFrame(frame,
+						message.getType() == CardGameMessage.MSG);
+			} catch (Exception ex) {
+				println("Error in broadcasting a message to the client at "
+						+ connection.getRemoteSocketAddress(), ex);
+			}
+		}
+		server.getMetrics().recordBroadcast(System.nanoTime() - startTime);
+	} // broadcastMessage
+
+	/**
+	 * Sends the specified message to a single client.
+	 *
+	 * @param playerID
+	 *            the playerID of the client
+	 * @param message
+	 *            the message to be sent
+	 */
+	private void sendMessage(int playerID, CardGameMessage message) {
+		ClientConnection connection = clientConnections[playerID];
+		if (connection != null) {
+			try {
+				holdWrites(connection);
+				connection.sendFrame(server.encode(connection.getCodec(), message));
+			} catch (Exception ex) {
+				println("Error in sending a message to the client at "
+						+ connection.getRemoteSocketAddress(), ex);
+			}
+		}
+	} // sendMessage
+
+	/**
+	 * adds a player to the game.
+	 *
+	 * @param playerID
+	 *            the seat of the player who is joining the game
+	 * @param name
+	 *            the name of the player who is joining the game
+	 */
+	private void addPlayer(int playerID, String name) {
+		// updates the name of the new player
+		clientNames[playerID] = name;
+
+		println(name + " (" + clientConnections[playerID].getRemoteSocketAddress()
+				+ ") joins the game.");
+		record(EventJournal.JOIN, playerID, EventJournal.toData(name));
+
+		// broadcasts a message about this player joining the game
+		broadcastMessage(new CardGameMessage(CardGameMessage.JOIN, playerID,
+				name));
+
+		// gives the player a session token, with which it can take back its
+		// seat after losing its connection
+		if (sessionTokens[playerID] != null) {
+			server.removeSession(sessionTokens[playerID]);
+		}
+		sessionTokens[playerID] = server.newSession(this);
+		sendMessage(playerID, new CardGameMessage(CardGameMessage.SESSION,
+				playerID, sessionTokens[playerID]));
+	} // addPlayer
+
+	/**
+	 * Marks the specified player as ready for a new game, and starts a new
+	 * game once all the seats are taken by ready players.
+	 *
+	 * @param playerID
+	 *            the seat of the player who becomes ready for a new game
+	 */
+	private void setReadyState(int playerID) {
+		clientReadyStates[playerID] = true;
+		println(clientNames[playerID] + " ("
+				+ clientConnections[playerID].getRemoteSocketAddress()
+				+ " ) is ready for the next game.");
+		broadcastMessage(new CardGameMessage(CardGameMessage.READY, playerID,
+				null));
+
+		// checks if all players are ready
+		if (numOfPlayers == maxNumOfPlayers) {
+			for (int i = 0; i < maxNumOfPlayers; i++) {
+				if (clientReadyStates[i] == false) {
+					// returns if any of the players is not ready
+					return;
+				}
+			}
+
+			// resets the ready states of all the players for the next game
+			for (int i = 0; i < maxNumOfPlayers; i++) {
+				clientReadyStates[i] = false;
+			}
+
+			// creates a new deck, shuffles the deck, and starts a new game
+			Deck deck = server.createDeck();
+			deck.shuffle();
+			println("All players are ready. Game starts.");
+			startGame(deck);
+			record(EventJournal.DEAL, -1, EventJournal.toData(deck));
+			broadcastMessage(new CardGameMessage(CardGameMessage.START, -1,
+					deck));
+		}
+	} // setReadyState
+
+	/**
+	 * Broadcasts a chat message from the specified player to all clients in
+	 * this room.
+	 *
+	 * @param playerID
+	 *            the seat of the player who sends the message
+	 * @param msg
+	 *            the chat message
+	 */
+	private void broadcastUserMessage(int playerID, String msg) {
+		String longMsg = clientNames[playerID] + " ("
+				+ clientConnections[playerID].getRemoteSocketAddress() + "): "
+				+ msg;
+		broadcastNotice(playerID, longMsg);
+	}
+
+	/**
+	 * Broadcasts a chat message to all clients in this room, and keeps it in
+	 * the recent log for snapshots.
+	 *
+	 * @param playerID
+	 *            the seat of the player the message is about
+	 * @param msg
+	 *            the chat message
+	 */
+	private void broadcastNotice(int playerID, String msg) {
+		if (recentLog.size() == RECENT_LOG_SIZE) {
+			recentLog.poll();
+		}
+		recentLog.add(msg);
+		broadcastMessage(new CardGameMessage(CardGameMessage.MSG, playerID,
+				msg));
+	}
+
+	/**
+	 * Called when a new game starts with the specified deck, before the START
+	 * message is broadcast. Overrides this method to keep the state of the
+	 * game on the server.
+	 *
+	 * @param deck
+	 *            the shuffled deck of the new game
+	 */
+	protected void startGame(Deck deck) {
+	}
+
+	/**
+	 * Called when a player leaves and the game in progress, if any, is
+	 * abandoned.
+	 */
+	protected void stopGame() {
+	}
+
+	/**
+	 * Checks a move made by a player before it is broadcast, and applies it to
+	 * the state of the game kept on the server. Only accepted moves are
+	 * broadcast; the sender of a rejected move gets an ILLEGAL message. This
+	 * implementation accepts every move. Overrides this method to validate
+	 * moves on the server.
+	 *
+	 * @param playerID
+	 *            the playerID of the player who makes the move
+	 * @param cardIdx
+	 *            the list of the indices of the cards selected by the player
+	 * @return true if the move is accepted; false otherwise
+	 */
+	protected boolean checkMove(int playerID, int[] cardIdx) {
+		return true;
+	}
+
+	/**
+	 * Called after an accepted move has been broadcast, to find out whether
+	 * it has ended the game, when the events of the rooms are journaled. This
+	 * implementation holds no game. Overrides this method to journal the
+	 * results of games.
+	 * 
+	 * @return the data of the RESULT record of the game, or null if the game
+	 *         goes on
+	 * @see EventJournal#RESULT
+	 */
+	protected byte[] getResult() {
+		return null;
+	}
+
+	/**
+	 * Called when a client resumes its session, to take a snapshot of this
+	 * room. This implementation holds no game. Overrides this method to
+	 * include the state of the game in progress.
+	 *
+	 * @param names
+	 *            the names of the players, null for a free seat
+	 * @param log
+	 *            the recent chat messages of this room, oldest first
+	 * @return the snapshot sent to the client
+	 */
+	protected GameSnapshot createSnapshot(String[] names, String[] log) {
+		return new GameSnapshot(names, log);
+	}
+
+	/**
+	 * Appends an event of this room to the journal of the server, if there is
+	 * one.
+	 * 
+	 * @param type
+	 *            the type of the event
+	 * @param playerID
+	 *            the seat of the player of the event, or -1
+	 * @param data
+	 *            the data of the event, or null
+	 */
+	private void record(int type, int playerID, byte[] data) {
+		if (journal != null) {
+			journal.append(roomID, type, playerID, data);
+		}
+	}
+
+	/**
+	 * Prints the specified message to the console of the server, tagged with
+	 * this room.
+	 *
+	 * @param msg
+	 *            the message to be printed
+	 */
+	private void println(String msg) {
+		server.println("[Room " + roomID + "] " + msg);
+	}
+
+	/**
+	 * Prints the specified message and the stack trace of an exception to the
+	 * console of the server, tagged with this room.
+	 *
+	 * @param msg
+	 *            the message to be printed
+	 * @param ex
+	 *            the exception
+	 */
+	private void println(String msg, Throwable ex) {
+		server.println("[Room " + roomID + "] " + msg, ex);
+	}
+}
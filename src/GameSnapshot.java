@@ -0,0 +1,162 @@
+import java.io.Serializable;
+
+/**
+ * This class is used to represent the state of a room sent to a client which
+ * resumes its session after losing its connection: the names of the players,
+ * the recent chat of the room and, if a game is in progress, the cards in the
+ * hand of every player, the hand on top of the table, the current turn and
+ * the number of passes since that hand was played.
+ * <p>
+ * The hands of all players are included, not only the hand of the client,
+ * since a client applies every later MOVE message to the hand of the player
+ * who makes it, and the START message has given every client the whole deck
+ * anyway. Instances are immutable.
+ *
+ * @author chanyuyan
+ *
+ */
+public class GameSnapshot implements Serializable {
+	private static final long serialVersionUID = 5120982739617032874L;
+
+	// The names of the players, null for a free seat
+	private final String[] names;
+	// The recent chat messages of the room, oldest first
+	private final String[] log;
+	// The cards in the hand of each player, or null if no game is in progress
+	private final CardSet[] hands;
+	// The player who played the hand on top of the table, or -1 if none
+	private final int lastPlayer;
+	// The cards of the hand on top of the table
+	private final CardSet lastHand;
+	// The index of the player for the current turn
+	private final int currentIdx;
+	// The number of passes since the last hand was played
+	private final int numOfPasses;
+
+	/**
+	 * Creates a snapshot of a room with no game in progress.
+	 *
+	 * @param names
+	 *            the names of the players, null for a free seat
+	 * @param log
+	 *            the recent chat messages of the room, oldest first
+	 */
+	public GameSnapshot(String[] names, String[] log) {
+		this(names, log, null, -1, CardSet.EMPTY, -1, 0);
+	}
+
+	/**
+	 * Creates a snapshot of a room with a game in progress.
+	 *
+	 * @param names
+	 *            the names of the players, null for a free seat
+	 * @param log
+	 *            the recent chat messages of the room, oldest first
+	 * @param hands
+	 *            the cards in the hand of each player
+	 * @param lastPlayer
+	 *            the player who played the hand on top of the table, or -1 if
+	 *            no hand has been played
+	 * @param lastHand
+	 *            the cards of the hand on top of the table
+	 * @param currentIdx
+	 *            the index of the player for the current turn
+	 * @param numOfPasses
+	 *            the number of passes since the last hand was played
+	 */
+	public GameSnapshot(String[] names, String[] log, CardSet[] hands,
+			int lastPlayer, CardSet lastHand, int currentIdx, int numOfPasses) {
+		this.names = names.clone();
+		this.log = log.clone();
+		this.hands = hands == null ? null : hands.clone();
+		this.lastPlayer = lastPlayer;
+		this.lastHand = lastHand;
+		this.currentIdx = currentIdx;
+		this.numOfPasses = numOfPasses;
+	}
+
+	/**
+	 * Returns the names of the players.
+	 *
+	 * @return the names of the players, null for a free seat
+	 */
+	public String[] getNames() {
+		return names.clone();
+	}
+
+	/**
+	 * Returns the recent chat messages of the room.
+	 *
+	 * @return the recent chat messages, oldest first
+	 */
+	public String[] getLog() {
+		return log.clone();
+	}
+
+	/**
+	 * Returns true if a game is in progress in the room.
+	 *
+	 * @return true if the snapshot holds the state of a game
+	 */
+	public boolean isGameInProgress() {
+		return hands != null;
+	}
+
+	/**
+	 * Returns the number of hands in the snapshot, which is the number of
+	 * players of the game.
+	 *
+	 * @return the number of hands, or 0 if no game is in progress
+	 */
+	public int getNumOfHands() {
+		return hands == null ? 0 : hands.length;
+	}
+
+	/**
+	 * Returns the cards in the hand of the specified player.
+	 *
+	 * @param playerID
+	 *            the playerID of the player
+	 * @return the cards of the player
+	 */
+	public CardSet getHand(int playerID) {
+		return hands[playerID];
+	}
+
+	/**
+	 * Returns the player who played the hand on top of the table.
+	 *
+	 * @return the playerID of the player, or -1 if no hand has been played
+	 */
+	public int getLastPlayer() {
+		return lastPlayer;
+	}
+
+	/**
+	 * Returns the cards of the hand on top of the table.
+	 *
+	 * @return the cards of the last hand, empty if no hand has been played
+	 */
+	public CardSet getLastHand() {
+		return lastHand;
+	}
+
+	/**
+	 * Returns the index of the player for the current turn.
+	 *
+	 * @return the index of the current player, or -1 if no game is in
+	 *         progress
+	 */
+	public int getCurrentIdx() {
+		return currentIdx;
+	}
+
+	/**
+	 * Returns the number of passes since the last hand was played.
+	 *
+	 * @return the number of passes
+	 */
+	public int getNumOfPasses() {
+		return numOfPasses;
+	}
+}
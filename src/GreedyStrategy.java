@@ -0,0 +1,46 @@
+import java.util.Random;
+
+/**
+ * This class implements a strategy that sheds as many cards as it can with
+ * the weakest such hand, and passes only when it has no other legal move.
+ * 
+ * @author chanyuyan
+ *
+ */
+public class GreedyStrategy implements BigTwoStrategy {
+
+	/**
+	 * Chooses the legal hand with the most cards and, among those, the
+	 * smallest strength key.
+	 * 
+	 * @see BigTwoStrategy#chooseMove(BigTwoEngine, int, MoveList, Random)
+	 */
+	@Override
+	public int chooseMove(BigTwoEngine engine, int playerID, MoveList moves,
+			Random random) {
+		int best = -1;
+		int bestSize = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			if (moves.isPass(i)) {
+				continue;
+			}
+			int size = Long.bitCount(moves.getCards(i));
+			if (best < 0 || size > bestSize
+					|| (size == bestSize && moves.getKey(i) < moves.getKey(best))) {
+				best = i;
+				bestSize = size;
+			}
+		}
+		// Only a pass is left
+		return best < 0 ? 0 : best;
+	}
+
+	/**
+	 * Returns the name of this strategy.
+	 * 
+	 * @return the name of this strategy
+	 */
+	public String toString() {
+		return "Greedy";
+	}
+}
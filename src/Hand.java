@@ -21,12 +21,19 @@ public abstract class Hand extends CardList{
 		for (int i = 0; i < cards.size(); ++i) {
 			this.addCard(cards.getCard(i));
 		}		
-		
+		this.cardSet = CardSet.of(cards);
+		this.key = HandEvaluator.evaluate(this.cardSet.bits());
 	}
 	
 	// The player who plays this hand
 	private CardGamePlayer player;
 	
+	// The cards of this hand as a set, fixed when the hand is built
+	private CardSet cardSet;
+	
+	// The strength key of this hand, 0 if the cards do not form a valid hand
+	private int key;
+	
 	
 	/**
 	 * Retrieves the player of this hand.
@@ -37,6 +44,27 @@ public abstract class Hand extends CardList{
 		return this.player;
 	}
 	
+	/**
+	 * Retrieves the cards of this hand as a set.
+	 * 
+	 * @return the set of cards of this hand
+	 */
+	public CardSet getCardSet() {
+		return this.cardSet;
+	}
+	
+	/**
+	 * Retrieves the strength key of this hand.
+	 * The key encodes the category of the hand and its top card, so that
+	 * a hand beats another hand of the same size exactly when its key is larger.
+	 * 
+	 * @return the strength key of this hand, or 0 if this is not a valid hand
+	 * @see HandEvaluator#evaluate(long)
+	 */
+	public int getKey() {
+		return this.key;
+	}
+	
 	/**
 	 * Retrieves the top card of this hand.
 	 * 
@@ -49,46 +77,13 @@ public abstract class Hand extends CardList{
 	
 	/**
 	 * Checks if this hand beats a specified hand.
-	 * To be overridden in the Hand subclasses for hands of length 5.
+	 * A hand can only beat a hand of the same size with a smaller strength key.
 	 * 
 	 * @param hand the specified hand
 	 * @return whether this hand beats the specified hand
 	 */
 	public boolean beats(Hand hand) {
-		if (this.size() != hand.size()) {
-			return false;
-		}
-		int compareResult = this.getTopCard().compareTo(hand.getTopCard());
-		if (this.size() == 1) {
-			if (compareResult == 1) {
-				return true;
-			} else {
-				return false;
-			}
-		} else if (this.size() == 2) {
-			if (compareResult == 1) {
-				return true;
-			} else {
-				return false;
-			}
-		} else if (this.size() == 3) {
-			if (compareResult == 1) {
-				return true;
-			} else {
-				return false;
-			}
-		} 
-		else if (this.size() == 4) {
-			return false;
-		} else if (this.size() == 5) {
-			if (compareResult == 1) {
-				return true;
-			} else {
-				return false;
-			}
-		}
-		
-		return false;
+		return this.size() == hand.size() && this.key > hand.key;
 	}
 	
 	/**
@@ -0,0 +1,207 @@
+import java.util.Arrays;
+
+/**
+ * This class classifies a set of cards as a Big Two hand without building
+ * any Hand objects.
+ * <p>
+ * A hand is described by a single int key. The upper bits hold the category
+ * of the hand and the lowest 6 bits hold a tie-breaker, normally the CardSet
+ * bit index of the top card. Valid keys are always positive, and a key of 0
+ * means the cards do not form a valid hand. Categories are numbered in
+ * ascending strength, so two keys for hands of the same size compare the same
+ * way as the hands do.
+ * <p>
+ * Five-card hands are classified from their rank and suit signatures: the
+ * 13-bit mask of ranks present and the 4-bit mask of suits present. Straights
+ * are looked up in a table indexed by the rank mask.
+ *
+ * @author chanyuyan
+ *
+ */
+public final class HandEvaluator {
+
+	/**
+	 * The category of a Single hand.
+	 */
+	public static final int SINGLE = 1;
+	/**
+	 * The category of a Pair hand.
+	 */
+	public static final int PAIR = 2;
+	/**
+	 * The category of a Triple hand.
+	 */
+	public static final int TRIPLE = 3;
+	/**
+	 * The category of a Straight hand.
+	 */
+	public static final int STRAIGHT = 4;
+	/**
+	 * The category of a Flush hand.
+	 */
+	public static final int FLUSH = 5;
+	/**
+	 * The category of a FullHouse hand.
+	 */
+	public static final int FULL_HOUSE = 6;
+	/**
+	 * The category of a Quad hand.
+	 */
+	public static final int QUAD = 7;
+	/**
+	 * The category of a StraightFlush hand.
+	 */
+	public static final int STRAIGHT_FLUSH = 8;
+
+	// Number of bits used by the tie-breaker of a key
+	private static final int TIE_BITS = 6;
+
+	// Names of the categories, as returned by Hand.getType()
+	private static final String[] TYPES = { null, "Single", "Pair", "Triple",
+			"Straight", "Flush", "FullHouse", "Quad", "StraightFlush" };
+
+	// Top Big Two rank of the straight formed by a 13-bit rank mask, or -1
+	private static final byte[] STRAIGHT_TOP = new byte[1 << 13];
+
+	static {
+		Arrays.fill(STRAIGHT_TOP, (byte) -1);
+		// Straights run from 3-4-5-6-7 up to J-Q-K-A-2 and do not wrap around
+		for (int low = 0; low + 4 < 13; low++) {
+			STRAIGHT_TOP[0x1F << low] = (byte) (low + 4);
+		}
+	}
+
+	/**
+	 * This class is not meant to be instantiated.
+	 */
+	private HandEvaluator() {
+	}
+
+	/**
+	 * Classifies the specified set of cards.
+	 *
+	 * @param cards the bits of a CardSet
+	 * @return the key of the hand formed by the cards, or 0 if the cards do
+	 *         not form a valid hand
+	 */
+	public static int evaluate(long cards) {
+		int top = 63 - Long.numberOfLeadingZeros(cards);
+		switch (Long.bitCount(cards)) {
+		case 1:
+			return key(SINGLE, top);
+		case 2:
+			if (Long.numberOfTrailingZeros(cards) >>> 2 == top >>> 2) {
+				return key(PAIR, top);
+			}
+			return 0;
+		case 3:
+			if (Long.numberOfTrailingZeros(cards) >>> 2 == top >>> 2) {
+				return key(TRIPLE, top);
+			}
+			return 0;
+		case 5:
+			return evaluateFive(cards, top);
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Classifies a set of exactly five cards.
+	 *
+	 * @param cards the bits of a CardSet holding five cards
+	 * @param top the bit index of the highest card
+	 * @return the key of the hand, or 0 if the cards do not form a valid hand
+	 */
+	private static int evaluateFive(long cards, int top) {
+		int rankMask = 0;
+		int suitMask = 0;
+		for (long rest = cards; rest != 0L; rest &= rest - 1) {
+			int index = Long.numberOfTrailingZeros(rest);
+			rankMask |= 1 << (index >>> 2);
+			suitMask |= 1 << (index & 3);
+		}
+
+		int distinctRanks = Integer.bitCount(rankMask);
+		if (distinctRanks == 5) {
+			boolean straight = STRAIGHT_TOP[rankMask] >= 0;
+			boolean flush = (suitMask & (suitMask - 1)) == 0;
+			if (straight && flush) {
+				return key(STRAIGHT_FLUSH, top);
+			} else if (flush) {
+				// A flush with a higher suit beats one with a lower suit
+				return key(FLUSH, (top & 3) * 13 + (top >>> 2));
+			} else if (straight) {
+				return key(STRAIGHT, top);
+			}
+		} else if (distinctRanks == 2) {
+			int low = Integer.numberOfTrailingZeros(rankMask);
+			int high = 31 - Integer.numberOfLeadingZeros(rankMask);
+			switch (Long.bitCount(rankGroup(cards, low))) {
+			case 4:
+				return key(QUAD, topOfRank(cards, low));
+			case 1:
+				return key(QUAD, topOfRank(cards, high));
+			case 3:
+				return key(FULL_HOUSE, topOfRank(cards, low));
+			case 2:
+				return key(FULL_HOUSE, topOfRank(cards, high));
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the 4-bit group of cards of the specified Big Two rank.
+	 *
+	 * @param cards the bits of a CardSet
+	 * @param rank a Big Two rank between 0 and 12
+	 * @return the bits of the cards of that rank, one bit per suit
+	 */
+	private static long rankGroup(long cards, int rank) {
+		return (cards >>> (rank * 4)) & 0xF;
+	}
+
+	/**
+	 * Returns the bit index of the highest card of the specified Big Two rank.
+	 *
+	 * @param cards the bits of a CardSet holding at least one card of the rank
+	 * @param rank a Big Two rank between 0 and 12
+	 * @return the bit index of the highest card of that rank
+	 */
+	private static int topOfRank(long cards, int rank) {
+		return rank * 4 + 63 - Long.numberOfLeadingZeros(rankGroup(cards, rank));
+	}
+
+	/**
+	 * Builds a key from a category and a tie-breaker.
+	 *
+	 * @param category the category of the hand
+	 * @param tie the tie-breaker, between 0 and 63
+	 * @return the key of the hand
+	 */
+	private static int key(int category, int tie) {
+		return (category << TIE_BITS) | tie;
+	}
+
+	/**
+	 * Returns the category encoded in the specified key.
+	 *
+	 * @param key the key of a hand
+	 * @return the category of the hand, or 0 for an invalid hand
+	 */
+	public static int category(int key) {
+		return key >>> TIE_BITS;
+	}
+
+	/**
+	 * Returns the name of the category encoded in the specified key, as
+	 * returned by Hand.getType().
+	 *
+	 * @param key the key of a hand
+	 * @return the name of the hand type, or null for an invalid hand
+	 */
+	public static String typeOf(int key) {
+		return TYPES[category(key)];
+	}
+}
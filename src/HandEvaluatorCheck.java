@@ -0,0 +1,149 @@
+/**
+ * This class checks HandEvaluator against the isValid() chain that
+ * composeHand used before the evaluator replaced it.
+ * <p>
+ * Every set of 1, 2, 3, 4 and 5 cards out of the 52 is classified twice: once
+ * by building the candidate Hand subclasses and asking each whether it is
+ * valid, in the order the old composeHand tried them, and once by
+ * HandEvaluator.evaluate(). The two must agree on the type of hand, and
+ * composeHand must build a hand of that type.
+ *
+ * @author chanyuyan
+ *
+ */
+public class HandEvaluatorCheck {
+	// The number of mismatches printed before the rest are only counted
+	private static final int MAX_REPORTED = 10;
+
+	// The player used for every hand built by the check
+	private final CardGamePlayer player = new CardGamePlayer();
+	// Bit indices of the current combination
+	private final int[] index = new int[5];
+
+	// The number of combinations checked and of those that disagreed
+	private long numOfChecked = 0;
+	private long numOfMismatches = 0;
+
+	/**
+	 * Returns the type of hand formed by the specified cards, the way the old
+	 * composeHand found it: by building each candidate hand and keeping the
+	 * first one that is valid.
+	 *
+	 * @param cards
+	 *            the list of cards to be classified
+	 * @return the type of the hand, or null if the cards do not form one
+	 */
+	private String legacyType(CardList cards) {
+		Hand[] candidates;
+		switch (cards.size()) {
+		case 1:
+			candidates = new Hand[] { new Single(player, cards) };
+			break;
+		case 2:
+			candidates = new Hand[] { new Pair(player, cards) };
+			break;
+		case 3:
+			candidates = new Hand[] { new Triple(player, cards) };
+			break;
+		case 5:
+			candidates = new Hand[] { new StraightFlush(player, cards),
+					new Quad(player, cards), new FullHouse(player, cards),
+					new Flush(player, cards), new Straight(player, cards) };
+			break;
+		default:
+			return null;
+		}
+		for (Hand candidate : candidates) {
+			if (candidate.isValid()) {
+				return candidate.getType();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks one combination of cards.
+	 *
+	 * @param size
+	 *            the number of cards in the combination
+	 */
+	private void check(int size) {
+		CardList cards = new CardList();
+		long bits = 0L;
+		for (int i = 0; i < size; i++) {
+			cards.addCard(CardSet.cardAt(index[i]));
+			bits |= 1L << index[i];
+		}
+
+		String expected = legacyType(cards);
+		String actual = HandEvaluator.typeOf(HandEvaluator.evaluate(bits));
+		Hand hand = BigTwoClient.composeHand(player, cards);
+		String composed = hand == null ? null : hand.getType();
+
+		numOfChecked++;
+		if (!equal(expected, actual) || !equal(expected, composed)) {
+			if (numOfMismatches < MAX_REPORTED) {
+				System.out.println(CardSet.valueOf(bits) + ": isValid " + expected
+						+ ", evaluate " + actual + ", composeHand " + composed);
+			}
+			numOfMismatches++;
+		}
+	}
+
+	/**
+	 * Checks every combination of the specified number of cards, starting
+	 * from the specified position of the combination.
+	 *
+	 * @param size
+	 *            the number of cards in each combination
+	 * @param position
+	 *            the position of the combination to be filled next
+	 * @param from
+	 *            the smallest bit index that may fill the position
+	 */
+	private void checkAll(int size, int position, int from) {
+		if (position == size) {
+			check(size);
+			return;
+		}
+		for (int i = from; i <= 52 - size + position; i++) {
+			index[position] = i;
+			checkAll(size, position + 1, i + 1);
+		}
+	}
+
+	/**
+	 * Compares two hand types, either of which may be null.
+	 *
+	 * @param a
+	 *            the first type
+	 * @param b
+	 *            the second type
+	 * @return whether the two types are the same
+	 */
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * main() method for running the check. Exits with status 1 if
+	 * HandEvaluator disagrees with the isValid() chain on any combination.
+	 *
+	 * @param args
+	 *            not used
+	 */
+	public static void main(String[] args) {
+		HandEvaluatorCheck check = new HandEvaluatorCheck();
+		long startTime = System.nanoTime();
+		for (int size = 1; size <= 5; size++) {
+			check.checkAll(size, 0, 0);
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+
+		System.out.printf("%d combinations, %d mismatches, %.2f s%n",
+				check.numOfChecked, check.numOfMismatches, seconds);
+		if (check.numOfMismatches != 0) {
+			System.exit(1);
+		}
+	}
+}
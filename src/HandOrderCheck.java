@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class checks Hand.beats(), which compares strength keys, against the
+ * beats() methods the Hand subclasses had before the keys replaced them.
+ * <p>
+ * Every ordered pair of singles, pairs and triples is compared. Five-card
+ * hands are too many to pair exhaustively, so random pairs are drawn from
+ * every valid five-card hand, half of them from the same category so that
+ * ties within a type are well covered.
+ *
+ * @author chanyuyan
+ *
+ */
+public class HandOrderCheck {
+	// The number of mismatches printed before the rest are only counted
+	private static final int MAX_REPORTED = 10;
+
+	// The player used for every hand built by the check
+	private final CardGamePlayer player = new CardGamePlayer();
+
+	// The number of pairs checked and of those that disagreed
+	private long numOfChecked = 0;
+	private long numOfMismatches = 0;
+
+	/**
+	 * Determines whether one hand beats another the way the old beats()
+	 * methods did: by comparing top cards within a type, with the five-card
+	 * types ranked Straight, Flush, FullHouse, Quad, StraightFlush.
+	 *
+	 * @param hand
+	 *            the hand being played
+	 * @param other
+	 *            the hand on the table
+	 * @return whether the hand beats the other hand
+	 */
+	private static boolean legacyBeats(Hand hand, Hand other) {
+		hand.sort();
+		other.sort();
+		if (hand.size() != other.size()) {
+			return false;
+		}
+		boolean higher = hand.getTopCard().compareTo(other.getTopCard()) == 1;
+		if (hand.size() != 5) {
+			return higher;
+		}
+
+		String type = hand.getType();
+		String otherType = other.getType();
+		if (type.equals(otherType)) {
+			if (type.equals("Flush")) {
+				// A flush with a higher suit beats one with a lower suit
+				int suit = hand.getTopCard().getSuit();
+				int otherSuit = other.getTopCard().getSuit();
+				if (suit != otherSuit) {
+					return suit > otherSuit;
+				}
+			}
+			return higher;
+		}
+		if (type.equals("Straight")) {
+			return false;
+		} else if (type.equals("Flush")) {
+			return otherType.equals("Straight");
+		} else if (type.equals("FullHouse")) {
+			return !otherType.equals("Quad") && !otherType.equals("StraightFlush");
+		} else if (type.equals("Quad")) {
+			return !otherType.equals("StraightFlush");
+		} else {
+			return true;
+		}
+	}
+
+	/**
+	 * Checks one ordered pair of hands.
+	 *
+	 * @param hand
+	 *            the hand being played
+	 * @param other
+	 *            the hand on the table
+	 */
+	private void check(Hand hand, Hand other) {
+		boolean expected = legacyBeats(hand, other);
+		boolean actual = hand.beats(other);
+		numOfChecked++;
+		if (expected != actual) {
+			if (numOfMismatches < MAX_REPORTED) {
+				System.out.println(hand.getType() + " " + hand.getCardSet()
+						+ " vs " + other.getType() + " " + other.getCardSet()
+						+ ": old beats " + expected + ", key beats " + actual);
+			}
+			numOfMismatches++;
+		}
+	}
+
+	/**
+	 * Builds the hand formed by the specified cards.
+	 *
+	 * @param bits
+	 *            the bits of a CardSet
+	 * @return the hand, or null if the cards do not form a valid hand
+	 */
+	private Hand handOf(long bits) {
+		return BigTwoClient.composeHand(player, CardSet.valueOf(bits).toCardList());
+	}
+
+	/**
+	 * Lists the valid hands of the specified size.
+	 *
+	 * @param size
+	 *            the number of cards in each hand
+	 * @return the valid hands of that size
+	 */
+	private ArrayList<Hand> handsOfSize(int size) {
+		ArrayList<Hand> hands = new ArrayList<Hand>();
+		addHands(hands, size, 0L, 0);
+		return hands;
+	}
+
+	/**
+	 * Adds the valid hands that complete the specified partial combination.
+	 *
+	 * @param hands
+	 *            the list that receives the hands
+	 * @param remaining
+	 *            the number of cards still to be chosen
+	 * @param bits
+	 *            the bits of the cards chosen so far
+	 * @param from
+	 *            the smallest bit index that may be chosen next
+	 */
+	private void addHands(ArrayList<Hand> hands, int remaining, long bits, int from) {
+		if (remaining == 0) {
+			if (HandEvaluator.evaluate(bits) != 0) {
+				hands.add(handOf(bits));
+			}
+			return;
+		}
+		for (int i = from; i <= 52 - remaining; i++) {
+			addHands(hands, remaining - 1, bits | (1L << i), i + 1);
+		}
+	}
+
+	/**
+	 * main() method for running the check. Exits with status 1 if the key
+	 * comparison disagrees with the old beats() methods on any pair.
+	 *
+	 * @param args
+	 *            the number of random five-card pairs (default 200000) and
+	 *            the seed (default 0)
+	 */
+	public static void main(String[] args) {
+		int numOfFivePairs = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+
+		HandOrderCheck check = new HandOrderCheck();
+		long startTime = System.nanoTime();
+		for (int size = 1; size <= 3; size++) {
+			ArrayList<Hand> hands = check.handsOfSize(size);
+			for (Hand hand : hands) {
+				for (Hand other : hands) {
+					check.check(hand, other);
+				}
+			}
+		}
+
+		ArrayList<Hand> fives = check.handsOfSize(5);
+		List<List<Hand>> byCategory = new ArrayList<List<Hand>>();
+		for (int i = 0; i <= HandEvaluator.STRAIGHT_FLUSH; i++) {
+			byCategory.add(new ArrayList<Hand>());
+		}
+		for (Hand hand : fives) {
+			byCategory.get(HandEvaluator.category(hand.getKey())).add(hand);
+		}
+		Random random = new Random(seed);
+		for (int i = 0; i < numOfFivePairs; i++) {
+			Hand hand = fives.get(random.nextInt(fives.size()));
+			List<Hand> pool = random.nextBoolean() ? fives
+					: byCategory.get(HandEvaluator.category(hand.getKey()));
+			check.check(hand, pool.get(random.nextInt(pool.size())));
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+
+		System.out.printf("%d pairs, %d mismatches, %.2f s%n",
+				check.numOfChecked, check.numOfMismatches, seconds);
+		if (check.numOfMismatches != 0) {
+			System.exit(1);
+		}
+	}
+}
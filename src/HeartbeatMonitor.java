@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * This class is used to watch the client connections of a card game server
+ * for silence. A client which has sent nothing for the ping interval gets a
+ * PING message, which a live client sends back, and one still silent at the
+ * idle timeout is dropped through the removeConnection() method of the
+ * server, as if its connection had been lost. A connection which has died
+ * without a FIN or RST, such as that of a client whose network has gone
+ * away, is thus dropped within the idle timeout rather than holding its
+ * seat until TCP gives up.
+ * <p>
+ * Each connection has one timeout on a TimerWheel, driven by the timer of
+ * the server. Reading a frame costs a connection no more than storing the
+ * current tick, and its timeout is not touched; when the timeout expires,
+ * it is simply scheduled again from the last tick the client was heard at.
+ * A busy client is therefore visited once per ping interval, and a server
+ * with tens of thousands of connections spends a few microseconds a tick on
+ * them. Bots are not watched.
+ *
+ * @author chanyuyan
+ *
+ */
+public class HeartbeatMonitor {
+	/**
+	 * The length of a tick of the wheel, in milliseconds, which is the
+	 * accuracy of the pings and of the idle timeout.
+	 */
+	public static final long TICK_DURATION = 500;
+
+	// The number of slots of the wheel, 64 seconds at 500 ms a tick
+	private static final int NUM_OF_SLOTS = 128;
+
+	// The server of the connections watched
+	private final CardGameServer server;
+	// The wheel of the timeouts of the connections
+	private final TimerWheel wheel = new TimerWheel(TICK_DURATION, NUM_OF_SLOTS);
+	// How long a client may be quiet before it is pinged, in ticks
+	private final long pingTicks;
+	// How long a client may be silent before it is dropped, in ticks
+	private final long timeoutTicks;
+	// The PING frame of each codec, used by the timer only
+	private final HashMap<Class<?>, byte[]> pingFrames = new HashMap<Class<?>, byte[]>();
+
+	/**
+	 * Creates the monitor of a server, and starts the wheel on the timer of
+	 * the server.
+	 *
+	 * @param server
+	 *            the server of the connections to be watched
+	 * @param pingInterval
+	 *            how long a client may be quiet before it is pinged, in
+	 *            milliseconds
+	 * @param idleTimeout
+	 *            how long a client may be silent before it is dropped, in
+	 *            milliseconds, longer than the ping interval
+	 */
+	public HeartbeatMonitor(CardGameServer server, long pingInterval,
+			long idleTimeout) {
+		this.server = server;
+		this.pingTicks = Math.max(1, wheel.toTicks(pingInterval));
+		this.timeoutTicks = Math.max(pingTicks + 1, wheel.toTicks(idleTimeout));
+		server.scheduleAtFixedRate(this::runTick, TICK_DURATION);
+	}
+
+	/**
+	 * Returns the current tick of the wheel, the clock with which the
+	 * connections record when their clients were last heard.
+	 *
+	 * @return the current tick
+	 */
+	long now() {
+		return wheel.getTick();
+	}
+
+	/**
+	 * Starts watching a connection.
+	 *
+	 * @param connection
+	 *            the connection to a client
+	 */
+	void watch(ClientConnection connection) {
+		long now = now();
+		connection.setLastActivity(now);
+		wheel.schedule(new Watch(connection), now + pingTicks);
+	}
+
+	/**
+	 * Moves the wheel on by one tick. An error is logged rather than thrown,
+	 * as it would stop the timer from running later ticks. Runs on the timer
+	 * of the server.
+	 */
+	private void runTick() {
+		try {
+			wheel.advance();
+		} catch (RuntimeException ex) {
+			server.println("Error in checking the connections for silence", ex);
+		}
+	}
+
+	/**
+	 * Returns the PING frame of a codec, encoding it the first time.
+	 *
+	 * @param codec
+	 *            the codec of a connection
+	 * @return the frame
+	 * @throws IOException
+	 *             if the message cannot be encoded
+	 */
+	private byte[] pingFrame(MessageCodec codec) throws IOException {
+		byte[] frame = pingFrames.get(codec.getClass());
+		if (frame == null) {
+			frame = server.encode(codec, new CardGameMessage(
+					CardGameMessage.PING, -1, null));
+			pingFrames.put(codec.getClass(), frame);
+		}
+		return frame;
+	}
+
+	/**
+	 * This inner class is used to represent the timeout of a connection on
+	 * the wheel. It pings a quiet client, drops a silent one, and otherwise
+	 * waits for the client to become quiet.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private class Watch extends TimerWheel.Timeout {
+		// The connection watched
+		private final ClientConnection connection;
+
+		/**
+		 * Creates and returns an instance of the Watch class.
+		 *
+		 * @param connection
+		 *            the connection watched
+		 */
+		public Watch(ClientConnection connection) {
+			this.connection = connection;
+		}
+
+		// implementation of method from the TimerWheel.Timeout class
+		protected long expire(long now) {
+			if (connection.isRemoved()) {
+				return -1;
+			}
+			long lastActivity = connection.getLastActivity();
+			long idle = now - lastActivity;
+			if (idle < pingTicks) {
+				return lastActivity + pingTicks;
+			}
+			if (idle >= timeoutTicks) {
+				server.getMetrics().countIdleDisconnect();
+				server.println("Drops the client at "
+						+ connection.getRemoteSocketAddress() + ", silent for "
+						+ idle * TICK_DURATION / 1000 + " seconds");
+				server.removeConnection(connection);
+				return -1;
+			}
+
+			// pings once a ping interval until the client answers
+			try {
+				connection.sendFrame(pingFrame(connection.getCodec()), true);
+				server.getMetrics().countPing();
+			} catch (Exception ex) {
+				server.println("Error in sending a PING message to the client at "
+						+ connection.getRemoteSocketAddress(), ex);
+			}
+			return Math.min(now + pingTicks, lastActivity + timeoutTicks);
+		}
+	} // Watch
+}
@@ -0,0 +1,135 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is used to record latencies from many threads at once, with
+ * bounded memory and no locks.
+ * <p>
+ * Latencies are kept in microseconds, in buckets which split every power of
+ * two into 4, so that a percentile is reported within 25% of its true value,
+ * and never below it. Values below 4 us have a bucket each.
+ *
+ * @author chanyuyan
+ *
+ */
+public class LatencyHistogram {
+	// The number of buckets into which each power of two is split, as a shift
+	private static final int SUB_BUCKET_BITS = 2;
+	// The number of buckets into which each power of two is split
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// The number of buckets, enough for any positive long
+	private static final int NUM_OF_BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+
+	// The number of latencies in each bucket
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_OF_BUCKETS);
+	// The number of latencies recorded
+	private final LongAdder count = new LongAdder();
+	// The sum of the latencies recorded, in microseconds
+	private final LongAdder sum = new LongAdder();
+	// The largest latency recorded, in microseconds
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos
+	 *            the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(bucketOf(micros));
+		count.increment();
+		sum.add(micros);
+		max.accumulate(micros);
+	}
+
+	/**
+	 * Returns the number of latencies recorded.
+	 *
+	 * @return the number of latencies
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean of the latencies recorded.
+	 *
+	 * @return the mean in microseconds, or 0 if none has been recorded
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Returns the largest latency recorded.
+	 *
+	 * @return the largest latency in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the latency below which the specified fraction of the latencies
+	 * recorded fall. The value is the upper bound of the bucket holding the
+	 * percentile, so it is never below the true value.
+	 *
+	 * @param fraction
+	 *            a value between 0 and 1
+	 * @return the percentile in microseconds, or 0 if none has been recorded
+	 */
+	public long getPercentile(double fraction) {
+		long[] snapshot = new long[NUM_OF_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), getMax());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the bucket of a latency.
+	 *
+	 * @param micros
+	 *            the latency in microseconds, not negative
+	 * @return the index of its bucket
+	 */
+	private static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+	}
+
+	/**
+	 * Returns the largest latency in a bucket.
+	 *
+	 * @param bucket
+	 *            the index of the bucket
+	 * @return the largest latency of the bucket in microseconds
+	 */
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+		return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
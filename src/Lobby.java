@@ -0,0 +1,276 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is used for the lobby of a card game server, where clients wait
+ * to be seated and are then seated together, a whole table at a time.
+ * <p>
+ * Every BATCH_INTERVAL milliseconds the lobby seats its waiting clients:
+ * first in the free seats of tables whose games lack players, then in new
+ * rooms, a full table of clients per room, in the order they arrived. If
+ * the server has bots and a client has waited for the bot fill delay, the
+ * clients left over are seated at a table of their own, and bots take the
+ * empty seats. A client is never turned away while rooms can be opened, and
+ * beyond that only once the lobby holds its capacity.
+ * <p>
+ * A client is seated on the connection it waits on. The messages it sends
+ * while waiting, such as JOIN and READY, are held and passed to its room
+ * after the event which seats it, in the order they were sent. Clients are
+ * only seated by the timer thread of the server, so the waiting line needs
+ * no lock; each client has a lock of its own, which keeps its messages from
+ * overtaking its seating.
+ *
+ * @author chanyuyan
+ *
+ */
+public class Lobby {
+	/**
+	 * How often the waiting clients are seated, in milliseconds.
+	 */
+	public static final long BATCH_INTERVAL = 20;
+
+	// The server of this lobby
+	private final CardGameServer server;
+	// The number of seats of a table
+	private final int tableSize;
+	// The maximum number of clients waiting
+	private final int capacity;
+	// How long a client waits before bots fill its table, in ms, or -1
+	private final long botFillDelay;
+	// The clients which have arrived since the last batch
+	private final Queue<Ticket> arrivals = new ConcurrentLinkedQueue<Ticket>();
+	// The clients waiting, in the order they arrived, used by the timer only
+	private final ArrayDeque<Ticket> waiting = new ArrayDeque<Ticket>();
+	// The ticket of each client waiting or arriving
+	private final ConcurrentHashMap<ClientConnection, Ticket> tickets = new ConcurrentHashMap<ClientConnection, Ticket>();
+	// The number of clients waiting or arriving
+	private final AtomicInteger numOfWaiting = new AtomicInteger();
+	// The number of bots created so far
+	private int numOfBots = 0;
+
+	/**
+	 * Creates the lobby of a server, and starts seating clients.
+	 *
+	 * @param server
+	 *            the server of the lobby
+	 * @param tableSize
+	 *            the number of seats of a table
+	 * @param capacity
+	 *            the maximum number of clients waiting
+	 * @param botFillDelay
+	 *            how long a client waits before bots fill its table, in
+	 *            milliseconds, or -1 to wait for players only
+	 */
+	public Lobby(CardGameServer server, int tableSize, int capacity,
+			long botFillDelay) {
+		this.server = server;
+		this.tableSize = tableSize;
+		this.capacity = capacity;
+		this.botFillDelay = botFillDelay;
+		server.scheduleAtFixedRate(this::runBatch, BATCH_INTERVAL);
+	}
+
+	/**
+	 * Returns the number of clients waiting to be seated.
+	 *
+	 * @return the number of clients waiting
+	 */
+	public int getNumOfWaiting() {
+		return numOfWaiting.get();
+	}
+
+	/**
+	 * Lets a client wait to be seated.
+	 *
+	 * @param connection
+	 *            the connection to the client
+	 * @return true if the client waits; false if the lobby is full
+	 */
+	boolean add(ClientConnection connection) {
+		if (numOfWaiting.incrementAndGet() > capacity) {
+			numOfWaiting.decrementAndGet();
+			return false;
+		}
+		Ticket ticket = new Ticket(connection);
+		tickets.put(connection, ticket);
+		arrivals.add(ticket);
+		return true;
+	}
+
+	/**
+	 * Holds a message from a client waiting to be seated, to be passed to its
+	 * room once it is seated.
+	 *
+	 * @param connection
+	 *            the connection to the client
+	 * @param message
+	 *            the message received from the client
+	 * @return true if the message is held; false if the client is not
+	 *         waiting, and the message should go to its room
+	 */
+	boolean hold(ClientConnection connection, CardGameMessage message) {
+		Ticket ticket = tickets.get(connection);
+		if (ticket == null) {
+			return false;
+		}
+		ticket.lock.lock();
+		try {
+			if (ticket.done) {
+				return false;
+			}
+			ticket.messages.add(message);
+			return true;
+		} finally {
+			ticket.lock.unlock();
+		}
+	}
+
+	/**
+	 * Seats the clients waiting. An error is logged rather than thrown, as it
+	 * would stop the timer from running later batches. Runs on the timer of
+	 * the server.
+	 */
+	private void runBatch() {
+		try {
+			seatWaiting();
+		} catch (RuntimeException ex) {
+			server.println("Error in seating the clients in the lobby", ex);
+		}
+	}
+
+	/**
+	 * Seats the clients waiting, as many as there are seats for. Runs on the
+	 * timer of the server.
+	 */
+	private void seatWaiting() {
+		Ticket arrival;
+		while ((arrival = arrivals.poll()) != null) {
+			waiting.add(arrival);
+		}
+		dropRemoved();
+
+		// the games short of players go on first
+		GameRoom room;
+		while (!waiting.isEmpty()
+				&& (room = server.findOpenRoom(false)) != null) {
+			seat(waiting.poll(), room);
+		}
+
+		// then the clients are seated a full table at a time
+		while (waiting.size() >= tableSize) {
+			room = server.openRoom();
+			if (room == null) {
+				// waits for a room to be freed
+				return;
+			}
+			for (int i = 0; i < tableSize; i++) {
+				seat(waiting.poll(), room);
+			}
+		}
+
+		// bots take the seats no client has come for in time
+		if (!waiting.isEmpty() && botFillDelay >= 0
+				&& System.nanoTime() - waiting.peek().arrivalTime >= botFillDelay * 1000000) {
+			ClientConnection bot = server.createBot(numOfBots);
+			if (bot == null) {
+				// the server has no bots
+				return;
+			}
+			room = server.openRoom();
+			if (room == null) {
+				return;
+			}
+			while (!waiting.isEmpty()) {
+				seat(waiting.poll(), room);
+			}
+			while (bot != null && room.addConnection(bot)) {
+				numOfBots++;
+				bot = room.getNumOfPlayers() < tableSize ? server
+						.createBot(numOfBots) : null;
+			}
+		}
+	}
+
+	/**
+	 * Forgets the clients which have left while waiting.
+	 */
+	private void dropRemoved() {
+		int numOfRemoved = 0;
+		for (int i = waiting.size(); i > 0; i--) {
+			Ticket ticket = waiting.poll();
+			if (ticket.connection.isRemoved()) {
+				tickets.remove(ticket.connection);
+				numOfRemoved++;
+			} else {
+				waiting.add(ticket);
+			}
+		}
+		numOfWaiting.addAndGet(-numOfRemoved);
+	}
+
+	/**
+	 * Seats a waiting client in a room, and passes it the messages held.
+	 *
+	 * @param ticket
+	 *            the ticket of the client
+	 * @param room
+	 *            a room with a free seat
+	 */
+	private void seat(Ticket ticket, GameRoom room) {
+		ticket.lock.lock();
+		try {
+			if (!room.addConnection(ticket.connection)) {
+				// only the lobby seats clients, so a room with a free seat
+				// keeps it; the client waits for the next batch all the same
+				waiting.addFirst(ticket);
+				return;
+			}
+			for (int i = 0; i < ticket.messages.size(); i++) {
+				room.parseMessage(ticket.connection, ticket.messages.get(i));
+			}
+			ticket.done = true;
+		} finally {
+			ticket.lock.unlock();
+		}
+		tickets.remove(ticket.connection);
+		numOfWaiting.decrementAndGet();
+		server.getMetrics().recordLobbyWait(System.nanoTime()
+				- ticket.arrivalTime);
+	}
+
+	/**
+	 * This inner class is used to represent a client waiting in the lobby,
+	 * with the messages it has sent so far.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private static class Ticket {
+		// The connection to the client
+		private final ClientConnection connection;
+		// When the client arrived, in ns
+		private final long arrivalTime = System.nanoTime();
+		// The messages held, guarded by lock
+		private final ArrayList<CardGameMessage> messages = new ArrayList<CardGameMessage>();
+		// Whether the client has been seated, guarded by lock
+		private boolean done = false;
+		// The lock keeping the messages of the client from overtaking its
+		// seating
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/**
+		 * Creates and returns an instance of the Ticket class.
+		 *
+		 * @param connection
+		 *            the connection to the client
+		 */
+		public Ticket(ClientConnection connection) {
+			this.connection = connection;
+		}
+	} // Ticket
+}
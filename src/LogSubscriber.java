@@ -0,0 +1,29 @@
+/**
+ * This interface is implemented by the sinks of a ServerLog. All its methods
+ * are called by the writer thread of the log only, so an implementation
+ * needs no locking of its own against the log.
+ *
+ * @author chanyuyan
+ *
+ */
+public interface LogSubscriber {
+	/**
+	 * Takes a line of the log.
+	 *
+	 * @param line
+	 *            the line, with its time stamp and without a line separator
+	 */
+	void write(String line);
+
+	/**
+	 * Makes the lines taken so far visible. Called whenever the log has been
+	 * drained, so lines may be buffered until then.
+	 */
+	void flush();
+
+	/**
+	 * Releases the resources of the subscriber. Called once, when the log is
+	 * closed.
+	 */
+	void close();
+}
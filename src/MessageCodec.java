@@ -0,0 +1,115 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * This class is used to turn card game messages into frames and back.
+ * <p>
+ * On the wire every message is a frame: a 4-byte big-endian payload length
+ * followed by the payload. The layout of the payload is up to the subclass.
+ * 
+ * @author chanyuyan
+ *
+ */
+public abstract class MessageCodec {
+	/**
+	 * The number of bytes of the length field at the start of a frame.
+	 */
+	public static final int HEADER_LENGTH = 4;
+
+	/**
+	 * The largest payload accepted from the network, in bytes.
+	 */
+	public static final int MAX_PAYLOAD_LENGTH = 64 * 1024;
+
+	/**
+	 * Encodes the specified message as a complete frame, length field
+	 * included.
+	 * 
+	 * @param message
+	 *            the message to be encoded
+	 * @return the bytes of the frame
+	 * @throws IOException
+	 *             if the message cannot be encoded
+	 */
+	public abstract byte[] encode(CardGameMessage message) throws IOException;
+
+	/**
+	 * Decodes the payload of a frame.
+	 * 
+	 * @param payload
+	 *            the array holding the payload
+	 * @param offset
+	 *            the index of the first byte of the payload
+	 * @param length
+	 *            the number of bytes of the payload
+	 * @return the decoded message
+	 * @throws IOException
+	 *             if the payload is not a valid message
+	 */
+	public abstract CardGameMessage decode(byte[] payload, int offset, int length)
+			throws IOException;
+
+	/**
+	 * Reads one frame from the specified stream and decodes it, blocking until
+	 * the whole frame has arrived.
+	 * 
+	 * @param in
+	 *            the stream to read from
+	 * @return the decoded message
+	 * @throws IOException
+	 *             if the stream ends or the frame is not valid
+	 */
+	public CardGameMessage read(DataInputStream in) throws IOException {
+		byte[] payload = readPayload(in);
+		return decode(payload, 0, payload.length);
+	}
+
+	/**
+	 * Reads one frame from the specified stream, blocking until the whole
+	 * frame has arrived, and returns its payload.
+	 * 
+	 * @param in
+	 *            the stream to read from
+	 * @return the payload of the frame
+	 * @throws IOException
+	 *             if the stream ends or the frame is not valid
+	 */
+	public static byte[] readPayload(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		checkLength(length);
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		return payload;
+	}
+
+	/**
+	 * Checks the payload length read from a frame header.
+	 * 
+	 * @param length
+	 *            the payload length
+	 * @throws StreamCorruptedException
+	 *             if the length is negative or too large
+	 */
+	public static void checkLength(int length) throws StreamCorruptedException {
+		if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+			throw new StreamCorruptedException("Invalid frame length: " + length);
+		}
+	}
+
+	/**
+	 * Writes the payload length into the header of a frame.
+	 * 
+	 * @param frame
+	 *            the frame, whose payload starts after the header
+	 * @return the frame
+	 */
+	protected static byte[] writeHeader(byte[] frame) {
+		int length = frame.length - HEADER_LENGTH;
+		frame[0] = (byte) (length >>> 24);
+		frame[1] = (byte) (length >>> 16);
+		frame[2] = (byte) (length >>> 8);
+		frame[3] = (byte) length;
+		return frame;
+	}
+}
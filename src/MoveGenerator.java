@@ -0,0 +1,332 @@
+import java.util.ArrayList;
+
+/**
+ * This class is used to list the legal moves of a player in a Big Two game.
+ * Moves are written into a MoveList as CardSet bits, so generating them does
+ * not create any CardList or Hand objects. Five-card hands are built family by
+ * family from the rank and suit groups of the hand rather than by testing
+ * every 5-card combination.
+ * <p>
+ * The rules follow BigTwoClient.checkMove():
+ * <ul>
+ * <li>the first hand of a game must contain the three of Diamonds and cannot
+ * be a pass;</li>
+ * <li>a player whose own hand is the last one on the table may lead any valid
+ * hand but cannot pass;</li>
+ * <li>otherwise a player may pass or play a hand that beats the last hand.</li>
+ * </ul>
+ * An instance keeps scratch space for the enumeration and is not thread-safe;
+ * use one generator per thread.
+ *
+ * @author chanyuyan
+ *
+ */
+public class MoveGenerator {
+	// The bit of the three of diamonds, the smallest card in Big Two order
+	private static final long THREE_OF_DIAMONDS = 1L;
+
+	// Bit indices of the cards of one suit, used while enumerating flushes
+	private final int[] index = new int[13];
+
+	/**
+	 * Lists the legal moves of the specified player given the hands on the
+	 * table. Any moves already in the list are removed first.
+	 *
+	 * @param player the player whose moves are to be listed
+	 * @param handsOnTable the list of hands played on the table
+	 * @param moves the list that receives the legal moves
+	 * @return the number of legal moves
+	 */
+	public int generate(CardGamePlayer player, ArrayList<Hand> handsOnTable,
+			MoveList moves) {
+		long hand = player.getCardSet().bits();
+		if (handsOnTable.isEmpty()) {
+			return generate(hand, 0, true, moves);
+		}
+		Hand lastHand = handsOnTable.get(handsOnTable.size() - 1);
+		if (lastHand.getPlayer() == player) {
+			return generate(hand, 0, false, moves);
+		}
+		return generate(hand, lastHand.getKey(), false, moves);
+	}
+
+	/**
+	 * Lists the legal moves for the specified cards. Any moves already in the
+	 * list are removed first.
+	 *
+	 * @param hand the bits of the cards held by the player
+	 * @param topKey the strength key of the hand to beat, or 0 if the player
+	 *            is free to lead any hand
+	 * @param opening true if this is the first hand of the game
+	 * @param moves the list that receives the legal moves
+	 * @return the number of legal moves
+	 */
+	public int generate(long hand, int topKey, boolean opening, MoveList moves) {
+		moves.clear();
+		long required = opening ? THREE_OF_DIAMONDS : 0L;
+		if ((hand & required) != required) {
+			return 0;
+		}
+
+		int topSize = sizeOf(topKey);
+		if (topSize == 0 || topSize == 1) {
+			addSingles(hand, topKey, required, moves);
+		}
+		if (topSize == 0 || topSize == 2 || topSize == 3) {
+			addGroups(hand, topKey, required, topSize, moves);
+		}
+		if (topSize == 0 || topSize == 5) {
+			addFives(hand, topKey, required, moves);
+		}
+		if (topKey != 0) {
+			moves.add(0L, 0);
+		}
+		return moves.size();
+	}
+
+	/**
+	 * Returns the number of cards in a hand with the specified key.
+	 *
+	 * @param key the strength key of a hand
+	 * @return the number of cards in the hand, or 0 for no hand
+	 */
+	private static int sizeOf(int key) {
+		switch (HandEvaluator.category(key)) {
+		case HandEvaluator.SINGLE:
+			return 1;
+		case HandEvaluator.PAIR:
+			return 2;
+		case HandEvaluator.TRIPLE:
+			return 3;
+		case 0:
+			return 0;
+		default:
+			return 5;
+		}
+	}
+
+	/**
+	 * Adds the legal Single moves.
+	 *
+	 * @param hand the bits of the cards held by the player
+	 * @param topKey the strength key of the hand to beat, or 0
+	 * @param required the bits of the cards every move must contain
+	 * @param moves the list that receives the legal moves
+	 */
+	private static void addSingles(long hand, int topKey, long required,
+			MoveList moves) {
+		for (long rest = hand; rest != 0L; rest &= rest - 1) {
+			long move = rest & -rest;
+			int key = HandEvaluator.evaluate(move);
+			if ((move & required) == required && key > topKey) {
+				moves.add(move, key);
+			}
+		}
+	}
+
+	/**
+	 * Adds the legal Pair and Triple moves, taken from the cards of each rank.
+	 *
+	 * @param hand the bits of the cards held by the player
+	 * @param topKey the strength key of the hand to beat, or 0
+	 * @param required the bits of the cards every move must contain
+	 * @param topSize the size of the hand to beat, or 0
+	 * @param moves the list that receives the legal moves
+	 */
+	private static void addGroups(long hand, int topKey, long required,
+			int topSize, MoveList moves) {
+		for (int rank = 0; rank < 13; rank++) {
+			int shift = rank * 4;
+			int group = (int) ((hand >>> shift) & 0xF);
+			if (Integer.bitCount(group) < 2) {
+				continue;
+			}
+			// Enumerates the subsets of the suits held for this rank
+			for (int sub = group; sub != 0; sub = (sub - 1) & group) {
+				int size = Integer.bitCount(sub);
+				if (size < 2 || (topSize != 0 && size != topSize)) {
+					continue;
+				}
+				long move = (long) sub << shift;
+				int key = HandEvaluator.evaluate(move);
+				if ((move & required) == required && key > topKey) {
+					moves.add(move, key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the legal five-card moves. Each family of hands is built directly
+	 * from the rank and suit groups of the hand, and a family is skipped when
+	 * none of its hands could beat the table top.
+	 *
+	 * @param hand the bits of the cards held by the player
+	 * @param topKey the strength key of the hand to beat, or 0
+	 * @param required the bits of the cards every move must contain
+	 * @param moves the list that receives the legal moves
+	 */
+	private void addFives(long hand, int topKey, long required, MoveList moves) {
+		int topCategory = HandEvaluator.category(topKey);
+		addStraights(hand, topKey, required, moves);
+		if (topCategory <= HandEvaluator.FLUSH) {
+			addFlushes(hand, topKey, required, moves);
+		}
+		if (topCategory <= HandEvaluator.FULL_HOUSE) {
+			addFullHouses(hand, topKey, required, moves);
+		}
+		if (topCategory <= HandEvaluator.QUAD) {
+			addQuads(hand, topKey, required, moves);
+		}
+	}
+
+	/**
+	 * Adds a five-card move if it is legal.
+	 *
+	 * @param move the bits of the five cards
+	 * @param category the category the move must have
+	 * @param topKey the strength key of the hand to beat, or 0
+	 * @param required the bits of the cards every move must contain
+	 * @param moves the list that receives the legal moves
+	 */
+	private static void addFive(long move, int category, int topKey,
+			long required, MoveList moves) {
+		if ((move & required) != required) {
+			return;
+		}
+		int key = HandEvaluator.evaluate(move);
+		if (key > topKey && HandEvaluator.category(key) == category) {
+			moves.add(move, key);
+		}
+	}
+
+	/**
+	 * Adds the legal Straight and StraightFlush moves: one card from each of
+	 * five consecutive ranks.
+	 *
+	 * @param hand the bits of the cards held by the player
+	 * @param topKey the strength key of the hand to beat, or 0
+	 * @param required the bits of the cards every move must contain
+	 * @param moves the list that receives the legal moves
+	 */
+	private static void addStraights(long hand, int topKey, long required,
+			MoveList moves) {
+		for (int low = 0; low + 4 < 13; low++) {
+			long run = (hand >>> (low * 4)) & 0xFFFFFL;
+			long g0 = run & 0xF, g1 = run & 0xF0, g2 = run & 0xF00,
+					g3 = run & 0xF000, g4 = run & 0xF0000;
+			if (g0 == 0 || g1 == 0 || g2 == 0 || g3 == 0 || g4 == 0) {
+				continue;
+			}
+			for (long s0 = g0; s0 != 0; s0 &= s0 - 1) {
+				for (long s1 = g1; s1 != 0; s1 &= s1 - 1) {
+					for (long s2 = g2; s2 != 0; s2 &= s2 - 1) {
+						for (long s3 = g3; s3 != 0; s3 &= s3 - 1) {
+							long m = (s0 & -s0) | (s1 & -s1) | (s2 & -s2) | (s3 & -s3);
+							for (long s4 = g4; s4 != 0; s4 &= s4 - 1) {
+								long move = (m | (s4 & -s4)) << (low * 4);
+								int key = HandEvaluator.evaluate(move);
+								if ((move & required) == required && key > topKey) {
+									moves.add(move, key);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the legal Flush moves: any five cards of one suit that are not a
+	 * straight.
+	 *
+	 * @param hand the bits of the cards held by the player
+	 * @param topKey the strength key of the hand to beat, or 0
+	 * @param required the bits of the cards every move must contain
+	 * @param moves the list that receives the legal moves
+	 */
+	private void addFlushes(long hand, int topKey, long required, MoveList moves) {
+		for (int suit = 0; suit < 4; suit++) {
+			long suited = hand & (0x1111111111111L << suit);
+			int n = 0;
+			for (long rest = suited; rest != 0L; rest &= rest - 1) {
+				index[n++] = Long.numberOfTrailingZeros(rest);
+			}
+			for (int a = 0; a < n; a++) {
+				long ma = 1L << index[a];
+				for (int b = a + 1; b < n; b++) {
+					long mb = ma | 1L << index[b];
+					for (int c = b + 1; c < n; c++) {
+						long mc = mb | 1L << index[c];
+						for (int d = c + 1; d < n; d++) {
+							long md = mc | 1L << index[d];
+							for (int e = d + 1; e < n; e++) {
+								addFive(md | 1L << index[e], HandEvaluator.FLUSH,
+										topKey, required, moves);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the legal FullHouse moves: three cards of one rank and two of
+	 * another.
+	 *
+	 * @param hand the bits of the cards held by the player
+	 * @param topKey the strength key of the hand to beat, or 0
+	 * @param required the bits of the cards every move must contain
+	 * @param moves the list that receives the legal moves
+	 */
+	private static void addFullHouses(long hand, int topKey, long required,
+			MoveList moves) {
+		for (int t = 0; t < 13; t++) {
+			long tripleGroup = hand & (0xFL << (t * 4));
+			if (Long.bitCount(tripleGroup) < 3) {
+				continue;
+			}
+			for (long triple = tripleGroup; triple != 0; triple = (triple - 1) & tripleGroup) {
+				if (Long.bitCount(triple) != 3) {
+					continue;
+				}
+				for (int p = 0; p < 13; p++) {
+					long pairGroup = hand & (0xFL << (p * 4));
+					if (p == t || Long.bitCount(pairGroup) < 2) {
+						continue;
+					}
+					for (long pair = pairGroup; pair != 0; pair = (pair - 1) & pairGroup) {
+						if (Long.bitCount(pair) == 2) {
+							addFive(triple | pair, HandEvaluator.FULL_HOUSE,
+									topKey, required, moves);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the legal Quad moves: four cards of one rank and any other card.
+	 *
+	 * @param hand the bits of the cards held by the player
+	 * @param topKey the strength key of the hand to beat, or 0
+	 * @param required the bits of the cards every move must contain
+	 * @param moves the list that receives the legal moves
+	 */
+	private static void addQuads(long hand, int topKey, long required,
+			MoveList moves) {
+		for (int q = 0; q < 13; q++) {
+			long quad = 0xFL << (q * 4);
+			if ((hand & quad) != quad) {
+				continue;
+			}
+			for (long rest = hand & ~quad; rest != 0L; rest &= rest - 1) {
+				addFive(quad | (rest & -rest), HandEvaluator.QUAD, topKey,
+						required, moves);
+			}
+		}
+	}
+}
@@ -0,0 +1,220 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class checks MoveGenerator against brute-force enumeration of the
+ * subsets of a hand.
+ * <p>
+ * For each random deal, the player's cards and a table state are drawn: the
+ * opening move, a lead on the player's own hand, or a random valid hand of
+ * another player to beat. The expected moves are every subset of 1, 2, 3 or 5
+ * cards that composeHand accepts and that the rules of checkMove allow,
+ * plus a pass when passing is allowed. The generator must list exactly the
+ * same moves.
+ *
+ * @author chanyuyan
+ *
+ */
+public class MoveGeneratorCheck {
+	// The number of mismatches printed before the rest are only counted
+	private static final int MAX_REPORTED = 10;
+
+	// The bit of the three of diamonds
+	private static final long THREE_OF_DIAMONDS = 1L;
+
+	// The player used for every hand built by the check
+	private final CardGamePlayer player = new CardGamePlayer();
+	// The generator under check and the list it fills
+	private final MoveGenerator generator = new MoveGenerator();
+	private final MoveList moves = new MoveList();
+	// Moves found by brute force, as CardSet bits with 0 for a pass
+	private long[] expected = new long[1024];
+	private int numOfExpected;
+
+	// The number of deals checked and of those that disagreed
+	private long numOfChecked = 0;
+	private long numOfMismatches = 0;
+
+	/**
+	 * Builds the hand formed by the specified cards.
+	 *
+	 * @param bits
+	 *            the bits of a CardSet
+	 * @return the hand, or null if the cards do not form a valid hand
+	 */
+	private Hand handOf(long bits) {
+		return BigTwoClient.composeHand(player, CardSet.valueOf(bits).toCardList());
+	}
+
+	/**
+	 * Lists by brute force the subsets of the hand that are legal moves.
+	 *
+	 * @param hand
+	 *            the bits of the cards held by the player
+	 * @param top
+	 *            the hand to beat, or null if the player may lead any hand
+	 * @param opening
+	 *            true if this is the first hand of the game
+	 */
+	private void enumerate(long hand, Hand top, boolean opening) {
+		numOfExpected = 0;
+		int[] index = new int[Long.bitCount(hand)];
+		int n = 0;
+		for (long rest = hand; rest != 0L; rest &= rest - 1) {
+			index[n++] = Long.numberOfTrailingZeros(rest);
+		}
+		// Walks every subset of the hand by its position mask
+		for (int mask = 1; mask < 1 << n; mask++) {
+			int size = Integer.bitCount(mask);
+			if (size == 4 || size > 5) {
+				continue;
+			}
+			long move = 0L;
+			for (int i = 0; i < n; i++) {
+				if ((mask & (1 << i)) != 0) {
+					move |= 1L << index[i];
+				}
+			}
+			if (opening && (move & THREE_OF_DIAMONDS) == 0L) {
+				continue;
+			}
+			Hand candidate = handOf(move);
+			if (candidate != null && (top == null || candidate.beats(top))) {
+				addExpected(move);
+			}
+		}
+		if (top != null) {
+			addExpected(0L);
+		}
+	}
+
+	/**
+	 * Adds a move to the list of moves found by brute force.
+	 *
+	 * @param move
+	 *            the bits of the move, or 0 for a pass
+	 */
+	private void addExpected(long move) {
+		if (numOfExpected == expected.length) {
+			expected = Arrays.copyOf(expected, expected.length * 2);
+		}
+		expected[numOfExpected++] = move;
+	}
+
+	/**
+	 * Checks the moves listed by the generator for one table state.
+	 *
+	 * @param hand
+	 *            the bits of the cards held by the player
+	 * @param top
+	 *            the hand to beat, or null if the player may lead any hand
+	 * @param opening
+	 *            true if this is the first hand of the game
+	 */
+	private void check(long hand, Hand top, boolean opening) {
+		enumerate(hand, top, opening);
+		generator.generate(hand, top == null ? 0 : top.getKey(), opening, moves);
+
+		long[] actual = new long[moves.size()];
+		for (int i = 0; i < actual.length; i++) {
+			actual[i] = moves.getCards(i);
+		}
+		long[] wanted = Arrays.copyOf(expected, numOfExpected);
+		Arrays.sort(actual);
+		Arrays.sort(wanted);
+
+		numOfChecked++;
+		if (!Arrays.equals(actual, wanted)) {
+			if (numOfMismatches < MAX_REPORTED) {
+				System.out.println(CardSet.valueOf(hand) + " against "
+						+ (top == null ? (opening ? "opening" : "lead") : top.getType()
+								+ " " + top.getCardSet())
+						+ ": brute force " + wanted.length + " moves, generator "
+						+ actual.length);
+			}
+			numOfMismatches++;
+		}
+	}
+
+	/**
+	 * Draws a random valid hand of 1, 2, 3 or 5 cards from the specified cards.
+	 *
+	 * @param cards
+	 *            the bits of the cards to draw from
+	 * @param random
+	 *            the source of randomness
+	 * @return a valid hand made of some of the cards
+	 */
+	private Hand randomHand(long cards, Random random) {
+		int[] sizes = { 1, 2, 3, 5 };
+		int size = sizes[random.nextInt(sizes.length)];
+		while (true) {
+			long bits = randomSubset(cards, size, random);
+			if (HandEvaluator.evaluate(bits) != 0) {
+				return handOf(bits);
+			}
+		}
+	}
+
+	/**
+	 * Draws a random subset of the specified size from the specified cards.
+	 *
+	 * @param cards
+	 *            the bits of the cards to draw from
+	 * @param size
+	 *            the number of cards to draw
+	 * @param random
+	 *            the source of randomness
+	 * @return the bits of the cards drawn
+	 */
+	private static long randomSubset(long cards, int size, Random random) {
+		long subset = 0L;
+		while (Long.bitCount(subset) < size) {
+			int index = random.nextInt(52);
+			if ((cards & (1L << index)) != 0L) {
+				subset |= 1L << index;
+			}
+		}
+		return subset;
+	}
+
+	/**
+	 * main() method for running the check. Exits with status 1 if the
+	 * generator disagrees with brute-force enumeration on any deal.
+	 *
+	 * @param args
+	 *            the number of deals (default 3000) and the seed (default 0)
+	 */
+	public static void main(String[] args) {
+		int numOfDeals = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+
+		MoveGeneratorCheck check = new MoveGeneratorCheck();
+		Random random = new Random(seed);
+		long startTime = System.nanoTime();
+		for (int i = 0; i < numOfDeals; i++) {
+			// Hands of up to 13 cards, as held at any point of a game
+			long hand = randomSubset(CardSet.FULL.bits(), 1 + random.nextInt(13), random);
+			switch (random.nextInt(3)) {
+			case 0:
+				// The opening player always holds the three of diamonds
+				check.check(hand | THREE_OF_DIAMONDS, null, true);
+				break;
+			case 1:
+				check.check(hand, null, false);
+				break;
+			default:
+				Hand top = check.randomHand(CardSet.FULL.bits() & ~hand, random);
+				check.check(hand, top, false);
+				break;
+			}
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+
+		System.out.printf("%d deals, %d mismatches, %.2f s%n",
+				check.numOfChecked, check.numOfMismatches, seconds);
+		if (check.numOfMismatches != 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+
+/**
+ * This class is used to hold the moves produced by a MoveGenerator.
+ * Each move is stored as the bits of a CardSet together with the strength key
+ * of the hand it forms. A pass is stored as an empty set with a key of 0.
+ * <p>
+ * The list is meant to be cleared and refilled, so it grows its arrays once
+ * and never allocates afterwards.
+ * 
+ * @author chanyuyan
+ *
+ */
+public class MoveList {
+	// The cards of each move
+	private long[] cards;
+	// The strength key of each move
+	private int[] keys;
+	// The number of moves in the list
+	private int size;
+	
+	/**
+	 * Creates an empty list with room for the moves of a 13-card hand.
+	 */
+	public MoveList() {
+		this(2048);
+	}
+	
+	/**
+	 * Creates an empty list with the specified initial capacity.
+	 * 
+	 * @param capacity the number of moves the list can hold before growing
+	 */
+	public MoveList(int capacity) {
+		this.cards = new long[capacity];
+		this.keys = new int[capacity];
+	}
+	
+	/**
+	 * Removes all moves from this list.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+	
+	/**
+	 * Appends a move to this list.
+	 * 
+	 * @param move the bits of the cards played, or 0 for a pass
+	 * @param key the strength key of the hand, or 0 for a pass
+	 */
+	public void add(long move, int key) {
+		if (size == cards.length) {
+			cards = Arrays.copyOf(cards, size * 2);
+			keys = Arrays.copyOf(keys, size * 2);
+		}
+		cards[size] = move;
+		keys[size] = key;
+		size++;
+	}
+	
+	/**
+	 * Returns the number of moves in this list.
+	 * 
+	 * @return the number of moves in this list
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns true if this list contains no moves.
+	 * 
+	 * @return true if this list contains no moves
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Returns the cards of the move at the specified position.
+	 * 
+	 * @param i the index of the move
+	 * @return the bits of the cards played, or 0 for a pass
+	 */
+	public long getCards(int i) {
+		return cards[i];
+	}
+	
+	/**
+	 * Returns the strength key of the move at the specified position.
+	 * 
+	 * @param i the index of the move
+	 * @return the strength key of the hand, or 0 for a pass
+	 */
+	public int getKey(int i) {
+		return keys[i];
+	}
+	
+	/**
+	 * Returns true if the move at the specified position is a pass.
+	 * 
+	 * @param i the index of the move
+	 * @return true if the move is a pass
+	 */
+	public boolean isPass(int i) {
+		return cards[i] == 0L;
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * This class is used to describe the outcome of a move checked by a
+ * BigTwoEngine.
+ *
+ * @author chanyuyan
+ *
+ */
+public class MoveResult {
+	/**
+	 * The move is not legal and the game state is unchanged.
+	 */
+	public static final int ILLEGAL = 0;
+	/**
+	 * The player passes and the turn moves to the next player.
+	 */
+	public static final int PASS = 1;
+	/**
+	 * The player plays a hand, which is now the last hand on the table.
+	 */
+	public static final int PLAY = 2;
+
+	// The type of this result
+	private final int type;
+	// The playerID of the player who made the move
+	private final int playerID;
+	// The hand played, or null if no hand is played
+	private final Hand hand;
+	// Whether the move ends the game
+	private final boolean endOfGame;
+
+	/**
+	 * Creates and returns an instance of the MoveResult class.
+	 *
+	 * @param type
+	 *            the type of this result
+	 * @param playerID
+	 *            the playerID of the player who made the move
+	 * @param hand
+	 *            the hand played, or null if no hand is played
+	 * @param endOfGame
+	 *            whether the move ends the game
+	 */
+	public MoveResult(int type, int playerID, Hand hand, boolean endOfGame) {
+		this.type = type;
+		this.playerID = playerID;
+		this.hand = hand;
+		this.endOfGame = endOfGame;
+	}
+
+	/**
+	 * Returns the type of this result.
+	 *
+	 * @return ILLEGAL, PASS or PLAY
+	 */
+	public int getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns the playerID of the player who made the move.
+	 *
+	 * @return the playerID of the player who made the move
+	 */
+	public int getPlayerID() {
+		return this.playerID;
+	}
+
+	/**
+	 * Returns the hand played by this move.
+	 *
+	 * @return the hand played, or null for an illegal move or a pass
+	 */
+	public Hand getHand() {
+		return this.hand;
+	}
+
+	/**
+	 * Returns true if the move was accepted.
+	 *
+	 * @return true if the move is a legal pass or play
+	 */
+	public boolean isLegal() {
+		return this.type != ILLEGAL;
+	}
+
+	/**
+	 * Returns true if the move ends the game.
+	 *
+	 * @return true if the player has no cards left after the move
+	 */
+	public boolean isEndOfGame() {
+		return this.endOfGame;
+	}
+}
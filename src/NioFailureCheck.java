@@ -0,0 +1,259 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * This class checks that a connection which makes the NIO transport fail
+ * is dropped alone, and that the I/O thread goes on serving its other
+ * connections.
+ * <p>
+ * A server with a single I/O thread is started in this JVM, so that every
+ * connection shares it. Its parseMessage() throws an unchecked exception for
+ * a poison chat message, standing in for a bug in handling a message. Player
+ * B joins first. One client then sends the poison message, and another a
+ * frame with an invalid length; each must be dropped, and after each B must
+ * still get its chat message back and a new client must still be seated.
+ *
+ * @author chanyuyan
+ *
+ */
+public class NioFailureCheck {
+	// How long to wait for a message from the server, in ms
+	private static final int READ_TIMEOUT = 5000;
+	// The chat message which makes the server throw
+	private static final String POISON = "poison";
+
+	// The codec of every client
+	private final MessageCodec codec = new BinaryCodec();
+	// The port of the server
+	private final int port;
+	// The number of failed steps
+	private int numOfFailures = 0;
+
+	/**
+	 * Creates and returns an instance of the NioFailureCheck class.
+	 *
+	 * @param port
+	 *            the port of the server
+	 */
+	private NioFailureCheck(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * This inner class is used for a server which throws while handling a
+	 * poison chat message.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private static class FaultyServer extends BigTwoServer {
+		/**
+		 * Creates and returns an instance of the FaultyServer class.
+		 */
+		public FaultyServer() {
+			super(true);
+		}
+
+		// overrides method from the CardGameServer class
+		void parseMessage(ClientConnection connection, CardGameMessage message) {
+			if (message.getType() == CardGameMessage.MSG
+					&& POISON.equals(message.getData())) {
+				throw new IllegalStateException("Poison message");
+			}
+			super.parseMessage(connection, message);
+		}
+	} // FaultyServer
+
+	/**
+	 * Opens a connection to the server.
+	 *
+	 * @param timeoutMillis
+	 *            how long to keep retrying while the server is not up
+	 * @return the open socket
+	 * @throws Exception
+	 *             if the connection fails
+	 */
+	private Socket connect(long timeoutMillis) throws Exception {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			try {
+				Socket socket = new Socket("127.0.0.1", port);
+				socket.setSoTimeout(READ_TIMEOUT);
+				return socket;
+			} catch (IOException ex) {
+				if (System.currentTimeMillis() >= deadline) {
+					throw ex;
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	/**
+	 * Joins the game on a new connection.
+	 *
+	 * @param socket
+	 *            the socket of the connection
+	 * @param name
+	 *            the name of the player
+	 * @return true if the player is seated
+	 * @throws IOException
+	 *             if the connection fails
+	 */
+	private boolean join(Socket socket, String name) throws IOException {
+		socket.getOutputStream().write(codec.encode(new CardGameMessage(
+				CardGameMessage.HELLO, -1, BinaryCodec.VERSION)));
+		socket.getOutputStream().write(codec.encode(new CardGameMessage(
+				CardGameMessage.JOIN, -1, name)));
+		return read(socket, CardGameMessage.SESSION) != null;
+	}
+
+	/**
+	 * Reads messages from a connection until one of the specified type
+	 * arrives.
+	 *
+	 * @param socket
+	 *            the socket of the connection
+	 * @param type
+	 *            the type of message awaited
+	 * @return the message, or null if the server closed the connection
+	 * @throws IOException
+	 *             if the message does not arrive in time
+	 */
+	private CardGameMessage read(Socket socket, int type) throws IOException {
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		try {
+			while (true) {
+				CardGameMessage message = codec.read(in);
+				if (message.getType() == type) {
+					return message;
+				}
+			}
+		} catch (EOFException ex) {
+			return null;
+		} catch (SocketException ex) {
+			// reset by the server
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for the server to close a connection.
+	 *
+	 * @param socket
+	 *            the socket of the connection
+	 * @return true if the server closed it
+	 */
+	private boolean isDropped(Socket socket) {
+		try {
+			return read(socket, -1) == null;
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks that B and a newcomer are still served.
+	 *
+	 * @param b
+	 *            the socket of player B
+	 * @param after
+	 *            the description of what has happened
+	 * @throws Exception
+	 *             if the server cannot be reached
+	 */
+	private void checkServed(Socket b, String after) throws Exception {
+		String text = "still there " + after;
+		b.getOutputStream().write(codec.encode(new CardGameMessage(
+				CardGameMessage.MSG, -1, text)));
+		boolean echoed = false;
+		try {
+			CardGameMessage message;
+			while ((message = read(b, CardGameMessage.MSG)) != null) {
+				if (((String) message.getData()).endsWith(text)) {
+					echoed = true;
+					break;
+				}
+			}
+		} catch (IOException ex) {
+			// timed out
+		}
+		expect("B is served " + after, echoed);
+		expect("a newcomer is seated " + after, join(connect(0), "C"));
+	}
+
+	/**
+	 * Prints the outcome of a step.
+	 *
+	 * @param step
+	 *            the description of the step
+	 * @param passed
+	 *            whether the step passed
+	 */
+	private void expect(String step, boolean passed) {
+		System.out.println((passed ? "ok   " : "FAIL ") + step);
+		if (!passed) {
+			numOfFailures++;
+		}
+	}
+
+	/**
+	 * Returns a port that is free at the time of the call.
+	 *
+	 * @return a free port
+	 * @throws IOException
+	 *             if no port can be bound
+	 */
+	private static int freePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		return port;
+	}
+
+	/**
+	 * main() method for running the check. Exits with status 1 if any step
+	 * fails.
+	 *
+	 * @param args
+	 *            not used
+	 * @throws Exception
+	 *             if the server cannot be reached
+	 */
+	public static void main(String[] args) throws Exception {
+		final FaultyServer server = new FaultyServer();
+		server.setTransport(CardGameServer.NIO_TRANSPORT);
+		server.setNumOfIoThreads(1);
+		server.setMaxNumOfRooms(8);
+		final int port = freePort();
+		Thread serverThread = new Thread(() -> server.start(port), "server");
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		NioFailureCheck check = new NioFailureCheck(port);
+		Socket b = check.connect(10000);
+		check.expect("B is seated", check.join(b, "B"));
+
+		Socket poisoned = check.connect(0);
+		check.join(poisoned, "A");
+		poisoned.getOutputStream().write(check.codec.encode(new CardGameMessage(
+				CardGameMessage.MSG, -1, POISON)));
+		check.expect("the client whose message throws is dropped",
+				check.isDropped(poisoned));
+		check.checkServed(b, "after an exception");
+
+		Socket malformed = check.connect(0);
+		// a frame whose length field is negative
+		malformed.getOutputStream().write(new byte[] { (byte) 0xFF,
+				(byte) 0xFF, (byte) 0xFF, (byte) 0xFB, 1, 2, 3 });
+		check.expect("the client sending a malformed frame is dropped",
+				check.isDropped(malformed));
+		check.checkServed(b, "after a malformed frame");
+
+		System.exit(check.numOfFailures == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,449 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class serves the clients of a card game server over non-blocking
+ * channels.
+ * <p>
+ * Connections are accepted by the thread that calls run() and handed out in
+ * turn to a fixed number of I/O threads. Each I/O thread owns a Selector and
+ * does all the reads, writes and closes of its connections, so a connection
+ * costs a read buffer rather than a thread. Other threads talk to an I/O
+ * thread by queueing tasks and waking up its selector.
+ * <p>
+ * An unchecked exception while serving a connection drops that connection
+ * only; the I/O thread logs it and goes on serving the others.
+ *
+ * @author chanyuyan
+ *
+ */
+public class NioTransport {
+	// The initial size of the read buffer of a connection
+	private static final int READ_BUFFER_SIZE = 1024;
+	// The maximum number of frames gathered into one write
+	private static final int MAX_FRAMES_PER_WRITE = 16;
+
+	// The server whose clients are served
+	private final CardGameServer server;
+	// The I/O threads
+	private final IoThread[] ioThreads;
+	// The channel accepting new connections
+	private ServerSocketChannel serverChannel;
+	// The I/O thread to which the next connection is handed
+	private int nextIoThread;
+
+	/**
+	 * Creates and returns an instance of the NioTransport class.
+	 *
+	 * @param server
+	 *            the server whose clients are served
+	 * @param numOfIoThreads
+	 *            the number of I/O threads
+	 * @throws IOException
+	 *             if a selector cannot be opened
+	 */
+	public NioTransport(CardGameServer server, int numOfIoThreads)
+			throws IOException {
+		this.server = server;
+		this.ioThreads = new IoThread[numOfIoThreads];
+		for (int i = 0; i < numOfIoThreads; i++) {
+			ioThreads[i] = new IoThread("NioTransport I/O " + i);
+		}
+	}
+
+	/**
+	 * Binds the transport to the specified port.
+	 *
+	 * @param port
+	 *            the port, or 0 for any free port
+	 * @return the local port
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public int bind(int port) throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port), 1024);
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Starts the I/O threads and accepts connections until the channel is
+	 * closed.
+	 *
+	 * @throws IOException
+	 *             if accepting fails
+	 */
+	public void run() throws IOException {
+		for (IoThread ioThread : ioThreads) {
+			ioThread.start();
+		}
+		while (serverChannel.isOpen()) {
+			SocketChannel channel = serverChannel.accept();
+			try {
+				channel.configureBlocking(false);
+				server.configureSocket(channel.socket());
+			} catch (IOException ex) {
+				channel.close();
+				continue;
+			}
+			IoThread ioThread = ioThreads[nextIoThread];
+			nextIoThread = (nextIoThread + 1) % ioThreads.length;
+			NioConnection connection = new NioConnection(channel, ioThread);
+			connection.execute(connection::register);
+			server.addConnection(connection);
+		}
+	}
+
+	/**
+	 * Stops accepting connections and stops the I/O threads.
+	 */
+	public void close() {
+		try {
+			serverChannel.close();
+		} catch (IOException ex) {
+			server.println("Error in closing the server channel", ex);
+		}
+		for (IoThread ioThread : ioThreads) {
+			ioThread.interrupt();
+			ioThread.selector.wakeup();
+		}
+	}
+
+	/**
+	 * This inner class is used for an I/O thread, which waits on a selector
+	 * for its connections and runs the tasks queued by other threads.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private class IoThread extends Thread {
+		// The selector of the connections of this thread
+		private final Selector selector;
+		// The tasks queued by other threads
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+		/**
+		 * Creates and returns an instance of the IoThread class.
+		 *
+		 * @param name
+		 *            the name of the thread
+		 * @throws IOException
+		 *             if the selector cannot be opened
+		 */
+		public IoThread(String name) throws IOException {
+			super(name);
+			setDaemon(true);
+			selector = Selector.open();
+		}
+
+		/**
+		 * Queues a task to be run by this thread.
+		 *
+		 * @param task
+		 *            the task to be run
+		 */
+		public void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		// overrides method from the Thread class
+		public void run() {
+			while (!isInterrupted()) {
+				try {
+					selector.select();
+				} catch (IOException ex) {
+					server.println("Error in selecting on " + getName()
+							+ "; stops serving its connections", ex);
+					return;
+				}
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					try {
+						task.run();
+					} catch (RuntimeException ex) {
+						server.println("Error in running a task on " + getName(),
+								ex);
+					}
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					NioConnection connection = (NioConnection) key.attachment();
+					try {
+						if (key.isValid() && key.isWritable()) {
+							connection.flush();
+						}
+						if (key.isValid() && key.isReadable()) {
+							connection.read();
+						}
+					} catch (RuntimeException ex) {
+						connection.fail(ex);
+					}
+				}
+			}
+		}
+	} // IoThread
+
+	/**
+	 * This inner class is used to represent a connection served by the NIO
+	 * transport. Only its I/O thread touches the channel and the read buffer;
+	 * frames sent by other threads wait in a queue.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private class NioConnection extends ClientConnection {
+		// The channel to the client
+		private final SocketChannel channel;
+		// The I/O thread of this connection
+		private final IoThread ioThread;
+		// The frames being written, which the socket has only partly taken
+		private final ByteBuffer[] pending = new ByteBuffer[MAX_FRAMES_PER_WRITE];
+		// The index of the first frame in pending not yet fully written
+		private int pendingOffset;
+		// The number of frames in pending
+		private int pendingCount;
+		// Whether the connection has been closed
+		private final AtomicBoolean closed = new AtomicBoolean();
+		// The bytes read but not yet decoded, in write mode
+		private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		// The key of the channel, set on the I/O thread
+		private SelectionKey key;
+
+		/**
+		 * Creates and returns an instance of the NioConnection class.
+		 *
+		 * @param channel
+		 *            the channel to the client
+		 * @param ioThread
+		 *            the I/O thread of this connection
+		 * @throws IOException
+		 *             if the address of the client cannot be obtained
+		 */
+		public NioConnection(SocketChannel channel, IoThread ioThread)
+				throws IOException {
+			super(server, channel.getRemoteAddress());
+			this.channel = channel;
+			this.ioThread = ioThread;
+		}
+
+		/**
+		 * Registers the channel with the selector of the I/O thread, without
+		 * any interest yet. Runs on the I/O thread.
+		 */
+		private void register() {
+			try {
+				key = channel.register(ioThread.selector, 0, this);
+			} catch (IOException ex) {
+				fail();
+			}
+		}
+
+		/**
+		 * Queues a task of this connection to be run by its I/O thread. An
+		 * unchecked exception thrown by the task drops this connection.
+		 *
+		 * @param task
+		 *            the task to be run
+		 */
+		private void execute(Runnable task) {
+			ioThread.execute(() -> {
+				try {
+					task.run();
+				} catch (RuntimeException ex) {
+					fail(ex);
+				}
+			});
+		}
+
+		// implementation of method from the ClientConnection class
+		protected void startWriter() {
+			execute(this::flush);
+		}
+
+		// implementation of method from the ClientConnection class
+		public void startReading() {
+			execute(() -> interest(SelectionKey.OP_READ, true));
+		}
+
+		// implementation of method from the ClientConnection class
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				execute(() -> {
+					if (key != null) {
+						key.cancel();
+					}
+					try {
+						channel.close();
+					} catch (IOException ex) {
+						server.println("Error in closing the connection to "
+								+ getRemoteSocketAddress(), ex);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Writes as many queued frames as the socket takes, gathering up to
+		 * MAX_FRAMES_PER_WRITE frames into each write, and asks the selector
+		 * for OP_WRITE if some are left. This is the writer task of the
+		 * connection, and runs on the I/O thread.
+		 */
+		private void flush() {
+			if (key == null || !key.isValid()) {
+				return;
+			}
+			try {
+				while (true) {
+					if (pendingOffset == pendingCount) {
+						pendingOffset = 0;
+						pendingCount = 0;
+						byte[] frame;
+						while (pendingCount < MAX_FRAMES_PER_WRITE
+								&& (frame = pollFrame()) != null) {
+							// each connection gets its own position over the
+							// shared bytes
+							pending[pendingCount++] = ByteBuffer.wrap(frame);
+						}
+						if (pendingCount == 0) {
+							// the next frame queued starts the writer again
+							interest(SelectionKey.OP_WRITE, false);
+							return;
+						}
+					}
+					server.countBytesSent(channel.write(pending, pendingOffset,
+							pendingCount - pendingOffset));
+					server.countSocketWrite();
+					while (pendingOffset < pendingCount
+							&& !pending[pendingOffset].hasRemaining()) {
+						pending[pendingOffset++] = null;
+					}
+					if (pendingOffset < pendingCount) {
+						// the socket buffer is full
+						interest(SelectionKey.OP_WRITE, true);
+						return;
+					}
+				}
+			} catch (IOException ex) {
+				fail();
+			}
+		}
+
+		/**
+		 * Reads what the channel has, and passes every complete frame to the
+		 * server. Runs on the I/O thread.
+		 */
+		private void read() {
+			try {
+				if (channel.read(readBuffer) < 0) {
+					throw new IOException("Connection closed by the client");
+				}
+				readBuffer.flip();
+				while (readBuffer.remaining() >= MessageCodec.HEADER_LENGTH) {
+					int position = readBuffer.position();
+					int length = readBuffer.getInt(position);
+					MessageCodec.checkLength(length);
+					int frameLength = MessageCodec.HEADER_LENGTH + length;
+					if (readBuffer.remaining() < frameLength) {
+						if (readBuffer.capacity() < frameLength) {
+							// makes room for the rest of the frame
+							ByteBuffer larger = ByteBuffer.allocate(frameLength);
+							larger.put(readBuffer);
+							readBuffer = larger;
+							return;
+						}
+						break;
+					}
+					CardGameMessage message = decode(readBuffer.array(),
+							readBuffer.arrayOffset() + position
+									+ MessageCodec.HEADER_LENGTH, length);
+					readBuffer.position(position + frameLength);
+					server.getMetrics().countBytesReceived(frameLength);
+					server.parseMessage(this, message);
+				}
+				if (readBuffer.capacity() > READ_BUFFER_SIZE
+						&& pendingFrameLength() <= READ_BUFFER_SIZE) {
+					// gives back the room taken by a large frame once it has
+					// been consumed
+					ByteBuffer smaller = ByteBuffer.allocate(READ_BUFFER_SIZE);
+					smaller.put(readBuffer);
+					readBuffer = smaller;
+				} else {
+					readBuffer.compact();
+				}
+			} catch (IOException ex) {
+				fail();
+			}
+		}
+
+		/**
+		 * Returns the room needed by the bytes left in the read buffer: the
+		 * length of the frame they start once its header has arrived, or the
+		 * number of bytes left otherwise.
+		 *
+		 * @return the number of bytes the read buffer must hold
+		 */
+		private int pendingFrameLength() {
+			if (readBuffer.remaining() < MessageCodec.HEADER_LENGTH) {
+				return readBuffer.remaining();
+			}
+			return MessageCodec.HEADER_LENGTH
+					+ readBuffer.getInt(readBuffer.position());
+		}
+
+		/**
+		 * Adds or removes an operation from the interest set of the channel.
+		 *
+		 * @param op
+		 *            the operation
+		 * @param on
+		 *            true to add it, false to remove it
+		 */
+		private void interest(int op, boolean on) {
+			if (key != null && key.isValid()) {
+				int ops = key.interestOps();
+				key.interestOps(on ? ops | op : ops & ~op);
+			}
+		}
+
+		/**
+		 * Removes a connection whose channel has failed or been closed by the
+		 * client.
+		 */
+		private void fail() {
+			if (!closed.get()) {
+				server.removeConnection(this);
+			}
+			close();
+		}
+
+		/**
+		 * Logs an unchecked exception thrown while serving this connection,
+		 * and removes the connection. Runs on the I/O thread.
+		 *
+		 * @param ex
+		 *            the exception
+		 */
+		private void fail(RuntimeException ex) {
+			server.println("Error in serving the client at "
+					+ getRemoteSocketAddress() + "; drops the client", ex);
+			try {
+				fail();
+			} catch (RuntimeException again) {
+				server.println("Error in dropping the client at "
+						+ getRemoteSocketAddress(), again);
+			}
+		}
+	} // NioConnection
+}
@@ -35,37 +35,6 @@ public class Quad extends Hand{
 		return null;
 	}
 	
-	/**
-	 * Overrides the beat method in Hand.
-	 * Determines if this quad hand beats the specified hand.
-	 * 
-	 * @param hand the specified hand
-	 * @return whether this Quad hand beats the specified hand
-	 * @see Hand#beats(Hand)
-	 */
-	public boolean beats(Hand hand) {
-		this.sort();
-		hand.sort();
-		if (this.size() != hand.size()) {
-			return false;
-		} 
-		
-		if (this.getType() == hand.getType()) {
-			if (this.getTopCard().compareTo(hand.getTopCard()) == 1) {
-				return true;
-			} else {
-				return false;
-			}
-		} else {
-			// The only other hand of 5 that can beat Quad is StraightFlush
-			if (hand.getType() == "StraightFlush") {
-				return false;
-			} else {
-				return true;
-			}
-		}
-	}
-	
 	/**
 	 * Determines if this is a valid Quad hand.
 	 * 
@@ -0,0 +1,31 @@
+import java.util.Random;
+
+/**
+ * This class implements a strategy that picks one of the legal moves at
+ * random, passes included.
+ * 
+ * @author chanyuyan
+ *
+ */
+public class RandomStrategy implements BigTwoStrategy {
+
+	/**
+	 * Chooses a legal move uniformly at random.
+	 * 
+	 * @see BigTwoStrategy#chooseMove(BigTwoEngine, int, MoveList, Random)
+	 */
+	@Override
+	public int chooseMove(BigTwoEngine engine, int playerID, MoveList moves,
+			Random random) {
+		return random.nextInt(moves.size());
+	}
+
+	/**
+	 * Returns the name of this strategy.
+	 * 
+	 * @return the name of this strategy
+	 */
+	public String toString() {
+		return "Random";
+	}
+}
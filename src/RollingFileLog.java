@@ -0,0 +1,167 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This class is used to write the lines of a ServerLog to a file which rolls
+ * over at a maximum size. When the file is full, it is renamed with the
+ * suffix ".1", the older files move up by one, and the oldest beyond the
+ * number kept is deleted, so the log takes bounded disk space however long
+ * the server runs.
+ *
+ * @author chanyuyan
+ *
+ */
+public class RollingFileLog implements LogSubscriber {
+	// The line separator of the file
+	private static final byte[] NEW_LINE = System.lineSeparator().getBytes(
+			StandardCharsets.UTF_8);
+
+	// The file being written
+	private final File file;
+	// The size at which the file rolls over, in bytes
+	private final long maxFileSize;
+	// The number of rolled-over files kept
+	private final int maxBackups;
+	// The buffered stream to the file, or null if it cannot be written
+	private OutputStream out;
+	// The size of the file, in bytes
+	private long size;
+
+	/**
+	 * Opens a log file for appending.
+	 *
+	 * @param file
+	 *            the file
+	 * @param maxFileSize
+	 *            the size at which the file rolls over, in bytes
+	 * @param maxBackups
+	 *            the number of rolled-over files kept, at least 0
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public RollingFileLog(File file, long maxFileSize, int maxBackups)
+			throws IOException {
+		if (maxFileSize < 1 || maxBackups < 0) {
+			throw new IllegalArgumentException("Invalid size or number of backups");
+		}
+		this.file = file;
+		this.maxFileSize = maxFileSize;
+		this.maxBackups = maxBackups;
+		open();
+	}
+
+	/**
+	 * Opens the file for appending.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	private void open() throws IOException {
+		out = new BufferedOutputStream(new FileOutputStream(file, true));
+		size = file.length();
+	}
+
+	// implementation of method from the LogSubscriber interface
+	public void write(String line) {
+		if (out == null) {
+			return;
+		}
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		try {
+			if (size > 0 && size + bytes.length + NEW_LINE.length > maxFileSize) {
+				roll();
+			}
+			out.write(bytes);
+			out.write(NEW_LINE);
+			size += bytes.length + NEW_LINE.length;
+		} catch (IOException ex) {
+			fail(ex);
+		}
+	}
+
+	/**
+	 * Closes the file, moves it and its older copies up by one suffix, and
+	 * opens a new file.
+	 *
+	 * @throws IOException
+	 *             if a file cannot be closed, moved or opened
+	 */
+	private void roll() throws IOException {
+		out.close();
+		if (maxBackups == 0) {
+			Files.delete(file.toPath());
+		} else {
+			for (int i = maxBackups - 1; i >= 1; i--) {
+				File older = backup(i);
+				if (older.exists()) {
+					Files.move(older.toPath(), backup(i + 1).toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			Files.move(file.toPath(), backup(1).toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		open();
+	}
+
+	/**
+	 * Returns a rolled-over file.
+	 *
+	 * @param index
+	 *            the number of the file, 1 for the newest
+	 * @return the file
+	 */
+	private File backup(int index) {
+		return new File(file.getPath() + "." + index);
+	}
+
+	// implementation of method from the LogSubscriber interface
+	public void flush() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.flush();
+		} catch (IOException ex) {
+			fail(ex);
+		}
+	}
+
+	// implementation of method from the LogSubscriber interface
+	public void close() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+		out = null;
+	}
+
+	/**
+	 * Stops writing to a file which has failed, so that a full disk does not
+	 * produce an error for every line.
+	 *
+	 * @param ex
+	 *            the error
+	 */
+	private void fail(IOException ex) {
+		System.err.println("Stops writing the log to " + file + ": " + ex);
+		try {
+			if (out != null) {
+				out.close();
+			}
+		} catch (IOException closeEx) {
+			// the stream is discarded anyway
+		}
+		out = null;
+	}
+}
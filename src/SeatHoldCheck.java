@@ -0,0 +1,238 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * This class checks that a seat held for a player who has lost the
+ * connection is not given to a newcomer, over real sockets.
+ * <p>
+ * A server with a single room is started in this JVM. Players A and B join,
+ * and A's socket is closed, so that the room holds seat 0 for A's session.
+ * Player C then joins and must get seat 2. A resumes its session on a new
+ * connection and must get seat 0 back. D takes the last seat, and E must be
+ * turned away with a FULL message, which shows the room counts exactly four
+ * seats taken. The check runs on each transport.
+ *
+ * @author chanyuyan
+ *
+ */
+public class SeatHoldCheck {
+	// The transports checked when none are given
+	private static final String[] TRANSPORTS = { "blocking", "nio" };
+	// How long to wait for a message from the server, in ms
+	private static final int READ_TIMEOUT = 5000;
+
+	// The codec of every client
+	private final MessageCodec codec = new BinaryCodec();
+	// The port of the server
+	private final int port;
+	// The number of failed steps
+	private int numOfFailures = 0;
+
+	/**
+	 * Creates and returns an instance of the SeatHoldCheck class.
+	 *
+	 * @param port
+	 *            the port of the server
+	 */
+	private SeatHoldCheck(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Runs the check against a new server using the specified transport.
+	 *
+	 * @param transport
+	 *            "blocking" or "nio"
+	 * @return the number of failed steps
+	 * @throws Exception
+	 *             if the server cannot be reached
+	 */
+	private static int run(String transport) throws Exception {
+		final BigTwoServer server = new BigTwoServer(true);
+		if (transport.equals("nio")) {
+			server.setTransport(CardGameServer.NIO_TRANSPORT);
+		} else if (!transport.equals("blocking")) {
+			throw new IllegalArgumentException("Unknown transport: " + transport);
+		}
+		server.setMaxNumOfRooms(1);
+		server.setSessionGracePeriod(60000);
+		final int port = freePort();
+		Thread serverThread = new Thread(() -> server.start(port), "server");
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		SeatHoldCheck check = new SeatHoldCheck(port);
+		Socket a = check.connect(10000);
+		check.expect(transport + ": A is seated at 0", 0, check.join(a, "A"));
+		String token = (String) check.read(a, CardGameMessage.SESSION).getData();
+		Socket b = check.connect(0);
+		check.expect(transport + ": B is seated at 1", 1, check.join(b, "B"));
+
+		a.close();
+		// B hears of the loss once the room holds the seat
+		while (true) {
+			CardGameMessage message = check.read(b, CardGameMessage.MSG);
+			if (((String) message.getData()).contains("lost the connection")) {
+				break;
+			}
+		}
+
+		Socket c = check.connect(0);
+		check.expect(transport + ": C skips the held seat", 2, check.join(c, "C"));
+
+		Socket resumed = check.connect(0);
+		check.hello(resumed);
+		resumed.getOutputStream().write(check.codec.encode(new CardGameMessage(
+				CardGameMessage.RESUME, -1, token)));
+		check.expect(transport + ": A resumes at 0", 0,
+				check.read(resumed, CardGameMessage.SNAPSHOT).getPlayerID());
+
+		Socket d = check.connect(0);
+		check.expect(transport + ": D is seated at 3", 3, check.join(d, "D"));
+
+		Socket e = check.connect(0);
+		check.hello(e);
+		e.getOutputStream().write(check.codec.encode(new CardGameMessage(
+				CardGameMessage.JOIN, -1, "E")));
+		check.expect(transport + ": E finds the room full", CardGameMessage.FULL,
+				check.read(e, -1).getType());
+
+		return check.numOfFailures;
+	}
+
+	/**
+	 * Opens a connection to the server.
+	 *
+	 * @param timeoutMillis
+	 *            how long to keep retrying while the server is not up
+	 * @return the open socket
+	 * @throws Exception
+	 *             if the connection fails
+	 */
+	private Socket connect(long timeoutMillis) throws Exception {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			try {
+				Socket socket = new Socket("127.0.0.1", port);
+				socket.setSoTimeout(READ_TIMEOUT);
+				return socket;
+			} catch (IOException ex) {
+				if (System.currentTimeMillis() >= deadline) {
+					throw ex;
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	/**
+	 * Chooses the binary codec for a connection and waits for the answer.
+	 *
+	 * @param socket
+	 *            the socket of the connection
+	 * @throws IOException
+	 *             if the connection fails
+	 */
+	private void hello(Socket socket) throws IOException {
+		socket.getOutputStream().write(codec.encode(new CardGameMessage(
+				CardGameMessage.HELLO, -1, BinaryCodec.VERSION)));
+		read(socket, CardGameMessage.HELLO);
+	}
+
+	/**
+	 * Joins the game on a new connection.
+	 *
+	 * @param socket
+	 *            the socket of the connection
+	 * @param name
+	 *            the name of the player
+	 * @return the seat given to the player
+	 * @throws IOException
+	 *             if the connection fails
+	 */
+	private int join(Socket socket, String name) throws IOException {
+		hello(socket);
+		socket.getOutputStream().write(codec.encode(new CardGameMessage(
+				CardGameMessage.JOIN, -1, name)));
+		return read(socket, CardGameMessage.PLAYER_LIST).getPlayerID();
+	}
+
+	/**
+	 * Reads messages from a connection until one of the specified type
+	 * arrives. PING messages are skipped whatever the type.
+	 *
+	 * @param socket
+	 *            the socket of the connection
+	 * @param type
+	 *            the type of message awaited, or -1 for the next message
+	 * @return the message
+	 * @throws IOException
+	 *             if the connection fails or the message does not arrive in
+	 *             time
+	 */
+	private CardGameMessage read(Socket socket, int type) throws IOException {
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		while (true) {
+			CardGameMessage message = codec.read(in);
+			if (message.getType() == type
+					|| (type < 0 && message.getType() != CardGameMessage.PING)) {
+				return message;
+			}
+		}
+	}
+
+	/**
+	 * Prints the outcome of a step.
+	 *
+	 * @param step
+	 *            the description of the step
+	 * @param expected
+	 *            the value expected
+	 * @param actual
+	 *            the value found
+	 */
+	private void expect(String step, int expected, int actual) {
+		if (expected == actual) {
+			System.out.println("ok   " + step);
+		} else {
+			System.out.println("FAIL " + step + ": expected " + expected
+					+ ", got " + actual);
+			numOfFailures++;
+		}
+	}
+
+	/**
+	 * Returns a port that is free at the time of the call.
+	 *
+	 * @return a free port
+	 * @throws IOException
+	 *             if no port can be bound
+	 */
+	private static int freePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		return port;
+	}
+
+	/**
+	 * main() method for running the check. Exits with status 1 if any step
+	 * fails.
+	 *
+	 * @param args
+	 *            the transports to be checked, "blocking" or "nio" (default:
+	 *            both)
+	 * @throws Exception
+	 *             if the server cannot be reached
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] transports = args.length > 0 ? args : TRANSPORTS;
+		int numOfFailures = 0;
+		for (String transport : transports) {
+			numOfFailures += run(transport);
+		}
+		System.exit(numOfFailures == 0 ? 0 : 1);
+	}
+}
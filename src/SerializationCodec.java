@@ -0,0 +1,100 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class encodes each card game message as a Java-serialized object.
+ * Every frame holds a complete serialization stream, so frames can be
+ * decoded independently of each other.
+ * <p>
+ * Decoding only resolves the classes a card game message can carry, and
+ * bounds the depth, array lengths and number of objects of the stream, so a
+ * peer cannot make the codec build arbitrary objects.
+ * 
+ * @author chanyuyan
+ *
+ */
+public class SerializationCodec extends MessageCodec {
+	// The deepest nesting of objects a message needs
+	private static final long MAX_DEPTH = 8;
+	// The longest array a message needs: the names or chat of a snapshot
+	private static final long MAX_ARRAY_LENGTH = 1024;
+	// The most objects and references a message needs
+	private static final long MAX_REFERENCES = 4096;
+
+	// The classes that may appear in a serialized message
+	private static final Set<Class<?>> ALLOWED_CLASSES = new HashSet<Class<?>>(
+			Arrays.asList(CardGameMessage.class, GameMessage.class,
+					Card.class, BigTwoCard.class, CardList.class, Deck.class,
+					BigTwoDeck.class, CardSet.class, GameSnapshot.class,
+					String.class, Integer.class, Number.class,
+					ArrayList.class, Object.class));
+
+	// Rejects any class or stream shape that is not part of a message
+	private static final ObjectInputFilter FILTER = info -> {
+		if (info.depth() > MAX_DEPTH || info.arrayLength() > MAX_ARRAY_LENGTH
+				|| info.references() > MAX_REFERENCES
+				|| info.streamBytes() > MAX_PAYLOAD_LENGTH) {
+			return ObjectInputFilter.Status.REJECTED;
+		}
+		Class<?> c = info.serialClass();
+		if (c == null) {
+			return ObjectInputFilter.Status.UNDECIDED;
+		}
+		while (c.isArray()) {
+			c = c.getComponentType();
+		}
+		return c.isPrimitive() || ALLOWED_CLASSES.contains(c)
+				? ObjectInputFilter.Status.ALLOWED
+				: ObjectInputFilter.Status.REJECTED;
+	};
+
+	/**
+	 * Encodes the specified message as a frame holding its serialized form.
+	 * 
+	 * @see MessageCodec#encode(CardGameMessage)
+	 */
+	@Override
+	public byte[] encode(CardGameMessage message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		// reserves the length field
+		bytes.write(new byte[HEADER_LENGTH]);
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(message);
+		oos.close();
+		return writeHeader(bytes.toByteArray());
+	}
+
+	/**
+	 * Decodes a frame holding a serialized message. A stream holding any
+	 * class other than those of a message is rejected before that class is
+	 * instantiated.
+	 * 
+	 * @see MessageCodec#decode(byte[], int, int)
+	 */
+	@Override
+	public CardGameMessage decode(byte[] payload, int offset, int length)
+			throws IOException {
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
+				payload, offset, length));
+		ois.setObjectInputFilter(FILTER);
+		try {
+			Object message = ois.readObject();
+			if (!(message instanceof CardGameMessage)) {
+				throw new InvalidObjectException("Not a CardGameMessage: "
+						+ message);
+			}
+			return (CardGameMessage) message;
+		} catch (ClassNotFoundException ex) {
+			throw new InvalidObjectException(ex.toString());
+		}
+	}
+}
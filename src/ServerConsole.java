@@ -0,0 +1,147 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JFrame;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+
+/**
+ * This class is used for the window showing the log of a card game server.
+ * It subscribes to the ServerLog of the server, gathers the lines the writer
+ * of the log hands it, and appends them to its text area on the Swing event
+ * dispatch thread once per drain of the log. The text area keeps the last
+ * MAX_LINES lines only.
+ *
+ * @author chanyuyan
+ *
+ */
+public class ServerConsole implements LogSubscriber {
+	// The number of lines kept in the text area
+	private static final int MAX_LINES = 1000;
+
+	// the main frame of the server
+	private JFrame frame = null;
+	// text area for displaying server states
+	private JTextArea textArea = null;
+	// The lines taken since the last flush, used by the writer of the log only
+	private StringBuilder pending = new StringBuilder();
+
+	/**
+	 * Creates the window, on the Swing event dispatch thread.
+	 *
+	 * @param title
+	 *            the title of the window, the name of the server
+	 */
+	public ServerConsole(final String title) {
+		SwingUtilities.invokeLater(() -> buildGUI(title));
+	}
+
+	/**
+	 * Builds the GUI for the server
+	 *
+	 * @param title
+	 *            the title of the window
+	 */
+	private void buildGUI(String title) {
+		// build a GUI
+		frame = new JFrame(title);
+		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		textArea = new JTextArea(20, 40);
+		textArea.setEditable(false);
+		textArea.setLineWrap(true);
+		textArea.setWrapStyleWord(true);
+		JScrollPane scroller = new JScrollPane(textArea);
+		scroller.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
+		scroller.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+		frame.add(scroller);
+
+		// build the menu bar
+		JMenuItem clearMenuItem = new JMenuItem("Clear console");
+		clearMenuItem.addActionListener(new ClearMenuItemListener());
+		JMenuItem quitMenuItem = new JMenuItem("Quit");
+		quitMenuItem.addActionListener(new QuitMenuItemListener());
+		JMenu menu = new JMenu("Option");
+		menu.add(clearMenuItem);
+		menu.add(quitMenuItem);
+		JMenuBar menuBar = new JMenuBar();
+		menuBar.add(menu);
+		frame.setJMenuBar(menuBar);
+
+		frame.pack();
+		frame.setVisible(true);
+	} // buildGUI
+
+	// implementation of method from the LogSubscriber interface
+	public void write(String line) {
+		pending.append(line).append('\n');
+	}
+
+	// implementation of method from the LogSubscriber interface
+	public void flush() {
+		if (pending.length() == 0) {
+			return;
+		}
+		final String text = pending.toString();
+		pending = new StringBuilder();
+		SwingUtilities.invokeLater(() -> append(text));
+	}
+
+	// implementation of method from the LogSubscriber interface
+	public void close() {
+		// the window stays open until the user quits
+	}
+
+	/**
+	 * Appends lines to the text area, dropping the oldest lines beyond
+	 * MAX_LINES. Runs on the event dispatch thread.
+	 *
+	 * @param text
+	 *            the lines, each ended by a line feed
+	 */
+	private void append(String text) {
+		if (textArea == null) {
+			return;
+		}
+		textArea.append(text);
+		int excess = textArea.getLineCount() - 1 - MAX_LINES;
+		if (excess > 0) {
+			try {
+				textArea.replaceRange("", 0, textArea.getLineStartOffset(excess));
+			} catch (BadLocationException ex) {
+				textArea.setText("");
+			}
+		}
+		textArea.setCaretPosition(textArea.getDocument().getLength());
+	}
+
+	/**
+	 * This inner class is used for handling the Clear menu
+	 *
+	 * @author Kenneth Wong
+	 *
+	 */
+	private class ClearMenuItemListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			textArea.setText("");
+		}
+	} // ClearMenuItemListener
+
+	/**
+	 * This inner class is used for handling the Quit menu
+	 *
+	 * @author Kenneth Wong
+	 *
+	 */
+	private class QuitMenuItemListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			frame.dispose();
+			System.exit(0);
+		}
+	} // QuitMenuItemListener
+}
@@ -0,0 +1,258 @@
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is used for the log of a card game server. Logging never blocks
+ * and never does I/O on the calling thread: a message goes into a bounded
+ * ring buffer, and a writer thread drains the buffer to the subscribers,
+ * such as a RollingFileLog or a ServerConsole.
+ * <p>
+ * The ring buffer takes messages from any number of threads without locks.
+ * Each slot carries a sequence number which tells a thread logging whether
+ * the slot is free, and the writer whether it has been filled. When the
+ * writer falls behind and the buffer is full, new messages are dropped and
+ * counted rather than held, and the number dropped is logged once the
+ * writer catches up.
+ *
+ * @author chanyuyan
+ *
+ */
+public class ServerLog {
+	// How long the writer sleeps when the buffer is empty, in nanoseconds
+	private static final long DRAIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+	// The format of the time stamp of a line
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter
+			.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+	// The mask giving the slot of a position, as the capacity is a power of 2
+	private final int mask;
+	// The messages in the slots
+	private final String[] messages;
+	// The times of the messages in the slots, in ms since the epoch
+	private final long[] times;
+	// The sequence number of each slot: its position when free, and its
+	// position plus 1 when filled
+	private final AtomicLongArray sequences;
+	// The position of the next slot to be claimed by a thread logging
+	private final AtomicLong tail = new AtomicLong();
+	// The position of the next slot to be drained, used by the writer only
+	private long head;
+	// The number of messages dropped because the buffer was full
+	private final LongAdder dropped = new LongAdder();
+	// The number of dropped messages already reported, used by the writer only
+	private long droppedReported;
+	// The sinks of the log
+	private final CopyOnWriteArrayList<LogSubscriber> subscribers = new CopyOnWriteArrayList<LogSubscriber>();
+	// The thread draining the buffer
+	private final Thread writer;
+	// Whether the log has been closed
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a log with a buffer of the specified capacity, and starts its
+	 * writer thread.
+	 *
+	 * @param capacity
+	 *            the number of messages the buffer holds, rounded up to a
+	 *            power of 2
+	 */
+	public ServerLog(int capacity) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("The capacity must be at least 2");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		messages = new String[size];
+		times = new long[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		writer = new Thread(this::drainLoop, "ServerLog writer");
+		writer.setDaemon(true);
+		writer.start();
+		// writes out what is left when the JVM exits
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close,
+				"ServerLog shutdown"));
+	}
+
+	/**
+	 * Adds a sink to which the lines of the log are written from now on.
+	 *
+	 * @param subscriber
+	 *            the sink
+	 */
+	public void addSubscriber(LogSubscriber subscriber) {
+		subscribers.add(subscriber);
+	}
+
+	/**
+	 * Logs a message followed by the stack trace of an exception. Returns at
+	 * once; the message is dropped if the buffer is full.
+	 *
+	 * @param msg
+	 *            the message
+	 * @param ex
+	 *            the exception
+	 */
+	public void log(String msg, Throwable ex) {
+		StringWriter trace = new StringWriter();
+		ex.printStackTrace(new PrintWriter(trace));
+		log(msg + System.lineSeparator() + trace.toString().trim());
+	}
+
+	/**
+	 * Logs a message. Returns at once; the message is dropped if the buffer
+	 * is full.
+	 *
+	 * @param msg
+	 *            the message
+	 */
+	public void log(String msg) {
+		long position;
+		int slot;
+		while (true) {
+			position = tail.get();
+			slot = (int) position & mask;
+			long difference = sequences.get(slot) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+			} else if (difference < 0) {
+				// the writer has not drained this slot yet
+				dropped.increment();
+				return;
+			}
+			// another thread has claimed the slot; tries the next one
+		}
+		messages[slot] = msg;
+		times[slot] = System.currentTimeMillis();
+		// publishes the slot to the writer
+		sequences.set(slot, position + 1);
+	}
+
+	/**
+	 * Returns the number of messages dropped because the buffer was full.
+	 *
+	 * @return the number of messages dropped
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Drains the buffer until the log is closed and empty. Runs on the
+	 * writer thread.
+	 */
+	private void drainLoop() {
+		boolean written = false;
+		while (true) {
+			if (drain()) {
+				written = true;
+				continue;
+			}
+			if (written) {
+				for (LogSubscriber subscriber : subscribers) {
+					try {
+						subscriber.flush();
+					} catch (RuntimeException ex) {
+						ex.printStackTrace();
+					}
+				}
+				written = false;
+			}
+			if (closed) {
+				break;
+			}
+			LockSupport.parkNanos(this, DRAIN_INTERVAL);
+		}
+		for (LogSubscriber subscriber : subscribers) {
+			try {
+				subscriber.close();
+			} catch (RuntimeException ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Writes the next message of the buffer to the subscribers, preceded by
+	 * the number of messages dropped since the last report, if any. Runs on
+	 * the writer thread.
+	 *
+	 * @return true if a message was written; false if the buffer was empty
+	 */
+	private boolean drain() {
+		int slot = (int) head & mask;
+		if (sequences.get(slot) != head + 1) {
+			return false;
+		}
+		String msg = messages[slot];
+		long time = times[slot];
+		messages[slot] = null;
+		// frees the slot for the next round of the buffer
+		sequences.set(slot, head + mask + 1);
+		head++;
+
+		long numOfDropped = dropped.sum();
+		if (numOfDropped > droppedReported) {
+			publish(time, (numOfDropped - droppedReported)
+					+ " log messages dropped: the log fell behind");
+			droppedReported = numOfDropped;
+		}
+		publish(time, msg);
+		return true;
+	}
+
+	/**
+	 * Writes a line to every subscriber. Runs on the writer thread.
+	 *
+	 * @param time
+	 *            the time of the message, in ms since the epoch
+	 * @param msg
+	 *            the message
+	 */
+	private void publish(long time, String msg) {
+		String line = TIME_FORMAT.format(Instant.ofEpochMilli(time)) + " " + msg;
+		for (LogSubscriber subscriber : subscribers) {
+			try {
+				subscriber.write(line);
+			} catch (RuntimeException ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Closes the log: the messages logged so far are written, and the
+	 * subscribers are flushed and closed. Messages logged afterwards may be
+	 * lost.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		LockSupport.unpark(writer);
+		if (Thread.currentThread() != writer) {
+			try {
+				writer.join(TimeUnit.SECONDS.toMillis(5));
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,565 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class is used to keep the metrics of a card game server, and to
+ * publish them through JMX and a plain-text HTTP endpoint.
+ * <p>
+ * The counters are updated by the threads reading, handling and writing
+ * messages, and cost a LongAdder update each. The counters the server
+ * already kept for its outbound queues and writes are read from the server.
+ * The HTTP endpoint is bound to the loopback address only, so the metrics
+ * are not exposed to the clients; a scraper on the same host reads them at
+ * /metrics, one "name{labels} value" line per metric.
+ *
+ * @author chanyuyan
+ *
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+	// The names of the message types, indexed by type
+	private static final String[] TYPE_NAMES = { "PLAYER_LIST", "JOIN", "FULL",
+			"QUIT", "READY", "START", "MOVE", "MSG", "ILLEGAL", "HELLO", "SESSION",
+			"RESUME", "SNAPSHOT", "PING" };
+	// The types of message which can be rate limited
+	private static final int[] LIMITED_TYPES = { CardGameMessage.MSG,
+			CardGameMessage.MOVE };
+	// The names of what is done to a message over its rate limit, by policy
+	private static final String[] THROTTLE_ACTIONS = { "dropped", "delayed",
+			"disconnected" };
+	// The percentiles reported for each histogram
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+	// The names of the percentiles reported
+	private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99",
+			"p99.9" };
+
+	// The server whose metrics are kept
+	private final CardGameServer server;
+	// The number of open connections
+	private final AtomicInteger connections = new AtomicInteger();
+	// The number of connections accepted
+	private final LongAdder connectionsAccepted = new LongAdder();
+	// The number of messages received of each type, and of unknown types last
+	private final LongAdder[] messagesReceived = new LongAdder[TYPE_NAMES.length + 1];
+	// The number of bytes received from clients
+	private final LongAdder bytesReceived = new LongAdder();
+	// The latencies from the receipt of a message to the end of its handling
+	private final LatencyHistogram parseLatency = new LatencyHistogram();
+	// The latencies of broadcasting a message to a room
+	private final LatencyHistogram broadcastLatency = new LatencyHistogram();
+	// The time clients waited in the lobby to be seated
+	private final LatencyHistogram lobbyWait = new LatencyHistogram();
+	// The deepest any outbound queue has been
+	private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+	// The number of frames from clients which could not be decoded
+	private final LongAdder decodeErrors = new LongAdder();
+	// The number of messages which could not be encoded
+	private final LongAdder encodeErrors = new LongAdder();
+	// The number of messages over their rate limit, by type and action
+	private final LongAdder[][] throttled = new LongAdder[LIMITED_TYPES.length][THROTTLE_ACTIONS.length];
+	// The number of PING messages sent to quiet clients
+	private final LongAdder pingsSent = new LongAdder();
+	// The number of clients dropped because they fell silent
+	private final LongAdder idleDisconnects = new LongAdder();
+	// The HTTP server of the endpoint, or null if it has not been started
+	private HttpServer httpServer;
+	// The name under which this object is registered with JMX, or null
+	private ObjectName objectName;
+
+	/**
+	 * Creates and returns an instance of the ServerMetrics class.
+	 *
+	 * @param server
+	 *            the server whose metrics are kept
+	 */
+	public ServerMetrics(CardGameServer server) {
+		this.server = server;
+		for (int i = 0; i < messagesReceived.length; i++) {
+			messagesReceived[i] = new LongAdder();
+		}
+		for (int i = 0; i < throttled.length; i++) {
+			for (int j = 0; j < throttled[i].length; j++) {
+				throttled[i][j] = new LongAdder();
+			}
+		}
+	}
+
+	/**
+	 * Counts a connection accepted.
+	 */
+	void connectionOpened() {
+		connections.incrementAndGet();
+		connectionsAccepted.increment();
+	}
+
+	/**
+	 * Counts a connection removed.
+	 */
+	void connectionClosed() {
+		connections.decrementAndGet();
+	}
+
+	/**
+	 * Counts a message received from a client.
+	 *
+	 * @param type
+	 *            the type of the message
+	 */
+	void countMessage(int type) {
+		int index = type >= 0 && type < TYPE_NAMES.length ? type
+				: TYPE_NAMES.length;
+		messagesReceived[index].increment();
+	}
+
+	/**
+	 * Counts bytes received from a client.
+	 *
+	 * @param numOfBytes
+	 *            the number of bytes received, frame headers included
+	 */
+	void countBytesReceived(long numOfBytes) {
+		bytesReceived.add(numOfBytes);
+	}
+
+	/**
+	 * Records the time from the receipt of a message to the end of its
+	 * handling, which includes the time it waited for its room.
+	 *
+	 * @param nanos
+	 *            the latency in nanoseconds
+	 */
+	void recordParse(long nanos) {
+		parseLatency.record(nanos);
+	}
+
+	/**
+	 * Records the time taken to encode a message and queue it for every
+	 * client of a room.
+	 *
+	 * @param nanos
+	 *            the latency in nanoseconds
+	 */
+	void recordBroadcast(long nanos) {
+		broadcastLatency.record(nanos);
+	}
+
+	/**
+	 * Records the time a client waited in the lobby to be seated.
+	 *
+	 * @param nanos
+	 *            the wait in nanoseconds
+	 */
+	void recordLobbyWait(long nanos) {
+		lobbyWait.record(nanos);
+	}
+
+	/**
+	 * Records the depth of an outbound queue after a frame was queued.
+	 *
+	 * @param depth
+	 *            the number of frames waiting in the queue
+	 */
+	void recordQueueDepth(int depth) {
+		maxQueueDepth.accumulate(depth);
+	}
+
+	/**
+	 * Counts a frame from a client which could not be decoded.
+	 */
+	void countDecodeError() {
+		decodeErrors.increment();
+	}
+
+	/**
+	 * Counts a message which could not be encoded.
+	 */
+	void countEncodeError() {
+		encodeErrors.increment();
+	}
+
+	/**
+	 * Counts a message over its rate limit.
+	 *
+	 * @param type
+	 *            the type of the message, MSG or MOVE
+	 * @param policy
+	 *            the policy applied: DROP_OVER_LIMIT, DELAY_OVER_LIMIT or
+	 *            DISCONNECT_OVER_LIMIT of CardGameServer
+	 */
+	void countThrottled(int type, int policy) {
+		for (int i = 0; i < LIMITED_TYPES.length; i++) {
+			if (LIMITED_TYPES[i] == type) {
+				throttled[i][policy].increment();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Counts a PING message sent to a quiet client.
+	 */
+	void countPing() {
+		pingsSent.increment();
+	}
+
+	/**
+	 * Counts a client dropped because it fell silent.
+	 */
+	void countIdleDisconnect() {
+		idleDisconnects.increment();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public int getConnections() {
+		return connections.get();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getConnectionsAccepted() {
+		return connectionsAccepted.sum();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public int getRooms() {
+		return server.getNumOfRooms();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public Map<String, Long> getMessagesReceived() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < messagesReceived.length; i++) {
+			counts.put(typeName(i), messagesReceived[i].sum());
+		}
+		return counts;
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getBytesSent() {
+		return server.getBytesSent();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getBytesEncoded() {
+		return server.getBytesEncoded();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getSocketWrites() {
+		return server.getSocketWrites();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public Map<String, Double> getParseLatency() {
+		return summarize(parseLatency);
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public Map<String, Double> getBroadcastLatency() {
+		return summarize(broadcastLatency);
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public int getLobbyWaiting() {
+		return server.getNumOfWaiting();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public Map<String, Double> getLobbyWait() {
+		return summarize(lobbyWait);
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getQueuedFrames() {
+		return server.getQueuedFrames();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getFramesDropped() {
+		return server.getFramesDropped();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getOverflowDisconnects() {
+		return server.getOverflowDisconnects();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getDecodeErrors() {
+		return decodeErrors.sum();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getEncodeErrors() {
+		return encodeErrors.sum();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public Map<String, Long> getThrottledMessages() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < LIMITED_TYPES.length; i++) {
+			for (int j = 0; j < THROTTLE_ACTIONS.length; j++) {
+				counts.put(typeName(LIMITED_TYPES[i]) + " " + THROTTLE_ACTIONS[j],
+						throttled[i][j].sum());
+			}
+		}
+		return counts;
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getJournalRecords() {
+		EventJournal journal = server.getJournal();
+		return journal == null ? 0 : journal.getRecords();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getJournalSyncs() {
+		EventJournal journal = server.getJournal();
+		return journal == null ? 0 : journal.getSyncs();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getJournalDropped() {
+		EventJournal journal = server.getJournal();
+		return journal == null ? 0 : journal.getDropped();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getPingsSent() {
+		return pingsSent.sum();
+	}
+
+	// implementation of method from the ServerMetricsMXBean interface
+	public long getIdleDisconnects() {
+		return idleDisconnects.sum();
+	}
+
+	/**
+	 * Returns the name of a message type.
+	 *
+	 * @param index
+	 *            the index of the counter of the type
+	 * @return the name of the type, or "OTHER" for unknown types
+	 */
+	private static String typeName(int index) {
+		return index < TYPE_NAMES.length ? TYPE_NAMES[index] : "OTHER";
+	}
+
+	/**
+	 * Returns the summary of a histogram.
+	 *
+	 * @param histogram
+	 *            the histogram
+	 * @return the count, mean, percentiles and maximum, by name
+	 */
+	private static Map<String, Double> summarize(LatencyHistogram histogram) {
+		Map<String, Double> summary = new LinkedHashMap<String, Double>();
+		summary.put("count", (double) histogram.getCount());
+		summary.put("mean", histogram.getMean());
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			summary.put(PERCENTILE_NAMES[i],
+					(double) histogram.getPercentile(PERCENTILES[i]));
+		}
+		summary.put("max", (double) histogram.getMax());
+		return summary;
+	}
+
+	/**
+	 * Returns all the metrics in plain text, one "name{labels} value" line
+	 * per metric. Latencies are in microseconds.
+	 *
+	 * @return the metrics as text
+	 */
+	public String toText() {
+		StringBuilder text = new StringBuilder();
+		line(text, "cardgame_connections", null, getConnections());
+		line(text, "cardgame_connections_accepted_total", null,
+				getConnectionsAccepted());
+		line(text, "cardgame_rooms", null, getRooms());
+		for (int i = 0; i < messagesReceived.length; i++) {
+			line(text, "cardgame_messages_received_total", "type=\""
+					+ typeName(i) + "\"", messagesReceived[i].sum());
+		}
+		line(text, "cardgame_bytes_received_total", null, getBytesReceived());
+		line(text, "cardgame_bytes_sent_total", null, getBytesSent());
+		line(text, "cardgame_bytes_encoded_total", null, getBytesEncoded());
+		line(text, "cardgame_socket_writes_total", null, getSocketWrites());
+		histogram(text, "cardgame_parse_latency_us", parseLatency);
+		histogram(text, "cardgame_broadcast_latency_us", broadcastLatency);
+		line(text, "cardgame_lobby_waiting", null, getLobbyWaiting());
+		histogram(text, "cardgame_lobby_wait_us", lobbyWait);
+		line(text, "cardgame_queued_frames", null, getQueuedFrames());
+		line(text, "cardgame_queue_depth_max", null, getMaxQueueDepth());
+		line(text, "cardgame_frames_dropped_total", null, getFramesDropped());
+		line(text, "cardgame_overflow_disconnects_total", null,
+				getOverflowDisconnects());
+		line(text, "cardgame_serialization_errors_total", "kind=\"decode\"",
+				getDecodeErrors());
+		line(text, "cardgame_serialization_errors_total", "kind=\"encode\"",
+				getEncodeErrors());
+		for (int i = 0; i < LIMITED_TYPES.length; i++) {
+			for (int j = 0; j < THROTTLE_ACTIONS.length; j++) {
+				line(text, "cardgame_throttled_messages_total", "type=\""
+						+ typeName(LIMITED_TYPES[i]) + "\",action=\""
+						+ THROTTLE_ACTIONS[j] + "\"", throttled[i][j].sum());
+			}
+		}
+		line(text, "cardgame_journal_records_total", null, getJournalRecords());
+		line(text, "cardgame_journal_syncs_total", null, getJournalSyncs());
+		line(text, "cardgame_journal_dropped_total", null, getJournalDropped());
+		line(text, "cardgame_pings_sent_total", null, getPingsSent());
+		line(text, "cardgame_idle_disconnects_total", null,
+				getIdleDisconnects());
+		return text.toString();
+	}
+
+	/**
+	 * Appends the lines of a histogram: a line per percentile, the maximum,
+	 * the count and the sum.
+	 *
+	 * @param text
+	 *            the text being built
+	 * @param name
+	 *            the name of the histogram
+	 * @param histogram
+	 *            the histogram
+	 */
+	private static void histogram(StringBuilder text, String name,
+			LatencyHistogram histogram) {
+		for (double percentile : PERCENTILES) {
+			line(text, name, "quantile=\"" + percentile + "\"",
+					histogram.getPercentile(percentile));
+		}
+		line(text, name, "quantile=\"1.0\"", histogram.getMax());
+		line(text, name + "_count", null, histogram.getCount());
+		line(text, name + "_sum", null,
+				Math.round(histogram.getMean() * histogram.getCount()));
+	}
+
+	/**
+	 * Appends the line of a metric.
+	 *
+	 * @param text
+	 *            the text being built
+	 * @param name
+	 *            the name of the metric
+	 * @param labels
+	 *            the labels of the metric, or null if it has none
+	 * @param value
+	 *            the value of the metric
+	 */
+	private static void line(StringBuilder text, String name, String labels,
+			long value) {
+		text.append(name);
+		if (labels != null) {
+			text.append('{').append(labels).append('}');
+		}
+		text.append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, so that JMX
+	 * clients can read them.
+	 *
+	 * @param port
+	 *            the port of the card game server, which tells servers in
+	 *            the same JVM apart
+	 * @throws JMException
+	 *             if the metrics cannot be registered
+	 */
+	public void register(int port) throws JMException {
+		objectName = new ObjectName("CardGameServer:type=ServerMetrics,port="
+				+ port);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				objectName);
+	}
+
+	/**
+	 * Starts serving the metrics over HTTP at /metrics, on the loopback
+	 * address only.
+	 *
+	 * @param port
+	 *            the port of the endpoint, or 0 for any free port
+	 * @return the port of the endpoint
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public int startHttp(int port) throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext("/metrics", new MetricsHandler());
+		httpServer.start();
+		return httpServer.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the HTTP endpoint and unregisters the metrics from JMX.
+	 */
+	public void stop() {
+		if (httpServer != null) {
+			httpServer.stop(0);
+			httpServer = null;
+		}
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+						objectName);
+			} catch (JMException ex) {
+				server.println("Error in unregistering the metrics from JMX", ex);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * This inner class is used for answering the requests to the HTTP
+	 * endpoint with the metrics as plain text.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	private class MetricsHandler implements HttpHandler {
+		// implementation of method from the HttpHandler interface
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!exchange.getRequestMethod().equals("GET")) {
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				byte[] body = toText().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type",
+						"text/plain; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			} finally {
+				exchange.close();
+			}
+		}
+	} // MetricsHandler
+}
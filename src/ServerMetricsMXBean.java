@@ -0,0 +1,185 @@
+import java.util.Map;
+
+/**
+ * This interface is the management interface of ServerMetrics, through which
+ * JMX clients such as JConsole read the metrics of a card game server.
+ * Latencies are in microseconds.
+ *
+ * @author chanyuyan
+ *
+ */
+public interface ServerMetricsMXBean {
+	/**
+	 * Returns the number of open client connections.
+	 *
+	 * @return the number of connections
+	 */
+	int getConnections();
+
+	/**
+	 * Returns the number of client connections accepted since the start.
+	 *
+	 * @return the number of connections accepted
+	 */
+	long getConnectionsAccepted();
+
+	/**
+	 * Returns the number of rooms opened.
+	 *
+	 * @return the number of rooms
+	 */
+	int getRooms();
+
+	/**
+	 * Returns the number of messages received from clients, by message type.
+	 *
+	 * @return the number of messages of each type
+	 */
+	Map<String, Long> getMessagesReceived();
+
+	/**
+	 * Returns the number of bytes received from clients.
+	 *
+	 * @return the number of bytes received
+	 */
+	long getBytesReceived();
+
+	/**
+	 * Returns the number of bytes written to clients.
+	 *
+	 * @return the number of bytes sent
+	 */
+	long getBytesSent();
+
+	/**
+	 * Returns the number of bytes of the frames encoded for clients.
+	 *
+	 * @return the number of bytes encoded
+	 */
+	long getBytesEncoded();
+
+	/**
+	 * Returns the number of writes to client sockets.
+	 *
+	 * @return the number of writes
+	 */
+	long getSocketWrites();
+
+	/**
+	 * Returns the latencies of handling messages, from receipt to the end of
+	 * their handling by the room.
+	 *
+	 * @return the count, mean, percentiles and maximum
+	 */
+	Map<String, Double> getParseLatency();
+
+	/**
+	 * Returns the latencies of broadcasting a message to a room.
+	 *
+	 * @return the count, mean, percentiles and maximum
+	 */
+	Map<String, Double> getBroadcastLatency();
+
+	/**
+	 * Returns the number of clients waiting in the lobby to be seated.
+	 *
+	 * @return the number of clients waiting
+	 */
+	int getLobbyWaiting();
+
+	/**
+	 * Returns the times clients waited in the lobby to be seated.
+	 *
+	 * @return the count, mean, percentiles and maximum
+	 */
+	Map<String, Double> getLobbyWait();
+
+	/**
+	 * Returns the number of frames waiting to be written to all clients.
+	 *
+	 * @return the total depth of the outbound queues
+	 */
+	long getQueuedFrames();
+
+	/**
+	 * Returns the deepest any outbound queue has been.
+	 *
+	 * @return the maximum depth of an outbound queue
+	 */
+	long getMaxQueueDepth();
+
+	/**
+	 * Returns the number of frames dropped because an outbound queue was full.
+	 *
+	 * @return the number of frames dropped
+	 */
+	long getFramesDropped();
+
+	/**
+	 * Returns the number of clients dropped because their outbound queue was
+	 * full.
+	 *
+	 * @return the number of clients dropped
+	 */
+	long getOverflowDisconnects();
+
+	/**
+	 * Returns the number of frames from clients which could not be decoded.
+	 *
+	 * @return the number of decoding errors
+	 */
+	long getDecodeErrors();
+
+	/**
+	 * Returns the number of messages which could not be encoded.
+	 *
+	 * @return the number of encoding errors
+	 */
+	long getEncodeErrors();
+
+	/**
+	 * Returns the number of messages over their rate limit, by type and by
+	 * what was done to them: dropped, delayed, or the client disconnected.
+	 *
+	 * @return the number of messages throttled, keyed "TYPE action"
+	 */
+	Map<String, Long> getThrottledMessages();
+
+	/**
+	 * Returns the number of events appended to the journal since the start.
+	 *
+	 * @return the number of records, 0 if there is no journal
+	 */
+	long getJournalRecords();
+
+	/**
+	 * Returns the number of times the journal has been forced to disk, each
+	 * of which commits all the records appended since the one before.
+	 *
+	 * @return the number of syncs, 0 if there is no journal
+	 */
+	long getJournalSyncs();
+
+	/**
+	 * Returns the number of events which could not be journaled.
+	 *
+	 * @return the number of records dropped, 0 if there is no journal
+	 */
+	long getJournalDropped();
+
+	/**
+	 * Returns the number of PING messages sent to clients which had been
+	 * quiet.
+	 *
+	 * @return the number of pings sent
+	 */
+	long getPingsSent();
+
+	/**
+	 * Returns the number of clients dropped because nothing was heard from
+	 * them for the idle timeout.
+	 *
+	 * @return the number of clients dropped
+	 */
+	long getIdleDisconnects();
+}
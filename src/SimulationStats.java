@@ -0,0 +1,141 @@
+/**
+ * This class is used to collect the results of simulated Big Two games.
+ * Each simulation thread fills its own instance, and the instances are
+ * merged once the threads finish.
+ *
+ * @author chanyuyan
+ *
+ */
+public class SimulationStats {
+	// The longest game length tracked separately; longer games share the last bucket
+	private static final int MAX_LENGTH = 255;
+
+	// The number of games played
+	private long numOfGames;
+	// The number of games won by each seat
+	private final long[] wins = new long[4];
+	// The total number of cards left in each seat at the end of its games
+	private final long[] cardsLeft = new long[4];
+	// The number of games of each length, in moves including passes
+	private final long[] lengths = new long[MAX_LENGTH + 1];
+
+	/**
+	 * Records the outcome of a finished game.
+	 *
+	 * @param engine
+	 *            the engine holding the finished game
+	 * @param numOfMoves
+	 *            the number of moves made in the game, passes included
+	 */
+	public void record(BigTwoEngine engine, int numOfMoves) {
+		numOfGames++;
+		wins[engine.getWinner()]++;
+		for (int i = 0; i < 4; i++) {
+			cardsLeft[i] += engine.getPlayerList().get(i).getNumOfCards();
+		}
+		lengths[Math.min(numOfMoves, MAX_LENGTH)]++;
+	}
+
+	/**
+	 * Adds the results collected by another instance to this one.
+	 *
+	 * @param other
+	 *            the results to be added
+	 * @return this instance
+	 */
+	public SimulationStats merge(SimulationStats other) {
+		numOfGames += other.numOfGames;
+		for (int i = 0; i < 4; i++) {
+			wins[i] += other.wins[i];
+			cardsLeft[i] += other.cardsLeft[i];
+		}
+		for (int i = 0; i <= MAX_LENGTH; i++) {
+			lengths[i] += other.lengths[i];
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the number of games played.
+	 *
+	 * @return the number of games played
+	 */
+	public long getNumOfGames() {
+		return numOfGames;
+	}
+
+	/**
+	 * Returns the fraction of games won by the specified seat.
+	 *
+	 * @param seat
+	 *            the playerID of the seat
+	 * @return the win rate of the seat, between 0 and 1
+	 */
+	public double getWinRate(int seat) {
+		return numOfGames == 0 ? 0.0 : (double) wins[seat] / numOfGames;
+	}
+
+	/**
+	 * Returns the average number of cards the specified seat holds when a game
+	 * ends.
+	 *
+	 * @param seat
+	 *            the playerID of the seat
+	 * @return the average number of cards left
+	 */
+	public double getAverageCardsLeft(int seat) {
+		return numOfGames == 0 ? 0.0 : (double) cardsLeft[seat] / numOfGames;
+	}
+
+	/**
+	 * Returns the game length below which the specified fraction of games
+	 * end.
+	 *
+	 * @param fraction
+	 *            a value between 0 and 1
+	 * @return the game length, in moves, at that percentile
+	 */
+	public int getLengthPercentile(double fraction) {
+		long target = (long) Math.ceil(fraction * numOfGames);
+		long count = 0;
+		for (int i = 0; i <= MAX_LENGTH; i++) {
+			count += lengths[i];
+			if (count >= target && count > 0) {
+				return i;
+			}
+		}
+		return MAX_LENGTH;
+	}
+
+	/**
+	 * Returns the average game length in moves.
+	 *
+	 * @return the average number of moves per game, passes included
+	 */
+	public double getAverageLength() {
+		long total = 0;
+		for (int i = 0; i <= MAX_LENGTH; i++) {
+			total += i * lengths[i];
+		}
+		return numOfGames == 0 ? 0.0 : (double) total / numOfGames;
+	}
+
+	/**
+	 * Returns a string representation of the results.
+	 *
+	 * @param strategies
+	 *            the strategies used by the four seats
+	 * @return a string representation of the results
+	 */
+	public String toString(BigTwoStrategy[] strategies) {
+		String string = "Games played: " + numOfGames + "\n";
+		for (int i = 0; i < 4; i++) {
+			string += String.format("Seat %d (%s): win rate %.4f, average cards left %.2f%n",
+					i, strategies[i], getWinRate(i), getAverageCardsLeft(i));
+		}
+		string += String.format("Game length: average %.1f, p50 %d, p90 %d, p99 %d, max %d%n",
+				getAverageLength(), getLengthPercentile(0.5), getLengthPercentile(0.9),
+				getLengthPercentile(0.99), getLengthPercentile(1.0));
+		return string;
+	}
+}
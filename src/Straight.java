@@ -31,30 +31,6 @@ public class Straight extends Hand{
 	}
 	
 	
-	/**
-	 * Overrides the beats method in Hand.
-	 * Determines whether this Straight hand beats the specified hand.
-	 * 
-	 * @param hand the specified hand
-	 * @return whether this Straight hand beats the specified hand
-	 * @see Hand#beats(Hand)
-	 */
-	public boolean beats(Hand hand) {
-		this.sort();
-		hand.sort();
-		if (this.size() != hand.size()) {
-			return false;
-		}
-		
-		if (this.getType() == hand.getType()) {
-			if (this.getTopCard().compareTo(hand.getTopCard()) == 1) {
-				return true;
-			}
-		}
-		// All other hands of 5 beat straight
-		return false;
-	}
-	
 	/**
 	 * Determines if this is a valid Straight hand.
 	 * 
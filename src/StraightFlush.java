@@ -31,32 +31,6 @@ public class StraightFlush extends Hand{
 	}
 	
 	
-	/**
-	 * Overrides the beat method in Hand.
-	 * Determines if this StraightFlush hand beats the specified hand.
-	 * 
-	 * @param hand the specified hand
-	 * @return whether this StraightFlush hand beats the specified hand
-	 * @see Hand#beats(Hand)
-	 */
-	public boolean beats(Hand hand) {
-		this.sort();
-		hand.sort();
-		if (this.size() != hand.size()) {
-			return false;
-		} 
-		if (this.getType() == hand.getType()) {
-			if (this.getTopCard().compareTo(hand.getTopCard()) == 1) {
-				return true;
-			} else {
-				return false;
-			}
-		} else {
-			// All other hands of 5 are beaten by straight flush
-			return true;
-		}
-	}
-	
 	/**
 	 * Determines if this is a valid StraightFlush hand.
 	 * 
@@ -0,0 +1,68 @@
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class is used to create the threads that wait on blocking
+ * connections, either as platform threads or as virtual threads.
+ * <p>
+ * Virtual threads are looked up by reflection, so the classes still compile
+ * and run on JVMs without them; there every thread is a platform thread.
+ *
+ * @author chanyuyan
+ *
+ */
+public final class Threads {
+	// The factory of virtual threads, or null if the JVM has none
+	private static final ThreadFactory VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+	/**
+	 * This class is not meant to be instantiated.
+	 */
+	private Threads() {
+	}
+
+	/**
+	 * Returns true if this JVM can create virtual threads.
+	 *
+	 * @return true if virtual threads are supported
+	 */
+	public static boolean isVirtualSupported() {
+		return VIRTUAL_THREAD_FACTORY != null;
+	}
+
+	/**
+	 * Creates a thread for the specified task. The thread is not started.
+	 *
+	 * @param task
+	 *            the task run by the thread
+	 * @param name
+	 *            the name of the thread
+	 * @param virtual
+	 *            true for a virtual thread if the JVM supports them; false for
+	 *            a platform thread
+	 * @return the new thread
+	 */
+	public static Thread newThread(Runnable task, String name, boolean virtual) {
+		if (virtual && VIRTUAL_THREAD_FACTORY != null) {
+			Thread thread = VIRTUAL_THREAD_FACTORY.newThread(task);
+			thread.setName(name);
+			return thread;
+		}
+		return new Thread(task, name);
+	}
+
+	/**
+	 * Looks up Thread.ofVirtual().factory().
+	 *
+	 * @return the factory of virtual threads, or null if the JVM has none
+	 */
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+					.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			// no virtual threads, or a preview feature that is not enabled
+			return null;
+		}
+	}
+}
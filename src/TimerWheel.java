@@ -0,0 +1,191 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class is used to model a hashed timer wheel, which keeps any number
+ * of timeouts at a fixed cost per timeout. Time passes in ticks of a fixed
+ * length: a timeout due at tick t waits in slot t mod the number of slots,
+ * and each tick visits one slot, expiring the timeouts which are due and
+ * leaving those due on a later turn of the wheel. Scheduling a timeout and
+ * expiring it take constant time, whatever the number of timeouts, at the
+ * price of rounding deadlines up to the next tick.
+ * <p>
+ * The wheel is driven by a single thread, which calls advance() once a
+ * tick; the timeouts expire on that thread. A timeout is a node of the list
+ * of its slot, so a wheel allocates nothing once its timeouts exist, and
+ * an expired timeout is scheduled again by returning its next deadline.
+ * Other threads schedule timeouts through a queue, which the next tick
+ * drains. The number of ticks passed is readable from any thread, and
+ * serves as a clock too coarse to cost more than a volatile read.
+ *
+ * @author chanyuyan
+ *
+ */
+public class TimerWheel {
+	// The length of a tick, in milliseconds
+	private final long tickDuration;
+	// The first timeout of each slot, used by the thread of the wheel only
+	private final Timeout[] slots;
+	// The number of slots minus one, the number of slots being a power of 2
+	private final int mask;
+	// The timeouts scheduled from any thread since the last tick
+	private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+	// The number of ticks passed
+	private volatile long tick = 0;
+
+	/**
+	 * Creates a timer wheel.
+	 *
+	 * @param tickDuration
+	 *            the length of a tick, in milliseconds
+	 * @param numOfSlots
+	 *            the number of slots, rounded up to a power of 2; a timeout
+	 *            due within this many ticks is visited once only
+	 */
+	public TimerWheel(long tickDuration, int numOfSlots) {
+		if (tickDuration < 1 || numOfSlots < 1) {
+			throw new IllegalArgumentException("Invalid tick duration or number of slots");
+		}
+		int size = Integer.highestOneBit(numOfSlots);
+		if (size < numOfSlots) {
+			size <<= 1;
+		}
+		this.tickDuration = tickDuration;
+		this.slots = new Timeout[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Returns the length of a tick.
+	 *
+	 * @return the length of a tick, in milliseconds
+	 */
+	public long getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * Returns the number of ticks passed. May be called from any thread.
+	 *
+	 * @return the current tick
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Converts a duration into a number of ticks, rounded up.
+	 *
+	 * @param millis
+	 *            the duration in milliseconds
+	 * @return the number of ticks
+	 */
+	public long toTicks(long millis) {
+		return (millis + tickDuration - 1) / tickDuration;
+	}
+
+	/**
+	 * Schedules a timeout to expire at the specified tick, or at the next
+	 * tick if that has passed. May be called from any thread, but a timeout
+	 * must not be scheduled again while it is waiting.
+	 *
+	 * @param timeout
+	 *            the timeout
+	 * @param deadline
+	 *            the tick at which the timeout expires
+	 */
+	public void schedule(Timeout timeout, long deadline) {
+		timeout.deadline = deadline;
+		scheduled.add(timeout);
+	}
+
+	/**
+	 * Moves the wheel on by one tick, and expires the timeouts due. Must be
+	 * called once a tick, from one thread at a time. A timeout which throws
+	 * is dropped, and the other timeouts due still expire; the first
+	 * exception is then thrown, with the others suppressed, for the caller to
+	 * report.
+	 */
+	public void advance() {
+		RuntimeException error = null;
+		long now = tick + 1;
+		Timeout timeout;
+		while ((timeout = scheduled.poll()) != null) {
+			insert(timeout, timeout.deadline, now);
+		}
+		tick = now;
+
+		int index = (int) (now & mask);
+		timeout = slots[index];
+		slots[index] = null;
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			timeout.next = null;
+			if (timeout.deadline > now) {
+				// due on a later turn of the wheel
+				insert(timeout, timeout.deadline, now);
+			} else {
+				long deadline;
+				try {
+					deadline = timeout.expire(now);
+				} catch (RuntimeException ex) {
+					if (error == null) {
+						error = ex;
+					} else {
+						error.addSuppressed(ex);
+					}
+					deadline = -1;
+				}
+				if (deadline >= 0) {
+					insert(timeout, deadline, now + 1);
+				}
+			}
+			timeout = next;
+		}
+		if (error != null) {
+			throw error;
+		}
+	} // advance
+
+	/**
+	 * Puts a timeout in the slot of its deadline.
+	 *
+	 * @param timeout
+	 *            the timeout
+	 * @param deadline
+	 *            the tick at which the timeout expires
+	 * @param earliest
+	 *            the earliest tick still to be visited
+	 */
+	private void insert(Timeout timeout, long deadline, long earliest) {
+		timeout.deadline = Math.max(deadline, earliest);
+		int index = (int) (timeout.deadline & mask);
+		timeout.next = slots[index];
+		slots[index] = timeout;
+	}
+
+	/**
+	 * This inner class is used to represent a timeout of a timer wheel. A
+	 * timeout is meant to be reused: on expiry it tells the wheel when it is
+	 * due again.
+	 *
+	 * @author chanyuyan
+	 *
+	 */
+	public abstract static class Timeout {
+		// The tick at which this timeout expires
+		private long deadline;
+		// The next timeout in the same slot
+		private Timeout next;
+
+		/**
+		 * Called by the thread of the wheel when the timeout expires.
+		 *
+		 * @param now
+		 *            the current tick
+		 * @return the tick at which the timeout expires again, or -1 to drop
+		 *         it from the wheel
+		 */
+		protected abstract long expire(long now);
+	} // Timeout
+}
@@ -0,0 +1,69 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is used to model a token bucket, which lets through messages
+ * at a steady rate with bursts of a bounded size. The bucket holds up to
+ * burst tokens and gains one every 1 / rate seconds; a message takes a
+ * token, and a message finding the bucket empty is over the limit.
+ * <p>
+ * The bucket is kept as the single number of the generic cell rate
+ * algorithm: the time at which the bucket would be full again, had no
+ * tokens been taken since. A token is taken by moving that time on by one
+ * interval with a compare-and-set, so the bucket needs no lock, and takes
+ * the space of one long however many tokens it holds.
+ *
+ * @author chanyuyan
+ *
+ */
+public class TokenBucket {
+	// The time one token takes to be gained, in nanoseconds
+	private final long interval;
+	// How far ahead of the current time the bucket may be drawn, in ns
+	private final long tolerance;
+	// The time at which the bucket would be full again, in ns
+	private final AtomicLong fullAt;
+
+	/**
+	 * Creates a full token bucket.
+	 *
+	 * @param rate
+	 *            the number of tokens gained per second
+	 * @param burst
+	 *            the number of tokens the bucket holds, at least 1
+	 */
+	public TokenBucket(double rate, int burst) {
+		if (rate <= 0 || burst < 1) {
+			throw new IllegalArgumentException("Invalid rate or burst size");
+		}
+		this.interval = Math.max(1, Math.round(1e9 / rate));
+		this.tolerance = interval * (burst - 1);
+		this.fullAt = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Takes a token from the bucket. If the bucket is empty, the token gained
+	 * next may be reserved instead, as long as it comes within the specified
+	 * wait; the caller is then expected to wait for it. May be called from
+	 * any thread.
+	 *
+	 * @param now
+	 *            the current time, from System.nanoTime()
+	 * @param maxWait
+	 *            the longest wait for a token, in nanoseconds, or 0 to take
+	 *            a token only if there is one
+	 * @return 0 if a token has been taken; the wait for a reserved token, in
+	 *         nanoseconds; or -1 if no token has been taken
+	 */
+	public long take(long now, long maxWait) {
+		while (true) {
+			long current = fullAt.get();
+			long wait = current - tolerance - now;
+			if (wait > maxWait) {
+				return -1;
+			}
+			if (fullAt.compareAndSet(current, Math.max(current, now) + interval)) {
+				return Math.max(0, wait);
+			}
+		}
+	}
+}